@@ -0,0 +1,56 @@
+package com.samuelwu.wex.tag.transaction.benchmark;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.samuelwu.wex.tag.transaction.model.Money;
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+
+// the amount of a new transaction is rounded to cents while the request is read, before createTransaction
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AmountBenchmark {
+
+	private static final String amount = "1234.565";
+
+	private ObjectReader transactionReader;
+	private byte[] transactionJson;
+	private char[] amountChars;
+
+	@Setup
+	public void setUp() {
+		transactionReader = new ObjectMapper().registerModule(new JavaTimeModule()).readerFor(Transaction.class);
+		transactionJson = ("{\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":" + amount + "}").getBytes();
+		amountChars = amount.toCharArray();
+	}
+
+	// the request body of a new transaction
+	@Benchmark
+	public long readTransaction() throws Exception {
+		Transaction transaction = transactionReader.readValue(transactionJson);
+		return transaction.getAmount();
+	}
+
+	@Benchmark
+	public long parseAmount() {
+		return Money.parse(amountChars, 0, amountChars.length);
+	}
+
+	// the rounding with BigDecimal, as a baseline
+	@Benchmark
+	public long parseAmountWithBigDecimal() {
+		return Money.toCents(new BigDecimal(amountChars, 0, amountChars.length));
+	}
+}
@@ -0,0 +1,93 @@
+package com.samuelwu.wex.tag.transaction.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.samuelwu.wex.tag.transaction.model.ConvertedTransaction;
+import com.samuelwu.wex.tag.transaction.model.CurrencyData;
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+
+// the conversion path: the Treasury response is decoded, then the transactions are converted and written
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConversionBenchmark {
+
+	// a year of quarterly rates of about 170 currencies, as in a history page
+	private static final int rates = 680;
+	private static final int transactions = 100;
+
+	private ObjectMapper objectMapper;
+	private ObjectWriter convertedWriter;
+	private byte[] treasuryJson;
+	private Transaction transaction;
+	private List<Transaction> transactionList;
+	private ExchangeRate exchangeRate;
+
+	@Setup
+	public void setUp() {
+		objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+				.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		convertedWriter = objectMapper.writerFor(ConvertedTransaction.class);
+		var json = new StringBuilder("{\"data\":[");
+		for (int i = 0; i < rates; i++) {
+			json.append(i == 0 ? "" : ",")
+					.append("{\"record_date\":\"2023-0").append(3 * (i % 3 + 1)).append("-30\",")
+					.append("\"country\":\"Country").append(i).append("\",\"currency\":\"Currency\",")
+					.append("\"country_currency_desc\":\"Country").append(i).append("-Currency\",")
+					.append("\"exchange_rate\":\"").append(1 + i % 97).append('.').append(100 + i % 900).append("\",")
+					.append("\"effective_date\":\"2023-06-30\",\"src_line_nbr\":\"").append(i).append("\"}");
+		}
+		json.append("],\"meta\":{\"count\":").append(rates).append(",\"total-count\":").append(rates)
+				.append(",\"total-pages\":1},\"links\":{\"self\":\"&page%5Bnumber%5D=1&page%5Bsize%5D=1000\"}}");
+		treasuryJson = json.toString().getBytes();
+
+		var date = LocalDate.of(2023, 10, 1);
+		transaction = new Transaction(date, "description", 12345);
+		transaction.setId(1);
+		transactionList = new ArrayList<>(transactions);
+		for (int i = 0; i < transactions; i++) {
+			var listed = new Transaction(date, "description " + i, 1000 + i * 37L);
+			listed.setId(i + 1);
+			transactionList.add(listed);
+		}
+		exchangeRate = new ExchangeRate("Canada-Dollar", LocalDate.of(2023, 6, 30), new BigDecimal("1.349"));
+	}
+
+	@Benchmark
+	public CurrencyData decodeTreasuryResponse() throws Exception {
+		return objectMapper.readValue(treasuryJson, CurrencyData.class);
+	}
+
+	// the response of a transaction converted by Id
+	@Benchmark
+	public byte[] convertTransaction() throws Exception {
+		return convertedWriter.writeValueAsBytes(new ConvertedTransaction(transaction, exchangeRate));
+	}
+
+	// the converted transactions of a batch
+	@Benchmark
+	public byte[] convertTransactions() throws Exception {
+		var converted = new ArrayList<ConvertedTransaction>(transactionList.size());
+		for (var listed : transactionList) {
+			converted.add(new ConvertedTransaction(listed, exchangeRate));
+		}
+		return objectMapper.writeValueAsBytes(converted);
+	}
+}
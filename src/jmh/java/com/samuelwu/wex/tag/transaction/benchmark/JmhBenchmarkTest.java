@@ -0,0 +1,33 @@
+package com.samuelwu.wex.tag.transaction.benchmark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+// run the benchmarks of this package with the GC profiler, gc.alloc.rate.norm is the number of bytes allocated per operation
+// run them with: mvn test -Pjmh
+// a subset is selected with a regular expression, e.g. -Djmh.include=AmountBenchmark
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class JmhBenchmarkTest {
+
+	@Test
+	void benchmarks() throws Exception {
+		var options = new OptionsBuilder()
+				.include(this.getClass().getPackageName() + "\\..*(" + System.getProperty("jmh.include", "Benchmark") + ").*")
+				.exclude(this.getClass().getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.forks(Integer.getInteger("jmh.forks", 1))
+				.warmupIterations(3)
+				.warmupTime(TimeValue.seconds(1))
+				.measurementIterations(5)
+				.measurementTime(TimeValue.seconds(1))
+				.result("target/jmh-result.json")
+				.resultFormat(ResultFormatType.JSON)
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,66 @@
+package com.samuelwu.wex.tag.transaction.benchmark;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+
+// the JSON of the transaction pages, with the mapper configured like the one of the application
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+	// a default page and a large one
+	@Param({ "50", "1000" })
+	private int size;
+
+	private ObjectWriter transactionsWriter;
+	private ObjectReader transactionsReader;
+	private List<Transaction> transactions;
+	private byte[] transactionsJson;
+
+	@Setup
+	public void setUp() throws Exception {
+		var objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+				.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		transactionsWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Transaction.class));
+		transactionsReader = objectMapper.readerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Transaction.class));
+		transactions = new ArrayList<>(size);
+		var date = LocalDate.of(2023, 10, 1);
+		for (int i = 0; i < size; i++) {
+			var transaction = new Transaction(date.minusDays(i % 365), "description " + i, 1000 + i * 37L);
+			transaction.setId(i + 1);
+			transactions.add(transaction);
+		}
+		transactionsJson = transactionsWriter.writeValueAsBytes(transactions);
+	}
+
+	// the response of a transaction list
+	@Benchmark
+	public byte[] writeTransactions() throws Exception {
+		return transactionsWriter.writeValueAsBytes(transactions);
+	}
+
+	// the request of a batch, the amounts are read as cents
+	@Benchmark
+	public List<Transaction> readTransactions() throws Exception {
+		return transactionsReader.readValue(transactionsJson);
+	}
+}
@@ -0,0 +1,45 @@
+package com.samuelwu.wex.tag.transaction;
+
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+// run the requests and the scheduled jobs on virtual threads, a blocking call parks its virtual thread and releases the carrier thread
+// it's enabled by spring.threads.virtual.enabled
+@Configuration
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	// a new virtual thread per request instead of the Tomcat worker pool
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+		logger.info("The requests run on virtual threads");
+		return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+	}
+
+	// the streamed exports and the other async request processing
+	@Bean(name = { TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+			AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME })
+	public AsyncTaskExecutor applicationTaskExecutor() {
+		return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+	}
+
+	// the rate sync and the currency refresh block on the Treasury calls
+	@Bean
+	public ThreadPoolTaskScheduler taskScheduler() {
+		var taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.setThreadFactory(Thread.ofVirtual().name("scheduling-", 1).factory());
+		return taskScheduler;
+	}
+}
@@ -2,8 +2,10 @@ package com.samuelwu.wex.tag.transaction;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class WexTagApplication {
 
 	public static void main(String[] args) {
@@ -5,14 +5,20 @@ import java.util.logging.Logger;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.samuelwu.wex.tag.transaction.model.ETags;
+import com.samuelwu.wex.tag.transaction.service.CurrencyCatalog;
 import com.samuelwu.wex.tag.transaction.service.ExchangeRateService;
 
+import reactor.core.publisher.Mono;
+
 @RestController
 @RequestMapping("/api")
 public class ExchangeRateController {
@@ -26,16 +32,35 @@ public class ExchangeRateController {
 	@Autowired
 	private ExchangeRateService exchangeRateService;
 
+	@Autowired
+	private CurrencyCatalog currencyCatalog;
+
 	// collect all available currency names
+	// the client which has the current catalog gets a 304 without the list
 	@GetMapping("/exchange")
-	public ResponseEntity<Object> getAllCurrencies() {
-		try {
-			var currencies = exchangeRateService.getValidCurrencies();
+	public Mono<ResponseEntity<Object>> getAllCurrencies(@RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		var eTag = currencyCatalog.getETag();
+		if (ETags.matches(ifNoneMatch, eTag)) {
+			return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build());
+		}
+		return Mono.defer(() -> currencyCatalog.getCatalog())
+				.map(catalog -> {
+					if (catalog.getCurrencies().isEmpty()) {
+						return new ResponseEntity<Object>(HttpStatus.NO_CONTENT);
+					}
+					return ResponseEntity.ok().eTag(catalog.getETag()).body((Object) catalog.getCurrencies());
+				})
+				.onErrorResume(e -> {
+					logger.log(Level.SEVERE, e.getMessage());
+					return Mono.just(new ResponseEntity<>(msgSystemError, HttpStatus.INTERNAL_SERVER_ERROR));
+				});
+	}
 
-			if (currencies.isEmpty()) {
-				return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-			}
-			return new ResponseEntity<>(currencies, HttpStatus.OK);
+	// hit, miss and eviction counts of the exchange rate cache and the number of Treasury calls shared
+	@GetMapping("/exchange/cache")
+	public ResponseEntity<Object> getCacheStatistics() {
+		try {
+			return new ResponseEntity<>(exchangeRateService.getCacheStatistics(), HttpStatus.OK);
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, e.getMessage());
 			return new ResponseEntity<>(msgSystemError, HttpStatus.INTERNAL_SERVER_ERROR);
@@ -1,25 +1,51 @@
 package com.samuelwu.wex.tag.transaction.controller;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.samuelwu.wex.tag.transaction.model.ETags;
+import com.samuelwu.wex.tag.transaction.model.IdempotencyKey;
+import com.samuelwu.wex.tag.transaction.model.Money;
 import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+import com.samuelwu.wex.tag.transaction.model.TransactionRollup;
+import com.samuelwu.wex.tag.transaction.service.DescriptionIndex;
+import com.samuelwu.wex.tag.transaction.service.ExchangeRateUnavailableException;
+import com.samuelwu.wex.tag.transaction.service.ExportFormat;
+import com.samuelwu.wex.tag.transaction.service.IdempotencyKeys;
+import com.samuelwu.wex.tag.transaction.service.TransactionIngestQueue;
 import com.samuelwu.wex.tag.transaction.service.TransactionService;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
 
 
 @RestController
@@ -27,6 +53,11 @@ import com.samuelwu.wex.tag.transaction.service.TransactionService;
 public class TransactionController {
 	private Logger logger = Logger.getLogger(this.getClass().getName());
 	private static final int lengthLimit = 50;
+	public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+	public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+	// the response of a retry carries the transaction created by the first request
+	public static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+	public static final String VALIDATION_FAILURES = "transaction.validation.failures";
 	
 	// read messages from application.properties
 	@Value("${common.msgSystemError}")
@@ -35,24 +66,136 @@ public class TransactionController {
 	private String msgInvalidTransactionAmount; 
 	@Value("${transaction.msgInvalidDescription}")
 	private String msgInvalidDescription; 
+	@Value("${transaction.msgDescriptionRequired}")
+	private String msgDescriptionRequired;
 	@Value("${transaction.msgIdNotFound}")
 	private String msgIdNotFound; 
 	@Value("${transaction.msgExchangeRateNotFound}")
 	private String msgExchangeRateNotFound; 
+	@Value("${transaction.msgExchangeRateUnavailable}")
+	private String msgExchangeRateUnavailable; 
+	@Value("${transaction.msgBatchTooLarge}")
+	private String msgBatchTooLarge; 
+	@Value("${transaction.msgInvalidId}")
+	private String msgInvalidId; 
+	@Value("${transaction.msgInvalidCursor}")
+	private String msgInvalidCursor; 
+	@Value("${transaction.msgInvalidRange}")
+	private String msgInvalidRange; 
+	@Value("${transaction.msgInvalidPeriod}")
+	private String msgInvalidPeriod; 
+	@Value("${transaction.msgInvalidCurrency}")
+	private String msgInvalidCurrency; 
+	@Value("${transaction.msgInvalidExportFormat}")
+	private String msgInvalidExportFormat; 
+	@Value("${transaction.msgIngestQueueFull}")
+	private String msgIngestQueueFull; 
+	@Value("${transaction.msgInvalidIdempotencyKey}")
+	private String msgInvalidIdempotencyKey; 
+	@Value("${transaction.msgIdempotencyKeyReused}")
+	private String msgIdempotencyKeyReused; 
+	@Value("${transaction.msgIdempotencyKeyInProgress}")
+	private String msgIdempotencyKeyInProgress; 
+	@Value("${transaction.msgInvalidSearch}")
+	private String msgInvalidSearch; 
+	@Value("${transaction.msgSearchDisabled}")
+	private String msgSearchDisabled; 
+	
+	// limit the transactions converted or created in a request
+	@Value("${transaction.batch.size:1000}")
+	private int batchLimit;
+
+	// the client is told to try again once the Treasury circuit breaker lets a call through
+	@Value("${exchange.treasury.breaker.open.duration:PT30S}")
+	private Duration retryAfter;
 	
 	@Autowired
 	private TransactionService transactionService;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	// get transactions from database 
+	// the cursor of the next page is returned in a header when there are more transactions
+	// the optional ranges of dates and amounts are inclusive
 	@GetMapping("/transactions")
-	public ResponseEntity<Object> getAllTransactions(@RequestParam(required = false) LocalDate date) {
+	public ResponseEntity<Object> getAllTransactions(@RequestParam(required = false) LocalDate date, @RequestParam(required = false) String cursor,
+			@RequestParam(required = false) LocalDate from, @RequestParam(required = false) LocalDate to,
+			@RequestParam(required = false) BigDecimal minAmount, @RequestParam(required = false) BigDecimal maxAmount) {
+		TransactionFilter filter;
+		try {
+			filter = new TransactionFilter(from, to, minAmount == null ? null : Money.toCents(minAmount),
+					maxAmount == null ? null : Money.toCents(maxAmount));
+		} catch (ArithmeticException e) {
+			return rejected("range", msgInvalidRange);
+		}
+		// a date can't be combined with a date range
+		if (!filter.isValid() || (date != null && filter.hasDateRange())) {
+			return rejected("range", msgInvalidRange);
+		}
+		if (date != null && filter.hasAmountRange()) {
+			filter = new TransactionFilter(date, date, filter.getMinAmount(), filter.getMaxAmount());
+		}
+		TransactionCursor after = null;
 		try {
-			var transactions = transactionService.getAllTransactions(date);
+			if (cursor != null) {
+				after = TransactionCursor.decode(cursor);
+				if (filter.isOrderedByAmount() && !after.hasAmount()) {
+					throw new IllegalArgumentException("The cursor has no amount");
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			return rejected("cursor", msgInvalidCursor);
+		}
+		try {
+			var transactions = transactionService.getAllTransactions(date, filter, after);
 
-			if (transactions.isEmpty()) {
+			if (!transactions.hasContent()) {
+				return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+			}
+			var headers = new HttpHeaders();
+			if (transactions.hasNext()) {
+				var content = transactions.getContent();
+				var last = content.get(content.size() - 1);
+				headers.set(NEXT_CURSOR_HEADER, (filter.isOrderedByAmount() ? TransactionCursor.ofAmount(last) : TransactionCursor.of(last)).encode());
+			}
+			return new ResponseEntity<>(transactions.getContent(), headers, HttpStatus.OK);
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, e.getMessage());
+			return new ResponseEntity<>(msgSystemError, HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+	
+	// search the transactions by a fragment of their description, ignoring the case, in the order of Id
+	// the cursor of the next page is returned in a header when there are more transactions
+	@GetMapping("/transactions/search")
+	public ResponseEntity<Object> searchTransactions(@RequestParam("q") String fragment, @RequestParam(required = false) String cursor) {
+		if (!transactionService.isSearchEnabled()) {
+			return new ResponseEntity<>(msgSearchDisabled, HttpStatus.NOT_FOUND);
+		}
+		// a description is at most 50 characters and a fragment needs a trigram
+		if (fragment.length() < DescriptionIndex.GRAM || fragment.length() > lengthLimit) {
+			return rejected("search", msgInvalidSearch);
+		}
+		long after = 0;
+		try {
+			if (cursor != null) {
+				after = Long.parseLong(cursor);
+			}
+		} catch (NumberFormatException e) {
+			return rejected("cursor", msgInvalidCursor);
+		}
+		try {
+			var transactions = transactionService.searchTransactions(fragment, after);
+			if (!transactions.hasContent()) {
 				return new ResponseEntity<>(HttpStatus.NO_CONTENT);
 			}
-			return new ResponseEntity<>(transactions, HttpStatus.OK);
+			var headers = new HttpHeaders();
+			if (transactions.hasNext()) {
+				var content = transactions.getContent();
+				headers.set(NEXT_CURSOR_HEADER, String.valueOf(content.get(content.size() - 1).getId()));
+			}
+			return new ResponseEntity<>(transactions.getContent(), headers, HttpStatus.OK);
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, e.getMessage());
 			return new ResponseEntity<>(msgSystemError, HttpStatus.INTERNAL_SERVER_ERROR);
@@ -60,17 +203,107 @@ public class TransactionController {
 	}
 	
 	// get full transaction information for a transaction Id
+	// the request thread is released while the exchange rate is collected
+	// the client which has the cached conversion gets a 304 without reading the transaction
 	@GetMapping("/transactions/{id}")
-	public ResponseEntity<Object> getTransactionById(@PathVariable("id") long id, @RequestParam(required = false) String currency) {
+	public Mono<ResponseEntity<Object>> getTransactionById(@PathVariable("id") long id, @RequestParam(required = false) String currency,
+			@RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+		if (!transactionService.isValidCurrency(currency)) {
+			return Mono.just(rejected("currency", msgInvalidCurrency));
+		}
+		var eTag = transactionService.getCachedETag(id, currency);
+		if (ETags.matches(ifNoneMatch, eTag)) {
+			return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build());
+		}
+		return transactionService.getTransactionById(id, currency)
+				.map(transactionData -> {
+					if (!transactionData.hasExchangeRate()) {
+						return new ResponseEntity<Object>(msgExchangeRateNotFound, HttpStatus.NOT_FOUND);
+					}
+					return ResponseEntity.ok().eTag(transactionData.getETag()).body((Object) transactionData);
+				})
+				.defaultIfEmpty(new ResponseEntity<>(msgIdNotFound, HttpStatus.NOT_FOUND))
+				.onErrorResume(this::errorResponse);
+	}
+
+	// convert a list of transactions to a currency
+	@PostMapping("/transactions/convert")
+	public Mono<ResponseEntity<Object>> convertTransactions(@RequestBody List<Long> ids, @RequestParam(required = false) String currency) {
+		if (ids.size() > batchLimit) {
+			return Mono.just(rejected("batch_size", msgBatchTooLarge));
+		}
+		// a null Id can't be looked up
+		if (ids.contains(null)) {
+			return Mono.just(rejected("id", msgInvalidId));
+		}
+		if (!transactionService.isValidCurrency(currency)) {
+			return Mono.just(rejected("currency", msgInvalidCurrency));
+		}
+		return transactionService.convertTransactions(ids, currency)
+				.map(conversionData -> new ResponseEntity<Object>(conversionData, HttpStatus.OK))
+				.onErrorResume(this::errorResponse);
+	}
+
+	// the number and total amount of the transactions per day or month, they are converted when the currency is provided
+	@GetMapping("/transactions/summary")
+	public Mono<ResponseEntity<Object>> getSummary(@RequestParam(defaultValue = "month") String period,
+			@RequestParam(required = false) LocalDate from, @RequestParam(required = false) LocalDate to,
+			@RequestParam(required = false) String currency) {
+		TransactionRollup.Period rollupPeriod;
 		try {
-			var transactionData = transactionService.getTransactionById(id, currency);
+			rollupPeriod = TransactionRollup.Period.valueOf(period.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			return Mono.just(rejected("period", msgInvalidPeriod));
+		}
+		if (from != null && to != null && from.isAfter(to)) {
+			return Mono.just(rejected("range", msgInvalidRange));
+		}
+		if (!transactionService.isValidCurrency(currency)) {
+			return Mono.just(rejected("currency", msgInvalidCurrency));
+		}
+		return transactionService.getSummary(rollupPeriod, from, to, currency)
+				.map(summary -> new ResponseEntity<Object>(summary, HttpStatus.OK))
+				.onErrorResume(this::errorResponse);
+	}
+
+	// stream the transactions in a date range as NDJSON or CSV, they are converted when the currency is provided
+	@GetMapping("/transactions/export")
+	public ResponseEntity<StreamingResponseBody> exportTransactions(@RequestParam(defaultValue = "ndjson") String format,
+			@RequestParam(required = false) LocalDate from, @RequestParam(required = false) LocalDate to,
+			@RequestParam(required = false) String currency) {
+		var exportFormat = ExportFormat.of(format);
+		if (exportFormat == null) {
+			return rejected("format", output -> output.write(msgInvalidExportFormat.getBytes(StandardCharsets.UTF_8)));
+		}
+		if (!transactionService.isValidCurrency(currency)) {
+			return rejected("currency", output -> output.write(msgInvalidCurrency.getBytes(StandardCharsets.UTF_8)));
+		}
+		StreamingResponseBody body = output -> {
+			try {
+				transactionService.exportTransactions(from, to, currency, exportFormat, output);
+			} catch (IOException | RuntimeException e) {
+				logger.log(Level.SEVERE, e.getMessage());
+				throw e;
+			}
+		};
+		return ResponseEntity.ok()
+				.contentType(exportFormat.getMediaType())
+				.header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=transactions." + exportFormat.getExtension())
+				.body(body);
+	}
 
-			if (transactionData == null) {
-				return new ResponseEntity<>(msgIdNotFound, HttpStatus.NOT_FOUND);
-			} else if (transactionData.isEmpty()) {
-				return new ResponseEntity<>(msgExchangeRateNotFound, HttpStatus.NOT_FOUND);
+	// whether a transaction accepted by the ingest queue is committed
+	@GetMapping("/transactions/{id}/status")
+	public ResponseEntity<Object> getTransactionStatus(@PathVariable long id) {
+		try {
+			var status = transactionService.getTransactionStatus(id);
+			Map<String, Object> result = new LinkedHashMap<>();
+			result.put("transaction_id", id);
+			result.put("status", status.name().toLowerCase(Locale.ROOT));
+			if (status == TransactionIngestQueue.Status.NOT_FOUND) {
+				return new ResponseEntity<>(result, HttpStatus.NOT_FOUND);
 			}
-			return new ResponseEntity<>(transactionData, HttpStatus.OK);
+			return new ResponseEntity<>(result, HttpStatus.OK);
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, e.getMessage());
 			return new ResponseEntity<>(msgSystemError, HttpStatus.INTERNAL_SERVER_ERROR);
@@ -78,33 +311,130 @@ public class TransactionController {
 	}
 
 	// create a new transaction 
+	// a retry with the same Idempotency-Key header returns the transaction created by the first request
 	@PostMapping("/transactions")
-	public ResponseEntity<Object> createTransaction(@RequestBody Transaction transaction) {
+	public ResponseEntity<Object> createTransaction(@RequestBody Transaction transaction,
+			@RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
 		var description = transaction.getDescription();
 		var amount = transaction.getAmount();
 		var validationErrors = validateInput(description, amount);
 		if (validationErrors.size() > 0) {
 			return new ResponseEntity<>(validationErrors, HttpStatus.BAD_REQUEST); 
 		}
+		if (idempotencyKey != null && (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyKey.MAX_LENGTH)) {
+			return rejected("idempotency_key", msgInvalidIdempotencyKey);
+		}
+		try {
+			Transaction transactionCreated;
+			var replayed = false;
+			if (idempotencyKey == null) {
+				transactionCreated = transactionService.createTransaction(transaction.getDate(), description, amount);
+			} else {
+				var result = transactionService.createTransaction(idempotencyKey, transaction.getDate(), description, amount);
+				transactionCreated = result.getTransaction();
+				replayed = result.isReplayed();
+			}
+			// the ingest queue is full
+			if (transactionCreated == null) {
+				return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(msgIngestQueueFull);
+			}
+			// the key was used for a different transaction
+			if (replayed && !isSameTransaction(transactionCreated, transaction.getDate(), description, amount)) {
+				return new ResponseEntity<>(msgIdempotencyKeyReused, HttpStatus.UNPROCESSABLE_ENTITY);
+			}
+			// the transaction is accepted but not committed yet
+			var status = transactionService.isTransactionQueued(transactionCreated) ? HttpStatus.ACCEPTED : HttpStatus.CREATED;
+			if (replayed) {
+				return ResponseEntity.status(status).header(IDEMPOTENT_REPLAYED_HEADER, "true").body(transactionCreated);
+			}
+			return new ResponseEntity<>(transactionCreated, status);
+		} catch (IdempotencyKeys.InProgressException e) {
+			// the first request with the key is still running, the retry can try again
+			return ResponseEntity.status(HttpStatus.CONFLICT).header(HttpHeaders.RETRY_AFTER, "1").body(msgIdempotencyKeyInProgress);
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, e.getMessage());
+			return new ResponseEntity<>(msgSystemError, HttpStatus.INTERNAL_SERVER_ERROR);
+		}
+	}
+
+	// create a list of transactions, the valid ones are created and the errors of the others are returned by index
+	@PostMapping("/transactions/batch")
+	public ResponseEntity<Object> createTransactions(@RequestBody List<Transaction> transactions) {
+		if (transactions.size() > batchLimit) {
+			return rejected("batch_size", msgBatchTooLarge);
+		}
+		var validTransactions = new ArrayList<Transaction>();
+		var errors = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < transactions.size(); i++) {
+			var transaction = transactions.get(i);
+			var validationErrors = validateInput(transaction.getDescription(), transaction.getAmount());
+			if (validationErrors.size() > 0) {
+				Map<String, Object> error = new LinkedHashMap<>();
+				error.put("index", i);
+				error.put("errors", validationErrors);
+				errors.add(error);
+			} else {
+				validTransactions.add(transaction);
+			}
+		}
+		Map<String, Object> result = new LinkedHashMap<>();
+		// nothing to create
+		if (validTransactions.isEmpty() && !errors.isEmpty()) {
+			result.put("created", validTransactions);
+			result.put("errors", errors);
+			return new ResponseEntity<>(result, HttpStatus.BAD_REQUEST);
+		}
 		try {
-			var transactionCreated = transactionService.createTransaction(transaction.getDate(), description, amount);
-			return new ResponseEntity<>(transactionCreated, HttpStatus.CREATED);
+			result.put("created", transactionService.createTransactions(validTransactions));
+			result.put("errors", errors);
+			return new ResponseEntity<>(result, HttpStatus.CREATED);
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, e.getMessage());
 			return new ResponseEntity<>(msgSystemError, HttpStatus.INTERNAL_SERVER_ERROR);
 		}
 	}
 
-	private ArrayList<String> validateInput(String description, float amount) {
+	private boolean isSameTransaction(Transaction transaction, LocalDate date, String description, long amount) {
+		return Objects.equals(transaction.getDate(), date) && Objects.equals(transaction.getDescription(), description)
+				&& transaction.getAmount() == amount;
+	}
+
+	private ArrayList<String> validateInput(String description, long amount) {
 		var validationErrors = new ArrayList<String>();
+		// description is missing
+		if (description == null) {
+			validationErrors.add(msgDescriptionRequired);
+			countValidationFailure("description");
 		// description is too long
-		if (description.length() > lengthLimit) {
+		} else if (description.length() > lengthLimit) {
 			validationErrors.add(msgInvalidDescription);
+			countValidationFailure("description");
 		}
 		// amount needs to be positive
 		if (amount <= 0 ) {
 			validationErrors.add(msgInvalidTransactionAmount);
+			countValidationFailure("amount");
 		}
 		return validationErrors;
 	}
+
+	// a request rejected by the validation, the failures are counted by reason
+	private <T> ResponseEntity<T> rejected(String reason, T body) {
+		countValidationFailure(reason);
+		return new ResponseEntity<>(body, HttpStatus.BAD_REQUEST);
+	}
+
+	private void countValidationFailure(String reason) {
+		meterRegistry.counter(VALIDATION_FAILURES, "reason", reason).increment();
+	}
+
+	// a Treasury outage without a stale rate to fall back on is reported as unavailable
+	private Mono<ResponseEntity<Object>> errorResponse(Throwable e) {
+		logger.log(Level.SEVERE, e.getMessage());
+		if (e instanceof ExchangeRateUnavailableException) {
+			return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+					.header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter.toSeconds())).body(msgExchangeRateUnavailable));
+		}
+		return Mono.just(new ResponseEntity<>(msgSystemError, HttpStatus.INTERNAL_SERVER_ERROR));
+	}
 }
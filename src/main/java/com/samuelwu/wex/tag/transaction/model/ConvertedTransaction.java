@@ -0,0 +1,102 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+// a transaction with its amount converted to a currency, the exchange rate fields are left out when no rate is found
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({ "transaction_id", "description", "original_amount", "transaction_date",
+		"currency_amount", "curreny", "exchange_rate", "rate_date", "stale_rate" })
+public final class ConvertedTransaction {
+
+	private final Transaction transaction;
+	private final ExchangeRate exchangeRate;
+	private final long currencyAmount;
+	// computed by the first response, a transaction doesn't change and neither does its conversion with a rate
+	private String eTag;
+
+	public ConvertedTransaction(Transaction transaction, ExchangeRate exchangeRate) {
+		this.transaction = transaction;
+		this.exchangeRate = exchangeRate;
+		this.currencyAmount = exchangeRate == null ? 0 : Money.multiply(transaction.getAmount(), exchangeRate.getScaledRate());
+	}
+
+	@JsonIgnore
+	public boolean hasExchangeRate() {
+		return exchangeRate != null;
+	}
+
+	@JsonIgnore
+	public boolean hasStaleRate() {
+		return exchangeRate != null && exchangeRate.isStale();
+	}
+
+	// the entity tag of the fields written to JSON
+	@JsonIgnore
+	public String getETag() {
+		var current = eTag;
+		if (current == null) {
+			current = ETags.of(transaction.getId() + "|" + transaction.getDate() + "|" + transaction.getDescription() + "|" + transaction.getAmount()
+					+ "|" + getCurrency() + "|" + getExchangeRate() + "|" + getRateDate() + "|" + hasStaleRate());
+			eTag = current;
+		}
+		return current;
+	}
+
+	@JsonProperty("transaction_id")
+	public long getTransactionId() {
+		return transaction.getId();
+	}
+
+	public String getDescription() {
+		return transaction.getDescription();
+	}
+
+	@JsonProperty("original_amount")
+	@JsonSerialize(using = Money.Serializer.class)
+	public long getOriginalAmount() {
+		return transaction.getAmount();
+	}
+
+	@JsonProperty("transaction_date")
+	@JsonFormat(shape = JsonFormat.Shape.STRING)
+	public LocalDate getTransactionDate() {
+		return transaction.getDate();
+	}
+
+	@JsonProperty("currency_amount")
+	@JsonSerialize(using = Money.Serializer.class)
+	public Long getCurrencyAmount() {
+		return exchangeRate == null ? null : currencyAmount;
+	}
+
+	// the original spelling of the field is kept for the existing clients
+	@JsonProperty("curreny")
+	public String getCurrency() {
+		return exchangeRate == null ? null : exchangeRate.getCurrency();
+	}
+
+	@JsonProperty("exchange_rate")
+	@JsonSerialize(using = Money.RateSerializer.class)
+	public Long getExchangeRate() {
+		return exchangeRate == null ? null : exchangeRate.getScaledRate();
+	}
+
+	@JsonProperty("rate_date")
+	@JsonFormat(shape = JsonFormat.Shape.STRING)
+	public LocalDate getRateDate() {
+		return exchangeRate == null ? null : exchangeRate.getRecordDate();
+	}
+
+	// only written when the rate is stale
+	@JsonProperty("stale_rate")
+	public Boolean getStaleRate() {
+		return hasStaleRate() ? Boolean.TRUE : null;
+	}
+}
@@ -1,30 +1,153 @@
 package com.samuelwu.wex.tag.transaction.model;
 
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
 import java.util.*;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+// a page of the Treasury response, the rows are decoded while the response is read
+@JsonDeserialize(using = CurrencyData.Deserializer.class)
 public class CurrencyData {
 
 	public static final String RECORD_DATE = "record_date";
 	public static final String EXCHANGE_RATE = "exchange_rate";
 	public static final String COUNTRY_CURRENCY_DESC = "country_currency_desc";
-	
-	private List<Map<String, String>> data;
+	public static final String TOTAL_PAGES = "total-pages";
+
+	// the currency of every row
+	private final List<String> currencies;
+	// the rows with an exchange rate and a record date
+	private final List<ExchangeRate> rates;
+
+	// paging information of the response
+	private final int totalPages;
 
-	public List<Map<String, String>> getData() {
-		return data;
+	public CurrencyData(List<String> currencies, List<ExchangeRate> rates, int totalPages) {
+		this.currencies = Collections.unmodifiableList(currencies);
+		this.rates = Collections.unmodifiableList(rates);
+		this.totalPages = totalPages;
 	}
-	
-	public void setData(List<Map<String, String>> data) {
-		this.data = data;
+
+	public static CurrencyData ofRates(List<ExchangeRate> rates, int totalPages) {
+		var currencies = new ArrayList<String>(rates.size());
+		for (var rate : rates) {
+			currencies.add(rate.getCurrency());
+		}
+		return new CurrencyData(currencies, rates, totalPages);
 	}
-	
+
 	public List<String> getCurrencies() {
-		var currencies = new ArrayList<String>();
-		for (var currency: data) {
-			currencies.add(currency.get(COUNTRY_CURRENCY_DESC));
-		}
 		return currencies;
 	}
-	
-}
 
+	public List<ExchangeRate> getRates() {
+		return rates;
+	}
+
+	public int getTotalPages() {
+		return totalPages;
+	}
+
+	// read the fields of each row straight from the parser, without a map per row
+	public static class Deserializer extends JsonDeserializer<CurrencyData> {
+		@Override
+		public CurrencyData deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+			var currencies = new ArrayList<String>();
+			var rates = new ArrayList<ExchangeRate>();
+			var totalPages = 1;
+			if (parser.currentToken() != JsonToken.START_OBJECT) {
+				return (CurrencyData) context.handleUnexpectedToken(CurrencyData.class, parser);
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				var name = parser.currentName();
+				var token = parser.nextToken();
+				if ("data".equals(name) && token == JsonToken.START_ARRAY) {
+					while (parser.nextToken() == JsonToken.START_OBJECT) {
+						readRow(parser, context, currencies, rates);
+					}
+				} else if ("meta".equals(name) && token == JsonToken.START_OBJECT) {
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						var metaName = parser.currentName();
+						if (parser.nextToken() == JsonToken.VALUE_NUMBER_INT && TOTAL_PAGES.equals(metaName)) {
+							totalPages = parser.getIntValue();
+						} else {
+							parser.skipChildren();
+						}
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+			return new CurrencyData(currencies, rates, totalPages);
+		}
+
+		private void readRow(JsonParser parser, DeserializationContext context, List<String> currencies, List<ExchangeRate> rates) throws IOException {
+			String currency = null;
+			LocalDate recordDate = null;
+			var rate = 0L;
+			var hasRate = false;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				var name = parser.currentName();
+				var token = parser.nextToken();
+				if (token == JsonToken.VALUE_NULL) {
+					continue;
+				}
+				if (COUNTRY_CURRENCY_DESC.equals(name)) {
+					currency = parser.getText();
+				} else if (EXCHANGE_RATE.equals(name)) {
+					try {
+						rate = Money.parseScaled(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength(), Money.RATE_SCALE);
+						hasRate = true;
+					} catch (NumberFormatException | ArithmeticException e) {
+						context.handleWeirdStringValue(Long.class, parser.getText(), "not a valid exchange rate");
+					}
+				} else if (RECORD_DATE.equals(name)) {
+					recordDate = parseDate(parser, context);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			currencies.add(currency);
+			if (hasRate && recordDate != null) {
+				rates.add(new ExchangeRate(currency, recordDate, rate));
+			}
+		}
+
+		// the dates are in the yyyy-mm-dd format
+		private LocalDate parseDate(JsonParser parser, DeserializationContext context) throws IOException {
+			var chars = parser.getTextCharacters();
+			var offset = parser.getTextOffset();
+			if (parser.getTextLength() == 10 && chars[offset + 4] == '-' && chars[offset + 7] == '-') {
+				var year = digits(chars, offset, 4);
+				var month = digits(chars, offset + 5, 2);
+				var day = digits(chars, offset + 8, 2);
+				try {
+					if (year >= 0 && month >= 0 && day >= 0) {
+						return LocalDate.of(year, month, day);
+					}
+				} catch (DateTimeException e) {
+					// not a valid day of the month
+				}
+			}
+			return (LocalDate) context.handleWeirdStringValue(LocalDate.class, parser.getText(), "not a valid record date");
+		}
+
+		// the result is negative when there is a character which is not a digit
+		private int digits(char[] chars, int offset, int length) {
+			var value = 0;
+			for (int i = offset; i < offset + length; i++) {
+				if (chars[i] < '0' || chars[i] > '9') {
+					return -1;
+				}
+				value = value * 10 + (chars[i] - '0');
+			}
+			return value;
+		}
+	}
+}
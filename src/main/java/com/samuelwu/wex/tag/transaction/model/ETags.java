@@ -0,0 +1,36 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.util.DigestUtils;
+
+// the strong entity tags of the responses which only change with their content
+public final class ETags {
+
+	private static final String WEAK_PREFIX = "W/";
+
+	private ETags() {
+	}
+
+	// the quoted MD5 of the content, like the ETags of Spring's ShallowEtagHeaderFilter
+	public static String of(String content) {
+		return "\"" + DigestUtils.md5DigestAsHex(content.getBytes(StandardCharsets.UTF_8)) + "\"";
+	}
+
+	// whether an If-None-Match header has the tag, it's compared weakly as RFC 9110 says for If-None-Match
+	public static boolean matches(String ifNoneMatch, String eTag) {
+		if (ifNoneMatch == null || eTag == null) {
+			return false;
+		}
+		for (var candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith(WEAK_PREFIX)) {
+				candidate = candidate.substring(WEAK_PREFIX.length());
+			}
+			if (candidate.equals("*") || candidate.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
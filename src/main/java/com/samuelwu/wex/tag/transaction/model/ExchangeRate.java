@@ -0,0 +1,89 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import jakarta.persistence.UniqueConstraint;
+
+// an exchange rate published by Treasury Reporting Rates of Exchange, it never changes once recorded
+@Entity
+@Table(name = "exchange_rates", uniqueConstraints = @UniqueConstraint(columnNames = { "currency", "record_date" }))
+public class ExchangeRate {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	private long id;
+
+	@Column(name = "currency", nullable = false)
+	private String currency;
+
+	@Column(name = "record_date", nullable = false)
+	private LocalDate recordDate;
+
+	// scaled by a million, so a conversion is a long multiplication
+	@Column(name = "exchange_rate", nullable = false, precision = 19, scale = Money.RATE_SCALE)
+	@Convert(converter = Money.RateConverter.class)
+	private long rate;
+
+	// served from an earlier lookup while Treasury can't be reached
+	@Transient
+	private boolean stale;
+
+	protected ExchangeRate() {
+	}
+
+	public ExchangeRate(String currency, LocalDate recordDate, BigDecimal rate) {
+		this(currency, recordDate, Money.toScaledRate(rate));
+	}
+
+	public ExchangeRate(String currency, LocalDate recordDate, long scaledRate) {
+		this.currency = currency;
+		this.recordDate = recordDate;
+		this.rate = scaledRate;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getCurrency() {
+		return currency;
+	}
+
+	public LocalDate getRecordDate() {
+		return recordDate;
+	}
+
+	public BigDecimal getRate() {
+		return Money.toRate(rate);
+	}
+
+	public long getScaledRate() {
+		return rate;
+	}
+
+	public boolean isStale() {
+		return stale;
+	}
+
+	// a copy of the rate flagged as stale
+	public ExchangeRate asStale() {
+		var staleRate = new ExchangeRate(currency, recordDate, rate);
+		staleRate.stale = true;
+		return staleRate;
+	}
+
+	@Override
+	public String toString() {
+		return "ExchangeRate [currency=" + currency + ", recordDate=" + recordDate + ", rate=" + getRate() + (stale ? ", stale" : "") + "]";
+	}
+
+}
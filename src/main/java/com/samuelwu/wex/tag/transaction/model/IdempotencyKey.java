@@ -0,0 +1,68 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import java.time.Instant;
+
+import org.springframework.data.domain.Persistable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+
+// the transaction created for an Idempotency-Key header
+// a new key is always inserted rather than merged, so the key of a concurrent request is rejected by the primary key
+@Entity
+@Table(name = "idempotency_keys")
+public class IdempotencyKey implements Persistable<String> {
+
+	public static final int MAX_LENGTH = 255;
+
+	@Id
+	@Column(name = "idempotency_key", length = MAX_LENGTH)
+	private String key;
+
+	@Column(name = "transaction_id", nullable = false)
+	private long transactionId;
+
+	@Column(name = "created_at", nullable = false)
+	private Instant createdAt;
+
+	@Transient
+	private boolean isNew = true;
+
+	public IdempotencyKey() {
+	}
+
+	public IdempotencyKey(String key, long transactionId, Instant createdAt) {
+		this.key = key;
+		this.transactionId = transactionId;
+		this.createdAt = createdAt;
+	}
+
+	@Override
+	public String getId() {
+		return key;
+	}
+
+	public long getTransactionId() {
+		return transactionId;
+	}
+
+	public Instant getCreatedAt() {
+		return createdAt;
+	}
+
+	@Override
+	public boolean isNew() {
+		return isNew;
+	}
+
+	@PostLoad
+	@PostPersist
+	void markNotNew() {
+		isNew = false;
+	}
+}
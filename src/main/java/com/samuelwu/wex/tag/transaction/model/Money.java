@@ -0,0 +1,205 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+// the amounts are kept as a long number of cents and the exchange rates as a long scaled by a million
+// the rounding is half up and the common cases don't create any object
+public final class Money {
+
+	public static final int CENTS_SCALE = 2;
+	public static final int RATE_SCALE = 6;
+	private static final long rateFactor = 1_000_000;
+	// the longest number of digits parsed without BigDecimal, the scaling still checks for overflow
+	private static final int maxDigits = 17;
+
+	private Money() {
+	}
+
+	// parse a decimal number of dollars as cents
+	public static long parse(char[] chars, int offset, int length) {
+		return parseScaled(chars, offset, length, CENTS_SCALE);
+	}
+
+	// parse a decimal number as a long scaled by 10^scale, the exponent notation is parsed with BigDecimal
+	// an ArithmeticException is thrown when the scaled number doesn't fit in a long
+	public static long parseScaled(char[] chars, int offset, int length, int scale) {
+		var end = offset + length;
+		var index = offset;
+		var negative = false;
+		if (index < end && (chars[index] == '-' || chars[index] == '+')) {
+			negative = chars[index++] == '-';
+		}
+		long value = 0;
+		var digits = 0;
+		var fraction = -1;
+		var roundUp = false;
+		for (; index < end; index++) {
+			var c = chars[index];
+			if (c == '.' && fraction < 0) {
+				fraction = 0;
+				continue;
+			}
+			if (c < '0' || c > '9' || digits >= maxDigits) {
+				return new BigDecimal(chars, offset, length).setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+			}
+			if (fraction >= scale) {
+				// only the first dropped digit decides the rounding
+				if (fraction++ == scale) {
+					roundUp = c >= '5';
+				}
+				continue;
+			}
+			value = value * 10 + (c - '0');
+			digits++;
+			if (fraction >= 0) {
+				fraction++;
+			}
+		}
+		if (digits == 0) {
+			throw new NumberFormatException("Invalid number: " + new String(chars, offset, length));
+		}
+		for (var i = Math.max(fraction, 0); i < scale; i++) {
+			value = Math.multiplyExact(value, 10);
+		}
+		if (roundUp) {
+			value = Math.incrementExact(value);
+		}
+		return negative ? -value : value;
+	}
+
+	public static long parse(String amount) {
+		return parse(amount.toCharArray(), 0, amount.length());
+	}
+
+	public static long toCents(BigDecimal amount) {
+		return amount.setScale(CENTS_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	public static BigDecimal toDecimal(long cents) {
+		return BigDecimal.valueOf(cents, CENTS_SCALE);
+	}
+
+	public static long toScaledRate(BigDecimal rate) {
+		return rate.setScale(RATE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+	}
+
+	// the rate without the trailing zeros, e.g. 1.3 rather than 1.300000
+	public static BigDecimal toRate(long scaledRate) {
+		var rate = BigDecimal.valueOf(scaledRate, RATE_SCALE).stripTrailingZeros();
+		return rate.scale() < 0 ? rate.setScale(0) : rate;
+	}
+
+	// convert an amount with a scaled exchange rate, the result is rounded half up to cents
+	public static long multiply(long cents, long scaledRate) {
+		var high = Math.multiplyHigh(cents, scaledRate);
+		var low = cents * scaledRate;
+		// the product doesn't fit in a long
+		if (high != (low >> 63)) {
+			return toCents(toDecimal(cents).multiply(BigDecimal.valueOf(scaledRate, RATE_SCALE)));
+		}
+		var quotient = low / rateFactor;
+		var remainder = low % rateFactor;
+		if (Math.abs(remainder) * 2 >= rateFactor) {
+			quotient += Long.signum(low);
+		}
+		return quotient;
+	}
+
+	public static String format(long cents) {
+		return toDecimal(cents).toPlainString();
+	}
+
+	// write a scaled long as a plain decimal number, the trailing zeros of the fraction can be left out
+	static void writeScaled(JsonGenerator generator, long value, int scale, boolean stripZeros) throws IOException {
+		if (value == Long.MIN_VALUE) {
+			generator.writeNumber(BigDecimal.valueOf(value, scale));
+			return;
+		}
+		var chars = new char[21 + scale];
+		var position = chars.length;
+		var remaining = Math.abs(value);
+		var fraction = 0;
+		// skip the trailing zeros of the fraction
+		while (stripZeros && fraction < scale && remaining % 10 == 0) {
+			remaining /= 10;
+			fraction++;
+		}
+		for (; fraction < scale; fraction++) {
+			chars[--position] = (char) ('0' + remaining % 10);
+			remaining /= 10;
+		}
+		if (position < chars.length) {
+			chars[--position] = '.';
+		}
+		do {
+			chars[--position] = (char) ('0' + remaining % 10);
+			remaining /= 10;
+		} while (remaining > 0);
+		if (value < 0) {
+			chars[--position] = '-';
+		}
+		generator.writeNumber(chars, position, chars.length - position);
+	}
+
+	// write the cents as a decimal number of dollars
+	public static class Serializer extends JsonSerializer<Long> {
+		@Override
+		public void serialize(Long cents, JsonGenerator generator, SerializerProvider provider) throws IOException {
+			writeScaled(generator, cents, CENTS_SCALE, false);
+		}
+	}
+
+	// write a scaled exchange rate without the trailing zeros
+	public static class RateSerializer extends JsonSerializer<Long> {
+		@Override
+		public void serialize(Long scaledRate, JsonGenerator generator, SerializerProvider provider) throws IOException {
+			writeScaled(generator, scaledRate, RATE_SCALE, true);
+		}
+	}
+
+	// read a decimal number of dollars as cents, the number can also be a string
+	public static class Deserializer extends JsonDeserializer<Long> {
+		@Override
+		public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+			var token = parser.currentToken();
+			if (token == JsonToken.VALUE_NUMBER_INT) {
+				return Math.multiplyExact(parser.getLongValue(), 100);
+			}
+			if (token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_STRING) {
+				return (Long) context.handleUnexpectedToken(Long.class, parser);
+			}
+			try {
+				return parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+			} catch (NumberFormatException | ArithmeticException e) {
+				return (Long) context.handleWeirdStringValue(Long.class, parser.getText(), "not a valid amount");
+			}
+		}
+	}
+
+	// the exchange rate column keeps its decimal type
+	@Converter
+	public static class RateConverter implements AttributeConverter<Long, BigDecimal> {
+		@Override
+		public BigDecimal convertToDatabaseColumn(Long scaledRate) {
+			return scaledRate == null ? null : BigDecimal.valueOf(scaledRate, RATE_SCALE);
+		}
+
+		@Override
+		public Long convertToEntityAttribute(BigDecimal rate) {
+			return rate == null ? null : toScaledRate(rate);
+		}
+	}
+}
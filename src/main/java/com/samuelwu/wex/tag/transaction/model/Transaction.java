@@ -2,19 +2,31 @@ package com.samuelwu.wex.tag.transaction.model;
 
 import java.time.LocalDate;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 
+// the indexes serve the pages in the order of date or amount, they are created by the migrations as well
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+		@Index(name = "transactions_date_id", columnList = "date, id"),
+		@Index(name = "transactions_amount_id", columnList = "amount_cents, id") })
 public class Transaction {
 
+	// the Ids are allocated in blocks, so the inserts don't read the sequence one by one
+	public static final int ID_ALLOCATION_SIZE = 50;
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transactions_seq")
+	@SequenceGenerator(name = "transactions_seq", sequenceName = "transactions_seq", allocationSize = ID_ALLOCATION_SIZE)
 	private long id;
 
 	@Column(name = "date")
@@ -23,13 +35,16 @@ public class Transaction {
 	@Column(name = "description")
 	private String description;
 
-	@Column(name = "amount")
-	private float amount;
+	// in cents, it is a decimal number of dollars in JSON
+	@Column(name = "amount_cents", nullable = false)
+	@JsonSerialize(using = Money.Serializer.class)
+	@JsonDeserialize(using = Money.Deserializer.class)
+	private long amount;
 
 	public Transaction() {
 	}
 
-	public Transaction(LocalDate date, String description, float amount) {
+	public Transaction(LocalDate date, String description, long amount) {
 		this.date = date;
 		this.description = description;
 		this.amount = amount;
@@ -59,17 +74,17 @@ public class Transaction {
 		this.description = description;
 	}
 
-	public float getAmount() {
+	public long getAmount() {
 		return amount;
 	}
 
-	public void setAmount(float amount) {
+	public void setAmount(long amount) {
 		this.amount = amount;
 	}
 
 	@Override
 	public String toString() {
-		return "Transaction [id=" + id + ", date=" + date + ", desc=" + description + ", amount=" + amount + "]";
+		return "Transaction [id=" + id + ", date=" + date + ", desc=" + description + ", amount=" + Money.format(amount) + "]";
 	}
 
 }
@@ -0,0 +1,75 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+// position of a transaction in the order of date and Id, it's given to the client as an opaque token
+// the position in the order of amount and Id has the amount as well
+// a transaction without a date has an empty date in the token, it's before the transactions with a date
+public class TransactionCursor {
+
+	private static final String separator = ":";
+
+	private final LocalDate date;
+	private final long id;
+	private final Long amount;
+
+	public TransactionCursor(LocalDate date, long id) {
+		this(date, id, null);
+	}
+
+	public TransactionCursor(LocalDate date, long id, Long amount) {
+		this.date = date;
+		this.id = id;
+		this.amount = amount;
+	}
+
+	public static TransactionCursor of(Transaction transaction) {
+		return new TransactionCursor(transaction.getDate(), transaction.getId());
+	}
+
+	public static TransactionCursor ofAmount(Transaction transaction) {
+		return new TransactionCursor(transaction.getDate(), transaction.getId(), transaction.getAmount());
+	}
+
+	public static TransactionCursor decode(String token) {
+		try {
+			var value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+			var parts = value.split(separator);
+			if (parts.length != 2 && parts.length != 3) {
+				throw new IllegalArgumentException("Invalid cursor: " + token);
+			}
+			var amount = parts.length == 3 ? Long.valueOf(parts[2]) : null;
+			var date = parts[0].isEmpty() ? null : LocalDate.ofEpochDay(Long.parseLong(parts[0]));
+			return new TransactionCursor(date, Long.parseLong(parts[1]), amount);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid cursor: " + token, e);
+		}
+	}
+
+	public String encode() {
+		var value = (date == null ? "" : String.valueOf(date.toEpochDay())) + separator + id;
+		if (amount != null) {
+			value += separator + amount;
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public LocalDate getDate() {
+		return date;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public boolean hasAmount() {
+		return amount != null;
+	}
+
+	public Long getAmount() {
+		return amount;
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import java.time.LocalDate;
+
+// the ranges of dates and amounts in cents of the transactions listed, a missing bound is open
+public class TransactionFilter {
+
+	private final LocalDate from;
+	private final LocalDate to;
+	private final Long minAmount;
+	private final Long maxAmount;
+
+	public TransactionFilter(LocalDate from, LocalDate to, Long minAmount, Long maxAmount) {
+		this.from = from;
+		this.to = to;
+		this.minAmount = minAmount;
+		this.maxAmount = maxAmount;
+	}
+
+	public boolean isEmpty() {
+		return !hasDateRange() && !hasAmountRange();
+	}
+
+	public boolean hasDateRange() {
+		return from != null || to != null;
+	}
+
+	public boolean hasAmountRange() {
+		return minAmount != null || maxAmount != null;
+	}
+
+	// the start of a range can't be after its end
+	public boolean isValid() {
+		return (from == null || to == null || !from.isAfter(to))
+				&& (minAmount == null || maxAmount == null || minAmount <= maxAmount);
+	}
+
+	// a filter on the amounts only is listed in the order of amount and Id, so it reads the amount index
+	public boolean isOrderedByAmount() {
+		return hasAmountRange() && !hasDateRange();
+	}
+
+	public LocalDate getFrom() {
+		return from;
+	}
+
+	public LocalDate getTo() {
+		return to;
+	}
+
+	public Long getMinAmount() {
+		return minAmount;
+	}
+
+	public Long getMaxAmount() {
+		return maxAmount;
+	}
+
+}
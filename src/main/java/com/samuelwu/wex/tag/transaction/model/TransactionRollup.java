@@ -0,0 +1,117 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Objects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+// the number and the total amount in cents of the transactions in a day or a month
+// the rollups are updated with the transactions, so a summary doesn't read the transactions
+@Entity
+@Table(name = "transaction_rollups")
+@IdClass(TransactionRollup.Key.class)
+public class TransactionRollup {
+
+	public enum Period {
+		DAY, MONTH;
+
+		public LocalDate start(LocalDate date) {
+			return this == DAY ? date : date.withDayOfMonth(1);
+		}
+
+		public LocalDate end(LocalDate start) {
+			return this == DAY ? start : start.with(TemporalAdjusters.lastDayOfMonth());
+		}
+	}
+
+	@Id
+	@Enumerated(EnumType.STRING)
+	@Column(name = "period", length = 5)
+	private Period period;
+
+	@Id
+	@Column(name = "start_date")
+	private LocalDate startDate;
+
+	@Column(name = "transaction_count", nullable = false)
+	private long count;
+
+	@Column(name = "amount_cents", nullable = false)
+	private long amount;
+
+	public TransactionRollup() {
+	}
+
+	public TransactionRollup(Period period, LocalDate startDate, long count, long amount) {
+		this.period = period;
+		this.startDate = startDate;
+		this.count = count;
+		this.amount = amount;
+	}
+
+	public Period getPeriod() {
+		return period;
+	}
+
+	public LocalDate getStartDate() {
+		return startDate;
+	}
+
+	// the last day of the period, the exchange rate of a summary is collected on this date
+	public LocalDate getEndDate() {
+		return period.end(startDate);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getAmount() {
+		return amount;
+	}
+
+	public static class Key implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private Period period;
+		private LocalDate startDate;
+
+		public Key() {
+		}
+
+		public Key(Period period, LocalDate startDate) {
+			this.period = period;
+			this.startDate = startDate;
+		}
+
+		public Period getPeriod() {
+			return period;
+		}
+
+		public LocalDate getStartDate() {
+			return startDate;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			var key = (Key) other;
+			return period == key.period && Objects.equals(startDate, key.startDate);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(period, startDate);
+		}
+	}
+}
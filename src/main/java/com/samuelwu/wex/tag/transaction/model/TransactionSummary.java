@@ -0,0 +1,79 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import java.time.LocalDate;
+import java.util.Locale;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+// the totals of a day or a month, the total is converted with the exchange rate on the last day of the period
+// the exchange rate fields are left out when no rate is found
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({ "period", "start_date", "end_date", "count", "total_amount", "currency_amount", "currency", "exchange_rate", "rate_date", "stale_rate" })
+public final class TransactionSummary {
+
+	private final TransactionRollup rollup;
+	private final ExchangeRate exchangeRate;
+
+	public TransactionSummary(TransactionRollup rollup, ExchangeRate exchangeRate) {
+		this.rollup = rollup;
+		this.exchangeRate = exchangeRate;
+	}
+
+	public String getPeriod() {
+		return rollup.getPeriod().name().toLowerCase(Locale.ROOT);
+	}
+
+	@JsonProperty("start_date")
+	@JsonFormat(shape = JsonFormat.Shape.STRING)
+	public LocalDate getStartDate() {
+		return rollup.getStartDate();
+	}
+
+	@JsonProperty("end_date")
+	@JsonFormat(shape = JsonFormat.Shape.STRING)
+	public LocalDate getEndDate() {
+		return rollup.getEndDate();
+	}
+
+	public long getCount() {
+		return rollup.getCount();
+	}
+
+	@JsonProperty("total_amount")
+	@JsonSerialize(using = Money.Serializer.class)
+	public long getTotalAmount() {
+		return rollup.getAmount();
+	}
+
+	@JsonProperty("currency_amount")
+	@JsonSerialize(using = Money.Serializer.class)
+	public Long getCurrencyAmount() {
+		return exchangeRate == null ? null : Money.multiply(rollup.getAmount(), exchangeRate.getScaledRate());
+	}
+
+	public String getCurrency() {
+		return exchangeRate == null ? null : exchangeRate.getCurrency();
+	}
+
+	@JsonProperty("exchange_rate")
+	@JsonSerialize(using = Money.RateSerializer.class)
+	public Long getExchangeRate() {
+		return exchangeRate == null ? null : exchangeRate.getScaledRate();
+	}
+
+	@JsonProperty("rate_date")
+	@JsonFormat(shape = JsonFormat.Shape.STRING)
+	public LocalDate getRateDate() {
+		return exchangeRate == null ? null : exchangeRate.getRecordDate();
+	}
+
+	// only written when the rate is stale
+	@JsonProperty("stale_rate")
+	public Boolean getStaleRate() {
+		return exchangeRate != null && exchangeRate.isStale() ? Boolean.TRUE : null;
+	}
+}
@@ -0,0 +1,17 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
+
+public interface ExchangeRateRepository extends JpaRepository<ExchangeRate, Long> {
+
+  @Query("select max(e.recordDate) from ExchangeRate e")
+  LocalDate findLatestRecordDate();
+
+  List<ExchangeRate> findAllByOrderByCurrencyAscRecordDateAsc();
+}
@@ -0,0 +1,20 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import java.time.Instant;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.samuelwu.wex.tag.transaction.model.IdempotencyKey;
+
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+
+  // delete the keys created before the cutoff in one statement
+  @Transactional
+  @Modifying
+  @Query("delete from IdempotencyKey k where k.createdAt < :cutoff")
+  int deleteCreatedBefore(@Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,94 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Repository;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+// the transactions in the database, read and written by the JPA repository
+@Repository
+@ConditionalOnProperty(name = "transaction.store", havingValue = TransactionStore.JPA, matchIfMissing = true)
+public class JpaTransactionStore implements TransactionStore {
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public Transaction save(Transaction transaction) {
+		return transactionRepository.save(transaction);
+	}
+
+	@Override
+	public List<Transaction> saveAll(List<Transaction> transactions) {
+		return transactionRepository.saveAll(transactions);
+	}
+
+	@Override
+	public Optional<Transaction> findById(long id) {
+		return transactionRepository.findById(id);
+	}
+
+	@Override
+	public List<Transaction> findAllById(List<Long> ids) {
+		return transactionRepository.findAllById(ids);
+	}
+
+	@Override
+	public boolean existsById(long id) {
+		return transactionRepository.existsById(id);
+	}
+
+	// the date pages read the (date, id) index from the cursor
+	@Override
+	public Slice<Transaction> findPage(LocalDate date, TransactionCursor cursor, int pageSize) {
+		var pageRequest = PageRequest.of(0, pageSize);
+		if (date == null) {
+			if (cursor == null)
+				return transactionRepository.findAllByOrderByDateAscIdAsc(pageRequest);
+			if (cursor.getDate() == null)
+				return transactionRepository.findAfterNoDate(cursor.getId(), pageRequest);
+			return transactionRepository.findAfter(cursor.getDate(), cursor.getId(), pageRequest);
+		}
+		if (cursor == null)
+			return transactionRepository.findByDateOrderByIdAsc(date, pageRequest);
+		return transactionRepository.findByDateAndIdGreaterThanOrderByIdAsc(date, cursor.getId(), pageRequest);
+	}
+
+	@Override
+	public Slice<Transaction> findPage(TransactionFilter filter, TransactionCursor cursor, int pageSize) {
+		return transactionRepository.findPage(filter, cursor, pageSize);
+	}
+
+	// each transaction is detached once it's read, so the persistence context doesn't grow with the table
+	@Override
+	public Stream<Transaction> streamByDateBetween(LocalDate from, LocalDate to) {
+		return transactionRepository.streamByDateBetween(from, to).map(transaction -> {
+			entityManager.detach(transaction);
+			return transaction;
+		});
+	}
+
+	@Override
+	public Stream<Transaction> streamAll() {
+		return transactionRepository.streamAll().map(transaction -> {
+			entityManager.detach(transaction);
+			return transaction;
+		});
+	}
+}
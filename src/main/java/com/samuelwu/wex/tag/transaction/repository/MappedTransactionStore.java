@@ -0,0 +1,421 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// an append-only log of fixed-width transaction records in memory-mapped segment files, the transactions are never updated
+// the Ids are assigned in the order of the records, so the offset of a record is computed from its Id
+// the (date, id) and (amount, id) indexes are kept in memory and rebuilt from the segments at startup
+// a record appended in a database transaction is pending until the transaction commits, it is committed in the segments just
+// before the database and only found once the database has committed, so a crash after the database commit can't lose a
+// transaction the client was answered for, a rollback voids it and a pending record found at startup is voided
+@Repository
+@ConditionalOnProperty(name = "transaction.store", havingValue = TransactionStore.MAPPED)
+public class MappedTransactionStore implements TransactionStore {
+
+	// a record is the Id, the epoch day, the amount in cents, the description length and bytes, the state, and the CRC32 of the
+	// fields before the state, the state is left out so it can be changed with a single byte write
+	static final int RECORD_SIZE = 256;
+	private static final int ID = 0;
+	private static final int DATE = 8;
+	private static final int AMOUNT = 12;
+	private static final int DESCRIPTION_LENGTH = 20;
+	private static final int DESCRIPTION = 22;
+	private static final int STATE = RECORD_SIZE - 5;
+	private static final int CHECKSUM = RECORD_SIZE - 4;
+	static final int MAX_DESCRIPTION_BYTES = STATE - DESCRIPTION;
+	private static final byte PENDING = 0;
+	private static final byte COMMITTED = 1;
+	private static final byte VOID = 2;
+	// a missing date or description
+	private static final int NO_DATE = Integer.MIN_VALUE;
+	private static final short NO_DESCRIPTION = -1;
+	// the missing dates are first in the date index
+	private static final long NO_DATE_KEY = Long.MIN_VALUE;
+	private static final String SEGMENT_FORMAT = "transactions-%06d.seg";
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Value("${transaction.store.path:./transactions}")
+	private String path;
+	// 64 MB segments by default
+	@Value("${transaction.store.segment.records:262144}")
+	private int segmentRecords;
+	// force every append to the disk, otherwise the OS writes the pages, so they survive a crash of the application but not of the machine
+	@Value("${transaction.store.force:false}")
+	private boolean force;
+
+	private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+	private final ConcurrentSkipListSet<IndexKey> dateIndex = new ConcurrentSkipListSet<>();
+	private final ConcurrentSkipListSet<IndexKey> amountIndex = new ConcurrentSkipListSet<>();
+	// the records are written in one go from this buffer, it's used under the append lock
+	private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+	// the number of records, which is also the last Id, it's published after the record is written
+	private volatile long count;
+	// the committed records whose database transaction hasn't completed yet, they aren't found until it has, used under the lock
+	private final Set<Long> completing = new HashSet<>();
+
+	// map the segments and index their committed records, the scan stops at the first record which isn't complete
+	@PostConstruct
+	public synchronized void open() throws IOException {
+		var directory = Path.of(path);
+		Files.createDirectories(directory);
+		for (int segment = 0; Files.exists(segmentPath(segment)); segment++) {
+			var buffer = map(segment);
+			segments.add(buffer);
+			for (int i = 0; i < segmentRecords; i++) {
+				var offset = i * RECORD_SIZE;
+				var id = buffer.getLong(offset + ID);
+				if (id == 0) {
+					break;
+				}
+				if (id != count + 1 || checksum(buffer, offset) != buffer.getInt(offset + CHECKSUM)) {
+					logger.warning("Dropping the incomplete record " + (count + 1) + " and the records after it");
+					truncate(segment, offset);
+					break;
+				}
+				if (buffer.get(offset + STATE) == COMMITTED) {
+					index(read(buffer, offset));
+				} else if (buffer.get(offset + STATE) == PENDING) {
+					// its database transaction didn't complete
+					buffer.put(offset + STATE, VOID);
+				}
+				count = id;
+			}
+			if (count < (long) (segment + 1) * segmentRecords) {
+				break;
+			}
+		}
+		logger.info("Opened " + count + " transactions in " + directory.toAbsolutePath());
+	}
+
+	@PreDestroy
+	public synchronized void close() {
+		for (var segment : segments) {
+			segment.force();
+		}
+	}
+
+	@Override
+	public Transaction save(Transaction transaction) {
+		return saveAll(List.of(transaction)).get(0);
+	}
+
+	// the transactions are appended under one lock and forced together
+	// in a database transaction they are committed before it and only found once it is committed
+	@Override
+	public synchronized List<Transaction> saveAll(List<Transaction> transactions) {
+		for (var transaction : transactions) {
+			var description = transaction.getDescription() == null ? null : transaction.getDescription().getBytes(StandardCharsets.UTF_8);
+			if (description != null && description.length > MAX_DESCRIPTION_BYTES) {
+				throw new IllegalArgumentException("The description is longer than " + MAX_DESCRIPTION_BYTES + " bytes");
+			}
+		}
+		var pending = TransactionSynchronizationManager.isSynchronizationActive();
+		try {
+			var first = count + 1;
+			for (var transaction : transactions) {
+				append(transaction, count + 1, pending ? PENDING : COMMITTED);
+				transaction.setId(count + 1);
+				if (!pending) {
+					index(transaction);
+				}
+				count = transaction.getId();
+			}
+			force(first, count);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to append the transactions", e);
+		}
+		if (pending && !transactions.isEmpty()) {
+			var appended = List.copyOf(transactions);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					commit(appended);
+				}
+
+				// an unknown outcome keeps the records, the database may have committed them
+				@Override
+				public void afterCompletion(int status) {
+					complete(appended, status != STATUS_ROLLED_BACK);
+				}
+			});
+		}
+		return transactions;
+	}
+
+	// the pending records are committed in the segments before the database transaction, they aren't found until it completes
+	// a crash between the two commits keeps the transactions without their rollups rather than losing them
+	private synchronized void commit(List<Transaction> transactions) {
+		for (var transaction : transactions) {
+			completing.add(transaction.getId());
+			setState(transaction.getId(), COMMITTED);
+		}
+		force(transactions.get(0).getId(), transactions.get(transactions.size() - 1).getId());
+	}
+
+	// the committed records are indexed, or voided when their database transaction is rolled back
+	private synchronized void complete(List<Transaction> transactions, boolean committed) {
+		for (var transaction : transactions) {
+			completing.remove(transaction.getId());
+			setState(transaction.getId(), committed ? COMMITTED : VOID);
+			if (committed) {
+				index(transaction);
+			}
+		}
+		force(transactions.get(0).getId(), transactions.get(transactions.size() - 1).getId());
+	}
+
+	private void setState(long id, byte state) {
+		segments.get(segmentOf(id)).put(offsetOf(id) + STATE, state);
+	}
+
+	private void force(long first, long last) {
+		if (force) {
+			for (var segment = segmentOf(first); segment <= segmentOf(last); segment++) {
+				segments.get(segment).force();
+			}
+		}
+	}
+
+	@Override
+	public Optional<Transaction> findById(long id) {
+		if (!existsById(id)) {
+			return Optional.empty();
+		}
+		return Optional.of(read(id));
+	}
+
+	@Override
+	public List<Transaction> findAllById(List<Long> ids) {
+		var transactions = new ArrayList<Transaction>(ids.size());
+		for (var id : ids) {
+			findById(id).ifPresent(transactions::add);
+		}
+		return transactions;
+	}
+
+	// a pending or voided record isn't found, nor a committed one whose database transaction hasn't completed
+	// the state is read under the lock it's written with
+	@Override
+	public synchronized boolean existsById(long id) {
+		return id >= 1 && id <= count && segments.get(segmentOf(id)).get(offsetOf(id) + STATE) == COMMITTED && !completing.contains(id);
+	}
+
+	@Override
+	public Slice<Transaction> findPage(LocalDate date, TransactionCursor cursor, int pageSize) {
+		return findPage(new TransactionFilter(date, date, null, null), cursor, pageSize);
+	}
+
+	// the page is read from the index of its order, the other range is checked on each transaction
+	// a date range leaves out the transactions without a date, like in the database
+	@Override
+	public Slice<Transaction> findPage(TransactionFilter filter, TransactionCursor cursor, int pageSize) {
+		var byAmount = filter.isOrderedByAmount();
+		var index = byAmount ? amountIndex : dateIndex;
+		var lowest = byAmount ? IndexKey.first(filter.getMinAmount())
+				: filter.hasDateRange() ? firstDated(filter.getFrom()) : IndexKey.first(null);
+		var highest = byAmount ? IndexKey.last(filter.getMaxAmount()) : lastDated(filter.getTo());
+		var from = lowest;
+		var fromInclusive = true;
+		if (cursor != null) {
+			var after = new IndexKey(byAmount ? cursor.getAmount() : dateKey(cursor.getDate()), cursor.getId());
+			if (after.compareTo(lowest) >= 0) {
+				from = after;
+				fromInclusive = false;
+			}
+		}
+		var keys = from.compareTo(highest) > 0 ? Collections.<IndexKey>emptySortedSet()
+				: index.subSet(from, fromInclusive, highest, true);
+		Predicate<Transaction> amountRange = transaction -> byAmount
+				|| (filter.getMinAmount() == null || transaction.getAmount() >= filter.getMinAmount())
+						&& (filter.getMaxAmount() == null || transaction.getAmount() <= filter.getMaxAmount());
+
+		// one more transaction tells whether there is a next page
+		var transactions = new ArrayList<Transaction>(pageSize + 1);
+		for (var key : keys) {
+			var transaction = read(key.id);
+			if (amountRange.test(transaction) && transactions.add(transaction) && transactions.size() > pageSize) {
+				break;
+			}
+		}
+		var hasNext = transactions.size() > pageSize;
+		var content = hasNext ? transactions.subList(0, pageSize) : transactions;
+		return new SliceImpl<>(content, PageRequest.of(0, pageSize), hasNext);
+	}
+
+	@Override
+	public Stream<Transaction> streamByDateBetween(LocalDate from, LocalDate to) {
+		return dateIndex.subSet(firstDated(from), true, lastDated(to), true).stream()
+				.map(key -> read(key.id));
+	}
+
+	@Override
+	public Stream<Transaction> streamAll() {
+		return dateIndex.stream().map(key -> read(key.id));
+	}
+
+	public long count() {
+		return count;
+	}
+
+	private void append(Transaction transaction, long id, byte state) throws IOException {
+		var segment = segmentOf(id);
+		if (segment == segments.size()) {
+			segments.add(map(segment));
+		}
+		Arrays.fill(record.array(), (byte) 0);
+		record.putLong(ID, id);
+		record.putInt(DATE, transaction.getDate() == null ? NO_DATE : (int) transaction.getDate().toEpochDay());
+		record.putLong(AMOUNT, transaction.getAmount());
+		if (transaction.getDescription() == null) {
+			record.putShort(DESCRIPTION_LENGTH, NO_DESCRIPTION);
+		} else {
+			var description = transaction.getDescription().getBytes(StandardCharsets.UTF_8);
+			record.putShort(DESCRIPTION_LENGTH, (short) description.length);
+			record.put(DESCRIPTION, description);
+		}
+		record.put(STATE, state);
+		record.putInt(CHECKSUM, checksum(record, 0));
+		segments.get(segment).put(offsetOf(id), record, 0, RECORD_SIZE);
+	}
+
+	private Transaction read(long id) {
+		return read(segments.get(segmentOf(id)), offsetOf(id));
+	}
+
+	private Transaction read(ByteBuffer buffer, int offset) {
+		var date = buffer.getInt(offset + DATE);
+		var length = buffer.getShort(offset + DESCRIPTION_LENGTH);
+		String description = null;
+		if (length != NO_DESCRIPTION) {
+			var bytes = new byte[length];
+			buffer.get(offset + DESCRIPTION, bytes);
+			description = new String(bytes, StandardCharsets.UTF_8);
+		}
+		var transaction = new Transaction(date == NO_DATE ? null : LocalDate.ofEpochDay(date), description, buffer.getLong(offset + AMOUNT));
+		transaction.setId(buffer.getLong(offset + ID));
+		return transaction;
+	}
+
+	private void index(Transaction transaction) {
+		dateIndex.add(new IndexKey(dateKey(transaction.getDate()), transaction.getId()));
+		amountIndex.add(new IndexKey(transaction.getAmount(), transaction.getId()));
+	}
+
+	// the records after an incomplete one are cleared and the segments after it are deleted, so they can't be read later
+	private void truncate(int segment, int offset) throws IOException {
+		var buffer = segments.get(segment);
+		// cleared a record at a time, the rest of a segment can be tens of MB
+		var zeros = new byte[RECORD_SIZE];
+		for (var position = offset; position < segmentRecords * RECORD_SIZE; position += RECORD_SIZE) {
+			buffer.put(position, zeros);
+		}
+		buffer.force();
+		var next = segment + 1;
+		while (Files.deleteIfExists(segmentPath(next))) {
+			next++;
+		}
+	}
+
+	// the segment files have their full size from the start
+	private MappedByteBuffer map(int segment) throws IOException {
+		try (var channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+		}
+	}
+
+	private Path segmentPath(int segment) {
+		return Path.of(path, String.format(SEGMENT_FORMAT, segment));
+	}
+
+	private int segmentOf(long id) {
+		return (int) ((id - 1) / segmentRecords);
+	}
+
+	private int offsetOf(long id) {
+		return (int) ((id - 1) % segmentRecords) * RECORD_SIZE;
+	}
+
+	private static int checksum(ByteBuffer buffer, int offset) {
+		var crc = new CRC32();
+		crc.update(buffer.slice(offset, STATE));
+		return (int) crc.getValue();
+	}
+
+	// the missing dates are first like in the database
+	private static Long dateKey(LocalDate date) {
+		return date == null ? NO_DATE_KEY : date.toEpochDay();
+	}
+
+	// the bounds of a date range, the missing dates are before the first bound even when the range is open
+	private static IndexKey firstDated(LocalDate from) {
+		return IndexKey.first(from == null ? NO_DATE_KEY + 1 : from.toEpochDay());
+	}
+
+	private static IndexKey lastDated(LocalDate to) {
+		return IndexKey.last(to == null ? null : to.toEpochDay());
+	}
+
+	// an entry of an index in the order of the key and the Id
+	private static final class IndexKey implements Comparable<IndexKey> {
+		private final long key;
+		private final long id;
+
+		IndexKey(long key, long id) {
+			this.key = key;
+			this.id = id;
+		}
+
+		// the bounds of a range, a missing bound is open
+		static IndexKey first(Long key) {
+			return new IndexKey(key == null ? Long.MIN_VALUE : key, Long.MIN_VALUE);
+		}
+
+		static IndexKey last(Long key) {
+			return new IndexKey(key == null ? Long.MAX_VALUE : key, Long.MAX_VALUE);
+		}
+
+		@Override
+		public int compareTo(IndexKey other) {
+			var compared = Long.compare(key, other.key);
+			return compared != 0 ? compared : Long.compare(id, other.id);
+		}
+	}
+}
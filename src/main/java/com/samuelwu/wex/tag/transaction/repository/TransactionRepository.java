@@ -1,14 +1,46 @@
 package com.samuelwu.wex.tag.transaction.repository;
 
 import java.time.LocalDate;
-import java.util.List;
+import java.util.stream.Stream;
 
-import org.springframework.data.domain.PageRequest;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 import com.samuelwu.wex.tag.transaction.model.Transaction;
 
-public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+import jakarta.persistence.QueryHint;
 
-  List<Transaction> findByDate(LocalDate date, PageRequest pageSize);
+public interface TransactionRepository extends JpaRepository<Transaction, Long>, TransactionRepositoryCustom {
+
+  // keyset pages in the order of date and Id, a slice doesn't count the rows
+  Slice<Transaction> findAllByOrderByDateAscIdAsc(Pageable pageable);
+
+  // the first condition is a range of the (date, id) index, the transactions without a date are before the cursor
+  @Query("select t from Transaction t where t.date >= :date and (t.date > :date or t.id > :id) order by t.date, t.id")
+  Slice<Transaction> findAfter(@Param("date") LocalDate date, @Param("id") long id, Pageable pageable);
+
+  // the transactions without a date are first, like in the index
+  @Query("select t from Transaction t where (t.date is null and t.id > :id) or t.date is not null order by t.date, t.id")
+  Slice<Transaction> findAfterNoDate(@Param("id") long id, Pageable pageable);
+
+  Slice<Transaction> findByDateOrderByIdAsc(LocalDate date, Pageable pageable);
+
+  Slice<Transaction> findByDateAndIdGreaterThanOrderByIdAsc(LocalDate date, long id, Pageable pageable);
+
+  // read the transactions in a date range one by one, the stream needs to be closed in a transaction
+  @QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+      @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+  @Query("select t from Transaction t where t.date >= :from and t.date <= :to order by t.date, t.id")
+  Stream<Transaction> streamByDateBetween(@Param("from") LocalDate from, @Param("to") LocalDate to);
+
+  // read all the transactions one by one, the ones without a date are first
+  @QueryHints({ @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+      @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true") })
+  @Query("select t from Transaction t order by t.date, t.id")
+  Stream<Transaction> streamAll();
 }
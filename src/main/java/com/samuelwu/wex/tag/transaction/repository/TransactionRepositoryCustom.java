@@ -0,0 +1,13 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import org.springframework.data.domain.Slice;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+
+public interface TransactionRepositoryCustom {
+
+  // keyset pages of the transactions in the ranges of the filter
+  Slice<Transaction> findPage(TransactionFilter filter, TransactionCursor cursor, int pageSize);
+}
@@ -0,0 +1,80 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+
+// the query only has the conditions of the bounds which are set
+// the filtered transactions are read in the order of the (date, id) or (amount_cents, id) index
+public class TransactionRepositoryCustomImpl implements TransactionRepositoryCustom {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public Slice<Transaction> findPage(TransactionFilter filter, TransactionCursor cursor, int pageSize) {
+		var builder = entityManager.getCriteriaBuilder();
+		var query = builder.createQuery(Transaction.class);
+		var transaction = query.from(Transaction.class);
+		Expression<LocalDate> date = transaction.get("date");
+		Expression<Long> amount = transaction.get("amount");
+		Expression<Long> id = transaction.get("id");
+
+		var conditions = new ArrayList<Predicate>();
+		if (filter.getFrom() != null) {
+			conditions.add(builder.greaterThanOrEqualTo(date, filter.getFrom()));
+		}
+		if (filter.getTo() != null) {
+			conditions.add(builder.lessThanOrEqualTo(date, filter.getTo()));
+		}
+		if (filter.getMinAmount() != null) {
+			conditions.add(builder.greaterThanOrEqualTo(amount, filter.getMinAmount()));
+		}
+		if (filter.getMaxAmount() != null) {
+			conditions.add(builder.lessThanOrEqualTo(amount, filter.getMaxAmount()));
+		}
+		if (cursor != null) {
+			if (filter.isOrderedByAmount()) {
+				conditions.add(after(builder, amount, cursor.getAmount(), id, cursor.getId()));
+			} else {
+				conditions.add(after(builder, date, cursor.getDate(), id, cursor.getId()));
+			}
+		}
+		query.where(conditions.toArray(new Predicate[0]));
+		if (filter.isOrderedByAmount()) {
+			query.orderBy(builder.asc(amount), builder.asc(id));
+		} else {
+			query.orderBy(builder.asc(date), builder.asc(id));
+		}
+
+		// one more transaction tells whether there is a next page
+		var transactions = entityManager.createQuery(query).setMaxResults(pageSize + 1).getResultList();
+		var hasNext = transactions.size() > pageSize;
+		var content = hasNext ? transactions.subList(0, pageSize) : transactions;
+		return new SliceImpl<>(content, PageRequest.of(0, pageSize), hasNext);
+	}
+
+	// the transactions after the cursor, the first condition is a range of the index
+	// a missing key is first, so the transactions with a key are all after a cursor without one
+	private <T extends Comparable<? super T>> Predicate after(CriteriaBuilder builder, Expression<T> key, T cursorKey,
+			Expression<Long> id, long cursorId) {
+		if (cursorKey == null) {
+			return builder.or(builder.and(builder.isNull(key), builder.greaterThan(id, cursorId)), builder.isNotNull(key));
+		}
+		return builder.and(builder.greaterThanOrEqualTo(key, cursorKey),
+				builder.or(builder.greaterThan(key, cursorKey), builder.greaterThan(id, cursorId)));
+	}
+}
@@ -0,0 +1,13 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.samuelwu.wex.tag.transaction.model.TransactionRollup;
+
+public interface TransactionRollupRepository extends JpaRepository<TransactionRollup, TransactionRollup.Key>, TransactionRollupRepositoryCustom {
+
+  List<TransactionRollup> findByPeriodAndStartDateBetweenOrderByStartDateAsc(TransactionRollup.Period period, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,11 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import java.util.Collection;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+
+public interface TransactionRollupRepositoryCustom {
+
+  // add the transactions to the rollups of their day and month, it needs to run in the transaction which saves them
+  void add(Collection<Transaction> transactions);
+}
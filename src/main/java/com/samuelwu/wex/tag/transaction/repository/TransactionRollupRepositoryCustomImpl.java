@@ -0,0 +1,58 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import java.sql.Date;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.TreeMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionRollup;
+
+// the transactions are totalled per rollup first, so a batch updates each day and month once
+public class TransactionRollupRepositoryCustomImpl implements TransactionRollupRepositoryCustom {
+
+	private static final String mergeSql = "merge into transaction_rollups r using (select cast(? as varchar(5)) period, "
+			+ "cast(? as date) start_date, cast(? as bigint) transaction_count, cast(? as bigint) amount_cents) v "
+			+ "on r.period = v.period and r.start_date = v.start_date "
+			+ "when matched then update set transaction_count = r.transaction_count + v.transaction_count, amount_cents = r.amount_cents + v.amount_cents "
+			+ "when not matched then insert (period, start_date, transaction_count, amount_cents) "
+			+ "values (v.period, v.start_date, v.transaction_count, v.amount_cents)";
+
+	// the rollups are always updated in the same order, so two transactions don't wait for each other
+	private static final Comparator<TransactionRollup.Key> keyOrder = Comparator.comparing(TransactionRollup.Key::getPeriod)
+			.thenComparing(TransactionRollup.Key::getStartDate);
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Override
+	public void add(Collection<Transaction> transactions) {
+		var totals = new TreeMap<TransactionRollup.Key, long[]>(keyOrder);
+		for (var transaction : transactions) {
+			// a transaction without a date isn't in any rollup
+			if (transaction.getDate() == null) {
+				continue;
+			}
+			for (var period : TransactionRollup.Period.values()) {
+				var total = totals.computeIfAbsent(new TransactionRollup.Key(period, period.start(transaction.getDate())), key -> new long[2]);
+				total[0]++;
+				total[1] += transaction.getAmount();
+			}
+		}
+		totals.forEach((key, total) -> merge(key, total[0], total[1]));
+	}
+
+	private void merge(TransactionRollup.Key key, long count, long amount) {
+		Object[] values = { key.getPeriod().name(), Date.valueOf(key.getStartDate()), count, amount };
+		try {
+			jdbcTemplate.update(mergeSql, values);
+		} catch (DuplicateKeyException e) {
+			// a concurrent transaction has inserted the rollup first, it's updated now that it's committed
+			jdbcTemplate.update(mergeSql, values);
+		}
+	}
+}
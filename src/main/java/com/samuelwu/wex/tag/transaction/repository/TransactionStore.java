@@ -0,0 +1,44 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Slice;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+
+// the storage of the transactions, it's chosen by transaction.store
+// jpa keeps them in the database, mapped appends them to memory-mapped segment files
+public interface TransactionStore {
+
+  String JPA = "jpa";
+  String MAPPED = "mapped";
+
+  // the Id is assigned when the transaction is saved
+  Transaction save(Transaction transaction);
+
+  List<Transaction> saveAll(List<Transaction> transactions);
+
+  Optional<Transaction> findById(long id);
+
+  // the transactions which are found, in no particular order
+  List<Transaction> findAllById(List<Long> ids);
+
+  boolean existsById(long id);
+
+  // keyset pages in the order of date and Id, the transactions of a day when the date is set
+  Slice<Transaction> findPage(LocalDate date, TransactionCursor cursor, int pageSize);
+
+  // keyset pages of the transactions in the ranges of the filter
+  Slice<Transaction> findPage(TransactionFilter filter, TransactionCursor cursor, int pageSize);
+
+  // the transactions in a date range in the order of date and Id, the stream needs to be closed
+  Stream<Transaction> streamByDateBetween(LocalDate from, LocalDate to);
+
+  // all the transactions in the order of date and Id, the ones without a date are first, the stream needs to be closed
+  Stream<Transaction> streamAll();
+}
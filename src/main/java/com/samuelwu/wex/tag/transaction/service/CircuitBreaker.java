@@ -0,0 +1,142 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import reactor.core.publisher.Mono;
+
+// stop calling an upstream which keeps failing, the calls fail at once while the breaker is open
+// once it was open long enough a single trial call decides whether it closes again
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	private final String name;
+	private final int failureThreshold;
+	private final Duration openDuration;
+	// the errors which count as a failure of the upstream
+	private final Predicate<Throwable> isFailure;
+	private final Clock clock;
+
+	private State state = State.CLOSED;
+	private int failures;
+	private Instant openedAt;
+	private boolean trialInFlight;
+	// number of times the breaker moved to each state
+	private final Map<State, AtomicLong> transitions = new EnumMap<>(State.class);
+	private final AtomicLong rejectedCalls = new AtomicLong();
+
+	public CircuitBreaker(String name, int failureThreshold, Duration openDuration, Predicate<Throwable> isFailure) {
+		this(name, failureThreshold, openDuration, isFailure, Clock.systemUTC());
+	}
+
+	CircuitBreaker(String name, int failureThreshold, Duration openDuration, Predicate<Throwable> isFailure, Clock clock) {
+		this.name = name;
+		this.failureThreshold = failureThreshold;
+		this.openDuration = openDuration;
+		this.isFailure = isFailure;
+		this.clock = clock;
+		for (var target : State.values()) {
+			transitions.put(target, new AtomicLong());
+		}
+	}
+
+	public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+		return Mono.defer(() -> {
+			var trial = acquire();
+			if (trial == null) {
+				rejectedCalls.incrementAndGet();
+				return Mono.error(new OpenException(name));
+			}
+			return call.get()
+					.doOnSuccess(value -> onSuccess())
+					.doOnError(e -> onError(e))
+					// a cancelled trial lets the next call try again
+					.doOnCancel(() -> {
+						if (trial) {
+							releaseTrial();
+						}
+					});
+		});
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public long getTransitions(State target) {
+		return transitions.get(target).get();
+	}
+
+	public long getRejectedCalls() {
+		return rejectedCalls.get();
+	}
+
+	// null when the call is rejected, true when it is the trial call of a half open breaker
+	private synchronized Boolean acquire() {
+		if (state == State.OPEN && !clock.instant().isBefore(openedAt.plus(openDuration))) {
+			moveTo(State.HALF_OPEN);
+		}
+		if (state == State.CLOSED) {
+			return false;
+		}
+		if (state == State.HALF_OPEN && !trialInFlight) {
+			trialInFlight = true;
+			return true;
+		}
+		return null;
+	}
+
+	private synchronized void onSuccess() {
+		failures = 0;
+		trialInFlight = false;
+		if (state != State.CLOSED) {
+			moveTo(State.CLOSED);
+		}
+	}
+
+	private synchronized void onError(Throwable e) {
+		if (!isFailure.test(e)) {
+			onSuccess();
+			return;
+		}
+		trialInFlight = false;
+		if (state == State.HALF_OPEN || ++failures >= failureThreshold) {
+			openedAt = clock.instant();
+			failures = 0;
+			if (state != State.OPEN) {
+				moveTo(State.OPEN);
+			}
+		}
+	}
+
+	private synchronized void releaseTrial() {
+		trialInFlight = false;
+	}
+
+	private void moveTo(State target) {
+		logger.warning("Circuit breaker " + name + " moved from " + state + " to " + target);
+		state = target;
+		transitions.get(target).incrementAndGet();
+	}
+
+	// the call was not made as the upstream is failing
+	public static class OpenException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public OpenException(String name) {
+			super("Circuit breaker " + name + " is open");
+		}
+	}
+}
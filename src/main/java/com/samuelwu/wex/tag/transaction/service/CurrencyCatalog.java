@@ -0,0 +1,155 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.samuelwu.wex.tag.transaction.model.ETags;
+
+import reactor.core.publisher.Mono;
+
+// the valid currency codes, a currency is checked with a single hash lookup without calling Treasury
+// the listed currencies are the ones recorded in the last year, the valid ones are all the currencies of the dataset,
+// so an older transaction can still be converted to a discontinued currency
+// the catalog is loaded in the background at startup and replaced as a whole when it is refreshed
+@Component
+public class CurrencyCatalog {
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Value("${exchange.currency.refresh.timeout:PT30S}")
+	private Duration refreshTimeout;
+
+	@Autowired
+	private ExchangeRateService exchangeRateService;
+
+	@Autowired
+	private ExchangeRateHistory exchangeRateHistory;
+
+	// null until the first load succeeds
+	private volatile Catalog catalog;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void loadOnStartup() {
+		CompletableFuture.runAsync(this::scheduledRefresh);
+	}
+
+	@Scheduled(cron = "${exchange.currency.refresh.cron:0 30 6 * * *}")
+	public void scheduledRefresh() {
+		try {
+			refresh();
+		} catch (Exception e) {
+			// the previous catalog is kept
+			logger.log(Level.SEVERE, "Failed to refresh the currencies: " + e.getMessage());
+		}
+	}
+
+	// the synced currencies are added without calling Treasury
+	@EventListener
+	public void onExchangeRatesSynced(ExchangeRatesSyncedEvent event) {
+		var current = catalog;
+		if (current != null) {
+			catalog = createCatalog(current.currencies, current.lookup);
+		}
+	}
+
+	public void refresh() {
+		var loaded = fetchCatalog().block(refreshTimeout);
+		if (loaded == null) {
+			throw new IllegalStateException("No currencies returned");
+		}
+		catalog = loaded;
+		logger.info("Loaded " + loaded.currencies.size() + " currencies and " + loaded.lookup.size() + " valid ones");
+	}
+
+	public boolean isLoaded() {
+		return catalog != null;
+	}
+
+	// every currency is accepted until the catalog is loaded, so the lookups keep working when Treasury is down at startup
+	// an unknown currency then finds no exchange rate rather than being rejected
+	public boolean isValid(String currency) {
+		var current = catalog;
+		return current == null || current.contains(currency);
+	}
+
+	public Mono<List<String>> getCurrencies() {
+		return getCatalog().map(Catalog::getCurrencies);
+	}
+
+	// the catalog is loaded by the first request when the startup load hasn't completed
+	public Mono<Catalog> getCatalog() {
+		var current = catalog;
+		if (current != null) {
+			return Mono.just(current);
+		}
+		return fetchCatalog()
+				.doOnNext(loaded -> catalog = loaded);
+	}
+
+	// the entity tag of the loaded catalog, null until it is loaded
+	public String getETag() {
+		var current = catalog;
+		return current == null ? null : current.eTag;
+	}
+
+	// the concurrent loads share the Treasury calls
+	private Mono<Catalog> fetchCatalog() {
+		return Mono.zip(exchangeRateService.fetchCurrencies(), exchangeRateService.fetchAllCurrencies())
+				.map(currencies -> createCatalog(currencies.getT1(), currencies.getT2()));
+	}
+
+	// the Treasury currencies and the ones of the synced rates
+	private Catalog createCatalog(Collection<String> recentCurrencies, Collection<String> validCurrencies) {
+		var allCurrencies = new HashSet<String>(recentCurrencies);
+		allCurrencies.addAll(exchangeRateHistory.getCurrencies());
+		var allValidCurrencies = new HashSet<String>(allCurrencies);
+		allValidCurrencies.addAll(validCurrencies);
+		return new Catalog(allCurrencies, allValidCurrencies);
+	}
+
+	// a version of the catalog, its entity tag is computed once and only changes with the currencies
+	public static final class Catalog {
+		private final List<String> currencies;
+		private final Set<String> lookup;
+		private final String eTag;
+
+		public Catalog(Collection<String> allCurrencies) {
+			this(allCurrencies, allCurrencies);
+		}
+
+		// the valid currencies include the listed ones
+		public Catalog(Collection<String> allCurrencies, Collection<String> validCurrencies) {
+			var sortedCurrencies = new ArrayList<String>(allCurrencies);
+			sortedCurrencies.sort(null);
+			currencies = List.copyOf(sortedCurrencies);
+			lookup = Set.copyOf(validCurrencies);
+			eTag = ETags.of(String.join("\n", currencies));
+		}
+
+		public List<String> getCurrencies() {
+			return currencies;
+		}
+
+		public String getETag() {
+			return eTag;
+		}
+
+		boolean contains(String currency) {
+			return lookup.contains(currency);
+		}
+	}
+}
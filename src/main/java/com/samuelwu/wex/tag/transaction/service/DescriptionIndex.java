@@ -0,0 +1,271 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+// an index of the descriptions by their trigrams, so a search by a fragment doesn't scan the transactions
+// each trigram of a lowercase description has the sorted Ids of its transactions in a long array,
+// the transactions which may contain a fragment are in the intersection of the arrays of its trigrams
+// it's built at startup and the committed transactions are added to it
+@Component
+public class DescriptionIndex {
+
+	// the shortest fragment which can be searched
+	public static final int GRAM = 3;
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Value("${transaction.search.enabled:true}")
+	private boolean enabled;
+
+	@Autowired
+	private TransactionStore transactionStore;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<Long, Postings> postings = new HashMap<>();
+	private long entries;
+
+	@PostConstruct
+	public void load() {
+		if (!enabled) {
+			return;
+		}
+		var start = System.nanoTime();
+		var readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+		readOnly.setReadOnly(true);
+		lock.writeLock().lock();
+		try {
+			readOnly.executeWithoutResult(status -> {
+				// the transactions are read in the order of date, their Ids are appended and each array is sorted once
+				try (var transactions = transactionStore.streamAll()) {
+					transactions.forEach(transaction -> index(transaction, true));
+				}
+			});
+			// the arrays keep the room they grew by until they are sorted and trimmed
+			postings.values().forEach(Postings::sortAndTrim);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		Gauge.builder("transaction.search.trigrams", this, DescriptionIndex::getTrigrams).register(meterRegistry);
+		Gauge.builder("transaction.search.entries", this, DescriptionIndex::getEntries).register(meterRegistry);
+		logger.info(String.format("Indexed the descriptions in %d ms, %d trigrams and %d entries",
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), getTrigrams(), getEntries()));
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public int getTrigrams() {
+		lock.readLock().lock();
+		try {
+			return postings.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// the number of Ids in all the arrays
+	public long getEntries() {
+		lock.readLock().lock();
+		try {
+			return entries;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// the transactions are added once their database transaction is committed, so a rollback doesn't leave them in the index
+	public void add(Collection<Transaction> transactions) {
+		if (!enabled) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					addAll(transactions);
+				}
+			});
+		} else {
+			addAll(transactions);
+		}
+	}
+
+	// the Ids after the cursor whose descriptions have every trigram of the fragment, in the order of Id
+	// they may still not contain the fragment itself, so the caller checks the descriptions
+	public long[] findCandidates(String fragment, long after, int limit) {
+		var trigrams = trigrams(fragment);
+		if (trigrams.isEmpty()) {
+			throw new IllegalArgumentException("A fragment needs at least " + GRAM + " characters");
+		}
+		lock.readLock().lock();
+		try {
+			var lists = new ArrayList<Postings>(trigrams.size());
+			for (var trigram : trigrams) {
+				var list = postings.get(trigram);
+				if (list == null) {
+					return new long[0];
+				}
+				lists.add(list);
+			}
+			// the shortest array is walked and the Ids are looked up in the others
+			lists.sort(Comparator.comparingInt(list -> list.size));
+			var shortest = lists.get(0);
+			var positions = new int[lists.size()];
+			var candidates = new long[Math.min(limit, shortest.size)];
+			var count = 0;
+			for (int i = shortest.indexAfter(after); i < shortest.size && count < candidates.length; i++) {
+				var id = shortest.ids[i];
+				var inAll = true;
+				for (int j = 1; j < lists.size() && inAll; j++) {
+					var list = lists.get(j);
+					positions[j] = list.seek(positions[j], id);
+					inAll = positions[j] < list.size && list.ids[positions[j]] == id;
+				}
+				if (inAll) {
+					candidates[count++] = id;
+				}
+			}
+			return Arrays.copyOf(candidates, count);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// the distinct trigrams of the lowercase text
+	static HashSet<Long> trigrams(String text) {
+		var trigrams = new HashSet<Long>();
+		if (text == null) {
+			return trigrams;
+		}
+		var lowercase = text.toLowerCase(Locale.ROOT);
+		for (int i = 0; i + GRAM <= lowercase.length(); i++) {
+			trigrams.add(trigram(lowercase, i));
+		}
+		return trigrams;
+	}
+
+	// the three characters from the position packed in a long
+	private static long trigram(String text, int position) {
+		return (long) text.charAt(position) << 32 | (long) text.charAt(position + 1) << 16 | text.charAt(position + 2);
+	}
+
+	private void addAll(Collection<Transaction> transactions) {
+		lock.writeLock().lock();
+		try {
+			transactions.forEach(transaction -> index(transaction, false));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// a trigram repeated in the description is added once, as its array already ends with the Id
+	private void index(Transaction transaction, boolean loading) {
+		if (transaction.getDescription() == null) {
+			return;
+		}
+		var lowercase = transaction.getDescription().toLowerCase(Locale.ROOT);
+		for (int i = 0; i + GRAM <= lowercase.length(); i++) {
+			var list = postings.computeIfAbsent(trigram(lowercase, i), key -> new Postings());
+			if (loading ? list.append(transaction.getId()) : list.add(transaction.getId())) {
+				entries++;
+			}
+		}
+	}
+
+	// the sorted Ids of the transactions with a trigram
+	private static final class Postings {
+		private long[] ids = new long[2];
+		private int size;
+
+		// the Ids mostly come in order, so they are appended
+		boolean add(long id) {
+			var position = size;
+			if (size > 0 && ids[size - 1] == id) {
+				return false;
+			}
+			if (size > 0 && ids[size - 1] > id) {
+				position = Arrays.binarySearch(ids, 0, size, id);
+				if (position >= 0) {
+					return false;
+				}
+				position = -position - 1;
+			}
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+			}
+			System.arraycopy(ids, position, ids, position + 1, size - position);
+			ids[position] = id;
+			size++;
+			return true;
+		}
+
+		// the Id at the end, unsorted until the array is sorted
+		boolean append(long id) {
+			if (size > 0 && ids[size - 1] == id) {
+				return false;
+			}
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size + (size >> 1) + 1);
+			}
+			ids[size++] = id;
+			return true;
+		}
+
+		int indexAfter(long after) {
+			var position = Arrays.binarySearch(ids, 0, size, after);
+			return position >= 0 ? position + 1 : -position - 1;
+		}
+
+		// the first position from the start whose Id isn't below the Id, the steps double before the binary search
+		int seek(int start, long id) {
+			var step = 1;
+			var low = start;
+			var high = start;
+			while (high < size && ids[high] < id) {
+				low = high + 1;
+				high += step;
+				step <<= 1;
+			}
+			high = Math.min(high, size);
+			var position = Arrays.binarySearch(ids, low, high, id);
+			return position >= 0 ? position : -position - 1;
+		}
+
+		void sortAndTrim() {
+			Arrays.sort(ids, 0, size);
+			ids = Arrays.copyOf(ids, size);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
+import com.samuelwu.wex.tag.transaction.repository.ExchangeRateRepository;
+
+import jakarta.annotation.PostConstruct;
+
+// index of the locally stored exchange rates, the effective rate of a date is a single array read
+@Component
+public class ExchangeRateHistory {
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Autowired
+	private ExchangeRateRepository exchangeRateRepository;
+
+	// replaced as a whole after every sync
+	private volatile Map<String, CurrencyHistory> histories = Map.of();
+
+	@PostConstruct
+	public void rebuild() {
+		var rates = exchangeRateRepository.findAllByOrderByCurrencyAscRecordDateAsc();
+		var newHistories = new HashMap<String, CurrencyHistory>();
+		var currencyRates = new ArrayList<ExchangeRate>();
+		for (var rate : rates) {
+			if (!currencyRates.isEmpty() && !currencyRates.get(0).getCurrency().equals(rate.getCurrency())) {
+				newHistories.put(currencyRates.get(0).getCurrency(), new CurrencyHistory(currencyRates));
+				currencyRates.clear();
+			}
+			currencyRates.add(rate);
+		}
+		if (!currencyRates.isEmpty()) {
+			newHistories.put(currencyRates.get(0).getCurrency(), new CurrencyHistory(currencyRates));
+		}
+		histories = newHistories;
+		logger.info("Indexed " + rates.size() + " exchange rates of " + newHistories.size() + " currencies");
+	}
+
+	public boolean hasCurrency(String currency) {
+		return histories.containsKey(currency);
+	}
+
+	public Set<String> getCurrencies() {
+		return histories.keySet();
+	}
+
+	// the latest exchange rate recorded on or before the date, within six months of the date
+	public ExchangeRate getExchangeRate(String currency, LocalDate date) {
+		var history = histories.get(currency);
+		if (history == null) {
+			return null;
+		}
+		var exchangeRate = history.getLatestRate(date);
+		if (exchangeRate == null || exchangeRate.getRecordDate().isBefore(date.minusMonths(6))) {
+			return null;
+		}
+		return exchangeRate;
+	}
+
+	// the rates of a currency indexed by epoch day
+	private static final class CurrencyHistory {
+		private final long firstDay;
+		// latest rate recorded on or before each day between the first and the last record date
+		private final ExchangeRate[] latestRates;
+
+		CurrencyHistory(List<ExchangeRate> rates) {
+			firstDay = rates.get(0).getRecordDate().toEpochDay();
+			var lastDay = rates.get(rates.size() - 1).getRecordDate().toEpochDay();
+			latestRates = new ExchangeRate[(int) (lastDay - firstDay + 1)];
+			var next = 0;
+			ExchangeRate latestRate = null;
+			for (int day = 0; day < latestRates.length; day++) {
+				while (next < rates.size() && rates.get(next).getRecordDate().toEpochDay() - firstDay <= day) {
+					latestRate = rates.get(next++);
+				}
+				latestRates[day] = latestRate;
+			}
+		}
+
+		ExchangeRate getLatestRate(LocalDate date) {
+			var day = date.toEpochDay() - firstDay;
+			if (day < 0) {
+				return null;
+			}
+			return latestRates[(int) Math.min(day, latestRates.length - 1)];
+		}
+	}
+}
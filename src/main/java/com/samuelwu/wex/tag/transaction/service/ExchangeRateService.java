@@ -1,57 +1,311 @@
 package com.samuelwu.wex.tag.transaction.service;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.samuelwu.wex.tag.transaction.model.CurrencyData;
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
 
 @Service
 public class ExchangeRateService {
-	
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
 	public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
-	private static final String baseUrl = "https://api.fiscaldata.treasury.gov/services/api/fiscal_service/v1/accounting/od/rates_of_exchange";
-	// get all the currency code
-	private static final String currencyQueryUrl = "?fields=country_currency_desc&filter=record_date:gte:{data}&page[size]=350";
+	// get a page of the currency codes, there is a row for each record date
+	private static final String currencyQueryUrl = "?fields=country_currency_desc&filter=record_date:gte:{date}&page[number]={page}&page[size]={size}";
+	private static final int currencyPageSize = 1000;
+	// the dataset starts from 2001
+	private static final LocalDate firstRecordDate = LocalDate.of(2001, 1, 1);
 	// get the exchange rate for a currency
 	private static final String exchangeQueryUrl = "?fields=country_currency_desc,exchange_rate,record_date&filter=country_currency_desc:eq:{currency},record_date:gte:{startDate},record_date:lte:{endDate}&sort=-record_date";
-	private WebClient webClient = WebClient.create(baseUrl);
-	// cache the valid currency codes
-	private List<String> validCurrencies;		
-
-	public List<String> getValidCurrencies() {
-		
-		if (validCurrencies != null)
-			return validCurrencies;
-		var date  = LocalDate.now().minusYears(1).format(DATE_FORMAT);
-
-		var responseSpec = webClient.get().uri(currencyQueryUrl, date).retrieve();
-		
-		Mono<CurrencyData> responseBody = responseSpec.bodyToMono(CurrencyData.class);
-		validCurrencies = responseBody.block().getCurrencies();
-		return validCurrencies;
-	}
-
-	public Map<String, String> getExchangeRate(String currency, LocalDate date) {
-		
-		var startYear = date.minusMonths(6).format(DATE_FORMAT);
-		var endYear = date.format(DATE_FORMAT);
-
-		var responseSpec = webClient.get().uri(exchangeQueryUrl, currency, startYear, endYear).retrieve();
-		
-		Mono<CurrencyData> responseBody = responseSpec.bodyToMono(CurrencyData.class);
-		var exchangeRates = responseBody.block().getData();
-		if (exchangeRates == null || exchangeRates.isEmpty()) {
-			return null;
-		}
-		// return latest exchange rate
-		return exchangeRates.get(0);
+	// get a page of the exchange rates recorded after a date
+	private static final String historyQueryUrl = "?fields=country_currency_desc,exchange_rate,record_date&filter=record_date:gt:{date}&sort=record_date,country_currency_desc&page[number]={page}&page[size]={size}";
+	private WebClient webClient;
+	// concurrent requests for the same currency codes or exchange rate share one Treasury call
+	private final SingleFlight<String, List<String>> currencyRequests = new SingleFlight<>();
+	private final SingleFlight<RateKey, List<ExchangeRate>> rateRequests = new SingleFlight<>();
+
+	// the rates are published quarterly, so a looked up rate stays valid for a long time
+	@Value("${exchange.rate.cache.size:1000}")
+	private long cacheSize;
+	@Value("${exchange.rate.cache.ttl:PT12H}")
+	private Duration cacheTtl;
+	// cache the exchange rates by currency and quarter, the rates of a quarter cover the six months before each of its days
+	private Cache<RateKey, List<ExchangeRate>> rateCache;
+	// the last rate fetched for each window, it is served as a stale rate when Treasury can't be reached
+	@Value("${exchange.rate.stale.size:10000}")
+	private long staleSize;
+	private Cache<RateKey, List<ExchangeRate>> staleRates;
+	private final AtomicLong staleRatesServed = new AtomicLong();
+
+	// the rates_of_exchange endpoint, it can point to a stand-in server for the load tests
+	@Value("${exchange.treasury.url:https://api.fiscaldata.treasury.gov/services/api/fiscal_service/v1/accounting/od/rates_of_exchange}")
+	private String baseUrl;
+	// a slow Treasury fails the call rather than holding the request
+	@Value("${exchange.treasury.connect.timeout:PT2S}")
+	private Duration connectTimeout;
+	@Value("${exchange.treasury.read.timeout:PT5S}")
+	private Duration readTimeout;
+	@Value("${exchange.treasury.request.timeout:PT10S}")
+	private Duration requestTimeout;
+	// the breaker opens after this many failed calls in a row and lets a trial call through after the open duration
+	@Value("${exchange.treasury.breaker.failures:5}")
+	private int breakerFailures;
+	@Value("${exchange.treasury.breaker.open.duration:PT30S}")
+	private Duration breakerOpenDuration;
+	private CircuitBreaker treasuryBreaker;
+
+	@Autowired
+	private ExchangeRateHistory exchangeRateHistory;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@PostConstruct
+	public void initWebClient() {
+		var httpClient = HttpClient.create()
+				.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+				.responseTimeout(readTimeout);
+		webClient = WebClient.builder()
+				.baseUrl(baseUrl)
+				.clientConnector(new ReactorClientHttpConnector(httpClient))
+				.build();
+	}
+
+	@PostConstruct
+	public void initCache() {
+		rateCache = Caffeine.newBuilder()
+				.maximumSize(cacheSize)
+				.expireAfterWrite(cacheTtl)
+				.recordStats()
+				.build();
+		staleRates = Caffeine.newBuilder()
+				.maximumSize(staleSize)
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, rateCache, "exchange.rates");
+		FunctionCounter.builder("exchange.rate.stale.served", staleRatesServed, AtomicLong::get)
+				.register(meterRegistry);
+	}
+
+	@PostConstruct
+	public void initBreaker() {
+		// a rejected request is not a failure of Treasury
+		treasuryBreaker = new CircuitBreaker("treasury", breakerFailures, breakerOpenDuration,
+				e -> !(e instanceof WebClientResponseException && ((WebClientResponseException) e).getStatusCode().is4xxClientError()));
+		// 0 is closed, 1 is open and 2 is half open
+		Gauge.builder("treasury.breaker.state", treasuryBreaker, breaker -> breaker.getState().ordinal())
+				.register(meterRegistry);
+		for (var state : CircuitBreaker.State.values()) {
+			FunctionCounter.builder("treasury.breaker.transitions", treasuryBreaker, breaker -> breaker.getTransitions(state))
+					.tag("state", state.name().toLowerCase())
+					.register(meterRegistry);
+		}
+	}
+
+	// the distinct currency codes recorded in the last year in alphabetical order, all pages are collected
+	public Mono<List<String>> fetchCurrencies() {
+		return fetchCurrencies(LocalDate.now().minusYears(1));
+	}
+
+	// the distinct currency codes of the whole dataset, including the discontinued ones which older transactions can be converted to
+	public Mono<List<String>> fetchAllCurrencies() {
+		return fetchCurrencies(firstRecordDate);
+	}
+
+	private Mono<List<String>> fetchCurrencies(LocalDate since) {
+		var date = since.format(DATE_FORMAT);
+
+		return currencyRequests.execute(date, () -> fetchCurrencyPage(date, 1)
+				.flatMapMany(firstPage -> Flux.range(2, Math.max(firstPage.getTotalPages() - 1, 0))
+						.concatMap(page -> fetchCurrencyPage(date, page))
+						.startWith(firstPage))
+				.flatMapIterable(CurrencyData::getCurrencies)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toCollection(TreeSet::new))
+				.map(List::copyOf));
+	}
+
+	// an empty result means no rate was found in the six months before the date
+	public Mono<ExchangeRate> getExchangeRate(String currency, LocalDate date) {
+		// served from the local rate history once the currency is synced
+		if (exchangeRateHistory.hasCurrency(currency)) {
+			return Mono.justOrEmpty(exchangeRateHistory.getExchangeRate(currency, date));
+		}
+		// the transactions of a quarter share one Treasury call
+		var key = new RateKey(currency, date);
+		var exchangeRates = rateCache.getIfPresent(key);
+		if (exchangeRates != null) {
+			return Mono.justOrEmpty(findExchangeRate(exchangeRates, date));
+		}
+		return rateRequests.execute(key, () -> fetchExchangeRates(key)
+				.doOnNext(fetchedRates -> {
+					rateCache.put(key, fetchedRates);
+					staleRates.put(key, fetchedRates);
+				}))
+				.flatMap(fetchedRates -> Mono.justOrEmpty(findExchangeRate(fetchedRates, date)))
+				.onErrorResume(e -> getStaleRate(key, date, e));
+	}
+
+	// get a page of the exchange rates recorded after the date, in the order of record date
+	public Mono<CurrencyData> getExchangeRates(LocalDate date, int page, int size) {
+		return callTreasury("history", () -> webClient.get().uri(historyQueryUrl, date.format(DATE_FORMAT), page, size).retrieve()
+				.bodyToMono(CurrencyData.class));
+	}
+
+	// hit, miss and eviction counts of the exchange rate cache and the number of Treasury calls shared
+	public Map<String, Object> getCacheStatistics() {
+		// run the pending evictions so the counts are up to date
+		rateCache.cleanUp();
+		var stats = rateCache.stats();
+		Map<String, Object> statistics = new LinkedHashMap<>();
+		statistics.put("size", rateCache.estimatedSize());
+		statistics.put("hits", stats.hitCount());
+		statistics.put("misses", stats.missCount());
+		statistics.put("evictions", stats.evictionCount());
+		statistics.put("hit_rate", stats.hitRate());
+		statistics.put("rate_requests", rateRequests.getCalls());
+		statistics.put("rate_requests_coalesced", rateRequests.getCoalescedCalls());
+		statistics.put("currency_requests", currencyRequests.getCalls());
+		statistics.put("currency_requests_coalesced", currencyRequests.getCoalescedCalls());
+		statistics.put("stale_rates_served", staleRatesServed.get());
+		statistics.put("breaker_state", treasuryBreaker.getState().name().toLowerCase());
+		statistics.put("breaker_opened", treasuryBreaker.getTransitions(CircuitBreaker.State.OPEN));
+		statistics.put("breaker_half_opened", treasuryBreaker.getTransitions(CircuitBreaker.State.HALF_OPEN));
+		statistics.put("breaker_closed", treasuryBreaker.getTransitions(CircuitBreaker.State.CLOSED));
+		statistics.put("breaker_rejected_calls", treasuryBreaker.getRejectedCalls());
+		return statistics;
+	}
+
+	public CircuitBreaker getTreasuryBreaker() {
+		return treasuryBreaker;
+	}
+
+	// every Treasury call has a time limit and goes through the circuit breaker
+	// the calls are timed by query and outcome
+	private <T> Mono<T> callTreasury(String query, Supplier<Mono<T>> call) {
+		return Mono.defer(() -> {
+			var sample = Timer.start(meterRegistry);
+			return treasuryBreaker.execute(() -> call.get().timeout(requestTimeout))
+					.doOnSuccess(value -> stopTimer(sample, query, "success"))
+					.doOnError(e -> stopTimer(sample, query, getOutcome(e)))
+					.doOnCancel(() -> stopTimer(sample, query, "cancelled"));
+		});
+	}
+
+	private void stopTimer(Timer.Sample sample, String query, String outcome) {
+		sample.stop(Timer.builder("treasury.requests")
+				.tag("query", query)
+				.tag("outcome", outcome)
+				.register(meterRegistry));
+	}
+
+	private String getOutcome(Throwable e) {
+		if (e instanceof CircuitBreaker.OpenException) {
+			return "rejected";
+		}
+		if (e instanceof TimeoutException || e.getCause() instanceof io.netty.handler.timeout.TimeoutException) {
+			return "timeout";
+		}
+		if (e instanceof WebClientResponseException) {
+			return ((WebClientResponseException) e).getStatusCode().is4xxClientError() ? "client_error" : "server_error";
+		}
+		return "error";
+	}
+
+	// the last rate fetched for the window is flagged as stale, the error is kept when there is none
+	private Mono<ExchangeRate> getStaleRate(RateKey key, LocalDate date, Throwable e) {
+		var windowRates = staleRates.getIfPresent(key);
+		if (windowRates == null) {
+			return Mono.error(new ExchangeRateUnavailableException("Failed to collect the exchange rate of " + key.currency, e));
+		}
+		staleRatesServed.incrementAndGet();
+		logger.warning("Serving a stale exchange rate of " + key.currency + ": " + e.getMessage());
+		return Mono.justOrEmpty(findExchangeRate(windowRates, date).map(ExchangeRate::asStale));
+	}
+
+	private Mono<CurrencyData> fetchCurrencyPage(String date, int page) {
+		return callTreasury("currencies", () -> webClient.get().uri(currencyQueryUrl, date, page, currencyPageSize).retrieve()
+				.bodyToMono(CurrencyData.class));
+	}
+
+	// the rates recorded from six months before the quarter to its end, latest first
+	private Mono<List<ExchangeRate>> fetchExchangeRates(RateKey key) {
+
+		var startDate = key.quarter.minusMonths(6).format(DATE_FORMAT);
+		var endDate = key.quarter.plusMonths(3).minusDays(1).format(DATE_FORMAT);
+
+		Mono<CurrencyData> responseBody = callTreasury("rate", () -> webClient.get().uri(exchangeQueryUrl, key.currency, startDate, endDate).retrieve()
+				.bodyToMono(CurrencyData.class));
+		return responseBody.map(currencyData -> List.copyOf(currencyData.getRates()));
+	}
+
+	// the latest exchange rate recorded on or before the date, within six months of the date
+	private static Optional<ExchangeRate> findExchangeRate(List<ExchangeRate> exchangeRates, LocalDate date) {
+		for (var exchangeRate : exchangeRates) {
+			if (!exchangeRate.getRecordDate().isAfter(date)) {
+				return exchangeRate.getRecordDate().isBefore(date.minusMonths(6)) ? Optional.empty() : Optional.of(exchangeRate);
+			}
+		}
+		return Optional.empty();
+	}
+
+	// the window is the calendar quarter of the date, determined by its first day
+	private static final class RateKey {
+		private final String currency;
+		private final LocalDate quarter;
+
+		RateKey(String currency, LocalDate date) {
+			this.currency = currency;
+			this.quarter = LocalDate.of(date.getYear(), (date.getMonthValue() - 1) / 3 * 3 + 1, 1);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof RateKey))
+				return false;
+			var other = (RateKey) obj;
+			return currency.equals(other.currency) && quarter.equals(other.quarter);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(currency, quarter);
+		}
 	}
 
 }
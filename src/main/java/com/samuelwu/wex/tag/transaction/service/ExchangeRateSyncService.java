@@ -0,0 +1,91 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
+import com.samuelwu.wex.tag.transaction.repository.ExchangeRateRepository;
+
+// copy the Treasury Reporting Rates of Exchange dataset into the local exchange rate table
+@Service
+public class ExchangeRateSyncService {
+
+	// the dataset starts from 2001
+	private static final LocalDate firstRecordDate = LocalDate.of(2000, 12, 31);
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Value("${exchange.rate.sync.enabled:false}")
+	private boolean syncEnabled;
+	@Value("${exchange.rate.sync.page.size:5000}")
+	private int pageSize;
+
+	@Autowired
+	private ExchangeRateRepository exchangeRateRepository;
+
+	@Autowired
+	private ExchangeRateHistory exchangeRateHistory;
+
+	@Autowired
+	private ExchangeRateService exchangeRateService;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	// sync in the background, the rates are looked up from Treasury until the sync completes
+	@EventListener(ApplicationReadyEvent.class)
+	public void syncOnStartup() {
+		if (syncEnabled) {
+			CompletableFuture.runAsync(this::scheduledSync);
+		}
+	}
+
+	@Scheduled(cron = "${exchange.rate.sync.cron:0 0 6 * * *}")
+	public void scheduledSync() {
+		if (!syncEnabled) {
+			return;
+		}
+		try {
+			sync();
+		} catch (Exception e) {
+			logger.log(Level.SEVERE, "Failed to sync the exchange rates: " + e.getMessage());
+		}
+	}
+
+	// fetch the rates recorded after the latest stored one, all pages are saved in a single transaction
+	// it runs in the background, so it waits for each page
+	public synchronized int sync() {
+		var latestRecordDate = exchangeRateRepository.findLatestRecordDate();
+		if (latestRecordDate == null) {
+			latestRecordDate = firstRecordDate;
+		}
+		var exchangeRates = new ArrayList<ExchangeRate>();
+		var totalPages = 1;
+		for (int page = 1; page <= totalPages; page++) {
+			var currencyData = exchangeRateService.getExchangeRates(latestRecordDate, page, pageSize).block();
+			if (currencyData == null || currencyData.getRates().isEmpty()) {
+				break;
+			}
+			exchangeRates.addAll(currencyData.getRates());
+			totalPages = currencyData.getTotalPages();
+		}
+		exchangeRateRepository.saveAll(exchangeRates);
+		logger.info("Synced " + exchangeRates.size() + " exchange rates recorded after " + latestRecordDate);
+		if (!exchangeRates.isEmpty()) {
+			exchangeRateHistory.rebuild();
+			eventPublisher.publishEvent(new ExchangeRatesSyncedEvent(exchangeRates.size()));
+		}
+		return exchangeRates.size();
+	}
+}
@@ -0,0 +1,11 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+// Treasury can't be reached and there is no earlier rate to fall back on
+public class ExchangeRateUnavailableException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ExchangeRateUnavailableException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,16 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+// published after new exchange rates are synced and indexed, the results converted with the older rates can change
+public class ExchangeRatesSyncedEvent {
+
+	private final int count;
+
+	public ExchangeRatesSyncedEvent(int count) {
+		this.count = count;
+	}
+
+	// the number of exchange rates synced
+	public int getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,35 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import org.springframework.http.MediaType;
+
+// formats of the transaction export, each transaction is written on its own line
+public enum ExportFormat {
+	NDJSON("ndjson", MediaType.parseMediaType("application/x-ndjson")),
+	CSV("csv", MediaType.parseMediaType("text/csv"));
+
+	private final String extension;
+	private final MediaType mediaType;
+
+	ExportFormat(String extension, MediaType mediaType) {
+		this.extension = extension;
+		this.mediaType = mediaType;
+	}
+
+	// null if the format is not supported
+	public static ExportFormat of(String format) {
+		for (var exportFormat : values()) {
+			if (exportFormat.extension.equalsIgnoreCase(format)) {
+				return exportFormat;
+			}
+		}
+		return null;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	public MediaType getMediaType() {
+		return mediaType;
+	}
+}
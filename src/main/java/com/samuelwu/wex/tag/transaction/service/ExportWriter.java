@@ -0,0 +1,119 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+// write the exported transactions one line at a time
+abstract class ExportWriter {
+
+	static ExportWriter create(ExportFormat format, OutputStream output, List<String> columns, ObjectMapper objectMapper) throws IOException {
+		if (format == ExportFormat.CSV) {
+			return new CsvWriter(output, columns, objectMapper);
+		}
+		return new NdjsonWriter(output, objectMapper);
+	}
+
+	// the row is a map of the columns or an object with the columns as JSON properties
+	abstract void write(Object row) throws IOException;
+
+	// write the buffered lines to the output
+	abstract void flush() throws IOException;
+
+	private static class NdjsonWriter extends ExportWriter {
+		private final ObjectMapper objectMapper;
+		private final JsonGenerator generator;
+
+		NdjsonWriter(OutputStream output, ObjectMapper objectMapper) throws IOException {
+			this.objectMapper = objectMapper;
+			generator = objectMapper.getFactory().createGenerator(output);
+			// the response is closed by the container
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.setRootValueSeparator(new SerializedString(""));
+		}
+
+		@Override
+		void write(Object row) throws IOException {
+			objectMapper.writeValue(generator, row);
+			generator.writeRaw('\n');
+		}
+
+		@Override
+		void flush() throws IOException {
+			generator.flush();
+		}
+	}
+
+	private static class CsvWriter extends ExportWriter {
+		private final BufferedWriter writer;
+		private final List<String> columns;
+		private final ObjectMapper objectMapper;
+		// the decimal numbers keep their scale, e.g. 1.50 rather than 1.5
+		private final ObjectReader rowReader;
+
+		CsvWriter(OutputStream output, List<String> columns, ObjectMapper objectMapper) throws IOException {
+			writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+			this.columns = columns;
+			this.objectMapper = objectMapper;
+			rowReader = objectMapper.readerFor(Map.class).with(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+			writeLine(columns.toArray());
+		}
+
+		@Override
+		void write(Object row) throws IOException {
+			var columnValues = row instanceof Map ? (Map<?, ?>) row : toMap(row);
+			var values = new Object[columns.size()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = columnValues.get(columns.get(i));
+			}
+			writeLine(values);
+		}
+
+		@Override
+		void flush() throws IOException {
+			writer.flush();
+		}
+
+		private Map<?, ?> toMap(Object row) throws IOException {
+			var buffer = new TokenBuffer(objectMapper, false);
+			objectMapper.writeValue(buffer, row);
+			try (var parser = buffer.asParser()) {
+				return rowReader.readValue(parser);
+			}
+		}
+
+		private void writeLine(Object[] values) throws IOException {
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				if (values[i] != null) {
+					writeValue(values[i].toString());
+				}
+			}
+			writer.write("\r\n");
+		}
+
+		// quote the values which contain a separator, a quote or a line break
+		private void writeValue(String value) throws IOException {
+			if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+				writer.write(value);
+				return;
+			}
+			writer.write('"');
+			writer.write(value.replace("\"", "\"\""));
+			writer.write('"');
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.samuelwu.wex.tag.transaction.model.IdempotencyKey;
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.repository.IdempotencyKeyRepository;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+// the transactions created for the Idempotency-Key headers, so a retried request returns its transaction instead of creating another one
+// the keys of the window are looked up in a bounded cache first and in the idempotency_keys table on a miss,
+// a concurrent request with the same key waits for the first one, it fails like the first one or as in progress after the wait
+@Component
+public class IdempotencyKeys {
+
+	// the requests answered with the transaction of their key, tagged by where it was found
+	public static final String REPLAYS = "transaction.idempotency.replays";
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	// how long a key is kept
+	@Value("${transaction.idempotency.window:PT24H}")
+	private Duration window;
+	@Value("${transaction.idempotency.cache.size:100000}")
+	private long cacheSize;
+	// how long a concurrent request with the same key waits for the first one
+	@Value("${transaction.idempotency.wait:PT10S}")
+	private Duration wait;
+
+	@Autowired
+	private IdempotencyKeyRepository idempotencyKeyRepository;
+
+	@Autowired
+	private TransactionStore transactionStore;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	// a failed or null result is dropped from the cache, so the request can be retried with its key
+	private AsyncCache<String, Transaction> recent;
+
+	@PostConstruct
+	public void initCache() {
+		recent = Caffeine.newBuilder()
+				.maximumSize(cacheSize)
+				.expireAfterWrite(window)
+				.buildAsync();
+	}
+
+	// the transaction of the key, it's created by the call unless the key was used in the window
+	// the call saves the key with the transaction, a null transaction means it wasn't created
+	public Result execute(String key, Callable<Transaction> create) throws Exception {
+		var created = new CompletableFuture<Transaction>();
+		var existing = recent.get(key, (k, executor) -> created);
+		if (existing != created) {
+			Transaction transaction;
+			try {
+				transaction = existing.get(wait.toMillis(), TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				throw new InProgressException(key);
+			} catch (ExecutionException e) {
+				// the exception of the first request, so it's answered the same way
+				throw e.getCause() instanceof Exception cause ? cause : e;
+			}
+			if (transaction != null) {
+				countReplay("memory");
+			}
+			return new Result(transaction, transaction != null);
+		}
+		try {
+			var result = find(key);
+			if (result == null) {
+				try {
+					result = new Result(create.call(), false);
+				} catch (DataIntegrityViolationException e) {
+					// another instance saved the key first
+					result = find(key);
+					if (result == null) {
+						throw e;
+					}
+				}
+			}
+			created.complete(result.getTransaction());
+			return result;
+		} catch (Exception e) {
+			created.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	// save the key in the database transaction of its transaction
+	public void save(String key, Transaction transaction) {
+		idempotencyKeyRepository.saveAndFlush(new IdempotencyKey(key, transaction.getId(), Instant.now()));
+	}
+
+	// the transaction of the key wasn't committed, a retry creates it again
+	public void forget(String key) {
+		recent.synchronous().invalidate(key);
+	}
+
+	@Scheduled(cron = "${transaction.idempotency.purge.cron:0 15 * * * *}")
+	public void purge() {
+		var deleted = idempotencyKeyRepository.deleteCreatedBefore(Instant.now().minus(window));
+		logger.info("Deleted " + deleted + " expired idempotency keys");
+	}
+
+	// the stored key of the window, an expired key is deleted so it can be saved again
+	private Result find(String key) {
+		var stored = idempotencyKeyRepository.findById(key).orElse(null);
+		if (stored == null) {
+			return null;
+		}
+		var transaction = stored.getCreatedAt().isBefore(Instant.now().minus(window)) ? null
+				: transactionStore.findById(stored.getTransactionId()).orElse(null);
+		if (transaction == null) {
+			idempotencyKeyRepository.delete(stored);
+			return null;
+		}
+		countReplay("database");
+		return new Result(transaction, true);
+	}
+
+	private void countReplay(String source) {
+		meterRegistry.counter(REPLAYS, "source", source).increment();
+	}
+
+	// the first request with the key is still running after the wait
+	public static class InProgressException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public InProgressException(String key) {
+			super("The request with the Idempotency-Key " + key + " is still in progress");
+		}
+	}
+
+	// the transaction of a key and whether it was created by an earlier request
+	public static final class Result {
+		private final Transaction transaction;
+		private final boolean replayed;
+
+		Result(Transaction transaction, boolean replayed) {
+			this.transaction = transaction;
+			this.replayed = replayed;
+		}
+
+		public Transaction getTransaction() {
+			return transaction;
+		}
+
+		public boolean isReplayed() {
+			return replayed;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Mono;
+
+// share one call and its result between the concurrent callers of the same key
+public class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+	// number of calls made and number of callers which joined a call in flight
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong coalescedCalls = new AtomicLong();
+
+	public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+		return Mono.defer(() -> {
+			var existing = inFlight.get(key);
+			if (existing != null) {
+				coalescedCalls.incrementAndGet();
+				return existing;
+			}
+			var shared = new SharedCall();
+			shared.mono = call.get()
+					.doFinally(signal -> inFlight.remove(key, shared.mono))
+					.cache();
+			existing = inFlight.putIfAbsent(key, shared.mono);
+			if (existing != null) {
+				coalescedCalls.incrementAndGet();
+				return existing;
+			}
+			calls.incrementAndGet();
+			return shared.mono;
+		});
+	}
+
+	public long getCalls() {
+		return calls.get();
+	}
+
+	public long getCoalescedCalls() {
+		return coalescedCalls.get();
+	}
+
+	public int getInFlight() {
+		return inFlight.size();
+	}
+
+	// the call removes itself once it completes, so it needs its own reference
+	private class SharedCall {
+		private Mono<V> mono;
+	}
+}
@@ -0,0 +1,298 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.repository.TransactionRollupRepository;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// accept the new transactions into a bounded queue, a writer thread inserts them in groups with one commit per group
+// with the enqueue ack the transactions still in the queue are lost when the application stops unexpectedly
+// with the commit ack the caller waits until the group of its transaction is committed
+@Component
+public class TransactionIngestQueue {
+
+	public static final String MODE_QUEUE = "queue";
+	public static final String ACK_COMMIT = "commit";
+	private static final String insertSql = "insert into transactions (id, date, description, amount_cents) values (?, ?, ?, ?)";
+	private static final String nextIdSql = "select next value for transactions_seq";
+	// a key already saved by another instance is left as it is rather than failing the group
+	private static final String insertKeySql = "merge into idempotency_keys k using (values (?, ?, ?)) v (idempotency_key, transaction_id, created_at) "
+			+ "on k.idempotency_key = v.idempotency_key "
+			+ "when not matched then insert (idempotency_key, transaction_id, created_at) values (v.idempotency_key, v.transaction_id, v.created_at)";
+
+	public enum Status {
+		QUEUED, COMMITTED, FAILED, NOT_FOUND
+	}
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Value("${transaction.ingest.mode:sync}")
+	private String mode;
+	// the queue inserts into the database, the mapped store appends without it
+	@Value("${transaction.store:jpa}")
+	private String store;
+	@Value("${transaction.ingest.ack:enqueue}")
+	private String ack;
+	@Value("${transaction.ingest.queue.size:10000}")
+	private int queueSize;
+	// the size and the wait of a group
+	@Value("${transaction.ingest.flush.rows:500}")
+	private int flushRows;
+	@Value("${transaction.ingest.flush.interval:PT0.005S}")
+	private Duration flushInterval;
+	@Value("${transaction.ingest.commit.timeout:PT10S}")
+	private Duration commitTimeout;
+	// how many Ids of the failed groups are kept and for how long, the status of an Id is failed until then
+	@Value("${transaction.ingest.failed.size:100000}")
+	private long failedSize;
+	@Value("${transaction.ingest.failed.ttl:PT1H}")
+	private Duration failedTtl;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private TransactionStore transactionStore;
+
+	@Autowired
+	private TransactionRollupRepository transactionRollupRepository;
+
+	@Autowired
+	private TransactionSnapshot transactionSnapshot;
+
+	@Autowired
+	private IdempotencyKeys idempotencyKeys;
+
+	@Autowired
+	private DescriptionIndex descriptionIndex;
+
+	private BlockingQueue<PendingTransaction> queue;
+	// the transactions accepted but not committed yet, by Id
+	private final ConcurrentMap<Long, PendingTransaction> pending = new ConcurrentHashMap<>();
+	// the Ids of the groups which failed to commit are kept for a while, so the clients can find out
+	private Cache<Long, Boolean> failed;
+	private Thread writer;
+	private volatile boolean running;
+
+	// the Ids are allocated from the transaction sequence in the same blocks as Hibernate does
+	private long nextId;
+	private long lastId = -1;
+
+	@PostConstruct
+	public void start() {
+		failed = Caffeine.newBuilder()
+				.maximumSize(failedSize)
+				.expireAfterWrite(failedTtl)
+				.build();
+		if (MODE_QUEUE.equals(mode) && TransactionStore.MAPPED.equals(store)) {
+			logger.warning("The ingest queue isn't used with the " + store + " store, the transactions are appended before the response");
+		}
+		if (!isEnabled()) {
+			return;
+		}
+		queue = new ArrayBlockingQueue<>(queueSize);
+		running = true;
+		writer = new Thread(this::write, "transaction-ingest-writer");
+		writer.start();
+		logger.info("Transactions are ingested through a queue of " + queueSize + " with the " + ack + " ack");
+	}
+
+	// write the queued transactions before the database is closed
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if (writer == null) {
+			return;
+		}
+		running = false;
+		writer.join();
+	}
+
+	public boolean isEnabled() {
+		return MODE_QUEUE.equals(mode) && !TransactionStore.MAPPED.equals(store);
+	}
+
+	// the transaction is only queued when the response is sent
+	public boolean isAckOnEnqueue() {
+		return !ACK_COMMIT.equals(ack);
+	}
+
+	// queue a transaction and assign its Id, a null result means the queue is full
+	// with the commit ack it waits until the transaction is committed, the transaction is still queued when the wait times out
+	public Transaction submit(Transaction transaction) throws InterruptedException, ExecutionException {
+		return submit(transaction, null);
+	}
+
+	// the idempotency key is committed with the transaction
+	public Transaction submit(Transaction transaction, String idempotencyKey) throws InterruptedException, ExecutionException {
+		// skip the Id allocation when the queue is already full
+		if (queue.remainingCapacity() == 0) {
+			return null;
+		}
+		var pendingTransaction = new PendingTransaction(transaction, idempotencyKey);
+		transaction.setId(allocateId());
+		pending.put(transaction.getId(), pendingTransaction);
+		if (!queue.offer(pendingTransaction)) {
+			pending.remove(transaction.getId());
+			return null;
+		}
+		if (!isAckOnEnqueue()) {
+			try {
+				pendingTransaction.committed.get(commitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				// the group can still commit, so the transaction is returned as accepted rather than failed and a retry doesn't create it twice
+				logger.warning("Transaction " + transaction.getId() + " wasn't committed in " + commitTimeout + ", it is still queued");
+			}
+		}
+		return transaction;
+	}
+
+	// the transaction is accepted but not committed yet
+	public boolean isQueued(long id) {
+		return pending.containsKey(id);
+	}
+
+	public Status getStatus(long id) {
+		if (pending.containsKey(id)) {
+			return Status.QUEUED;
+		}
+		if (failed.getIfPresent(id) != null) {
+			return Status.FAILED;
+		}
+		return transactionStore.existsById(id) ? Status.COMMITTED : Status.NOT_FOUND;
+	}
+
+	public int getQueued() {
+		return queue == null ? 0 : queue.size();
+	}
+
+	private synchronized long allocateId() {
+		if (nextId > lastId) {
+			lastId = jdbcTemplate.queryForObject(nextIdSql, Long.class);
+			nextId = Math.max(1, lastId - Transaction.ID_ALLOCATION_SIZE + 1);
+		}
+		return nextId++;
+	}
+
+	// collect a group until it is full or its time is up, then commit it
+	private void write() {
+		var group = new ArrayList<PendingTransaction>(flushRows);
+		while (running || !queue.isEmpty()) {
+			try {
+				var first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				group.add(first);
+				var deadline = System.nanoTime() + flushInterval.toNanos();
+				while (group.size() < flushRows) {
+					queue.drainTo(group, flushRows - group.size());
+					var remaining = deadline - System.nanoTime();
+					if (group.size() >= flushRows || remaining <= 0) {
+						break;
+					}
+					var next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					group.add(next);
+				}
+				flush(group);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} finally {
+				group.clear();
+			}
+		}
+	}
+
+	private void flush(List<PendingTransaction> group) {
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				jdbcTemplate.batchUpdate(insertSql, group, group.size(), (statement, pendingTransaction) -> {
+					var transaction = pendingTransaction.transaction;
+					statement.setLong(1, transaction.getId());
+					statement.setDate(2, transaction.getDate() == null ? null : Date.valueOf(transaction.getDate()));
+					statement.setString(3, transaction.getDescription());
+					statement.setLong(4, transaction.getAmount());
+				});
+				// the rollups are committed with the group
+				var transactions = new ArrayList<Transaction>(group.size());
+				group.forEach(pendingTransaction -> transactions.add(pendingTransaction.transaction));
+				transactionRollupRepository.add(transactions);
+				transactionSnapshot.add(transactions);
+				descriptionIndex.add(transactions);
+				// and so are the idempotency keys
+				var keyed = new ArrayList<PendingTransaction>();
+				for (var pendingTransaction : group) {
+					if (pendingTransaction.idempotencyKey != null) {
+						keyed.add(pendingTransaction);
+					}
+				}
+				if (!keyed.isEmpty()) {
+					var createdAt = Timestamp.from(Instant.now());
+					jdbcTemplate.batchUpdate(insertKeySql, keyed, keyed.size(), (statement, pendingTransaction) -> {
+						statement.setString(1, pendingTransaction.idempotencyKey);
+						statement.setLong(2, pendingTransaction.transaction.getId());
+						statement.setTimestamp(3, createdAt);
+					});
+				}
+			});
+			for (var pendingTransaction : group) {
+				pending.remove(pendingTransaction.transaction.getId());
+				pendingTransaction.committed.complete(pendingTransaction.transaction);
+			}
+		} catch (RuntimeException e) {
+			logger.log(Level.SEVERE, "Failed to commit " + group.size() + " transactions: " + e.getMessage());
+			for (var pendingTransaction : group) {
+				failed.put(pendingTransaction.transaction.getId(), Boolean.TRUE);
+				pending.remove(pendingTransaction.transaction.getId());
+				if (pendingTransaction.idempotencyKey != null) {
+					idempotencyKeys.forget(pendingTransaction.idempotencyKey);
+				}
+				pendingTransaction.committed.completeExceptionally(e);
+			}
+		}
+	}
+
+	private static final class PendingTransaction {
+		private final Transaction transaction;
+		private final String idempotencyKey;
+		private final CompletableFuture<Transaction> committed = new CompletableFuture<>();
+
+		PendingTransaction(Transaction transaction, String idempotencyKey) {
+			this.transaction = transaction;
+			this.idempotencyKey = idempotencyKey;
+		}
+	}
+}
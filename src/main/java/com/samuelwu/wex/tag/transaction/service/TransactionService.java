@@ -1,98 +1,403 @@
 package com.samuelwu.wex.tag.transaction.service;
 
-import java.text.DecimalFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import com.samuelwu.wex.tag.transaction.model.CurrencyData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import com.samuelwu.wex.tag.transaction.model.ConvertedTransaction;
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
+import com.samuelwu.wex.tag.transaction.model.Money;
 import com.samuelwu.wex.tag.transaction.model.Transaction;
-import com.samuelwu.wex.tag.transaction.repository.TransactionRepository;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+import com.samuelwu.wex.tag.transaction.model.TransactionRollup;
+import com.samuelwu.wex.tag.transaction.model.TransactionSummary;
+import com.samuelwu.wex.tag.transaction.repository.TransactionRollupRepository;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Service
 public class TransactionService {
+
+	//the number of conversions without an exchange rate
+	public static final String RATES_NOT_FOUND = "exchange.rate.not.found";
+
 	@Value ("${transaction.page.size:50}")
 	private int pageLimit;
 
 	@Autowired
-	private TransactionRepository transactionRepository;
+	private TransactionStore transactionStore;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
 	
 	@Autowired
 	private ExchangeRateService exchangeRateService;
+
+	@Autowired
+	private TransactionIngestQueue transactionIngestQueue;
+
+	@Autowired
+	private CurrencyCatalog currencyCatalog;
+
+	@Autowired
+	private TransactionRollupRepository transactionRollupRepository;
+
+	@Autowired
+	private TransactionSnapshot transactionSnapshot;
+
+	@Autowired
+	private IdempotencyKeys idempotencyKeys;
+
+	@Autowired
+	private DescriptionIndex descriptionIndex;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	//the converted transactions by Id and currency, they expire after the ttl of the exchange rates unless it's set apart
+	//they are also cleared when new exchange rates are synced
+	@Value("${transaction.response.cache.size:10000}")
+	private long responseCacheSize;
+	@Value("${transaction.response.cache.ttl:${exchange.rate.cache.ttl:PT12H}}")
+	private Duration responseCacheTtl;
+	private Cache<ResponseKey, ConvertedTransaction> responseCache;
+
+	@PostConstruct
+	public void initCache() {
+		responseCache = Caffeine.newBuilder()
+				.maximumSize(responseCacheSize)
+				.expireAfterWrite(responseCacheTtl)
+				.build();
+	}
 	
-	private DecimalFormat decimalFormat = new DecimalFormat("#.##");
+	// the export is flushed to the client after every block of transactions
+	private static final int exportFlushSize = 500;
+	private static final LocalDate firstDate = LocalDate.of(1, 1, 1);
+	private static final LocalDate lastDate = LocalDate.of(9999, 12, 31);
+	private static final List<String> exportColumns = List.of("id", "date", "description", "amount");
+	private static final List<String> conversionColumns = List.of("transaction_id", "description", "original_amount",
+			"transaction_date", "currency_amount", "curreny", "exchange_rate", "rate_date");
+
+	@Autowired
+	private ObjectMapper objectMapper;
 
 	//get all transactions if transaction date is not provided
-	public List<Transaction> getAllTransactions(LocalDate date) {
-		var transactions = new ArrayList<Transaction>();
-		PageRequest pageSize = PageRequest.of(0, pageLimit);
-		if (date == null)
-			transactionRepository.findAll(pageSize).forEach(transactions::add);
-		else
-			transactionRepository.findByDate(date, pageSize).forEach(transactions::add);
-		return transactions;
+	//the transactions are ordered by date and Id and the page starts after the cursor
+	//the filter ranges are read with the indexes of date or amount, or scanned in the snapshot when it's enabled
+	public Slice<Transaction> getAllTransactions(LocalDate date, TransactionFilter filter, TransactionCursor cursor) {
+		if (filter != null && !filter.isEmpty()) {
+			if (transactionSnapshot.isEnabled()) {
+				return transactionSnapshot.findPage(filter, cursor, pageLimit);
+			}
+			return transactionStore.findPage(filter, cursor, pageLimit);
+		}
+		return transactionStore.findPage(date, cursor, pageLimit);
+	}
 
+	//the transactions after the Id whose description contains the fragment, in the order of Id and ignoring the case
+	//the candidates of the description index are read in blocks and checked, as a trigram match doesn't always mean the fragment matches
+	public Slice<Transaction> searchTransactions(String fragment, long after) {
+		var lowercaseFragment = fragment.toLowerCase(Locale.ROOT);
+		var found = new ArrayList<Transaction>(pageLimit + 1);
+		var blockSize = 2 * (pageLimit + 1);
+		while (found.size() <= pageLimit) {
+			var candidates = descriptionIndex.findCandidates(fragment, after, blockSize);
+			if (candidates.length == 0) {
+				break;
+			}
+			var ids = new ArrayList<Long>(candidates.length);
+			for (var id : candidates) {
+				ids.add(id);
+			}
+			var transactions = new ArrayList<Transaction>(transactionStore.findAllById(ids));
+			transactions.sort(Comparator.comparingLong(Transaction::getId));
+			for (var transaction : transactions) {
+				if (found.size() <= pageLimit && transaction.getDescription().toLowerCase(Locale.ROOT).contains(lowercaseFragment)) {
+					found.add(transaction);
+				}
+			}
+			after = candidates[candidates.length - 1];
+			if (candidates.length < blockSize) {
+				break;
+			}
+		}
+		var hasNext = found.size() > pageLimit;
+		return new SliceImpl<>(hasNext ? found.subList(0, pageLimit) : found, PageRequest.of(0, pageLimit), hasNext);
+	}
+
+	public boolean isSearchEnabled() {
+		return descriptionIndex.isEnabled();
+	}
+
+	//an unknown currency is rejected without calling Treasury, US dollar is always valid
+	public boolean isValidCurrency(String currency) {
+		return currency == null || currencyCatalog.isValid(currency);
 	}
 
 	//get the transaction by its Id and convert its amount with the exchange rate 
-	public Map<String, Object> getTransactionById(long id, String currency) {
-		var transactionOptional = transactionRepository.findById(id);
-		if (transactionOptional.isEmpty()) {
-			return null;
+	//an empty result means the transaction is not found and a result without exchange rate means the exchange rate is not found
+	//the converted transactions are cached, the ones without exchange rate or with a stale rate aren't as the rate can still be found
+	//a transaction without a date has no exchange rate in a foreign currency
+	public Mono<ConvertedTransaction> getTransactionById(long id, String currency) {
+		return Mono.defer(() -> {
+			var key = new ResponseKey(id, currency);
+			var convertedTransaction = responseCache.getIfPresent(key);
+			if (convertedTransaction != null) {
+				return Mono.just(convertedTransaction);
+			}
+			return Mono.justOrEmpty(transactionStore.findById(id))
+					.flatMap(transaction -> currency != null && transaction.getDate() == null
+							? Mono.just(new ConvertedTransaction(transaction, null))
+							: getExchangeRate(currency, transaction.getDate())
+								.map(exchangeRate -> new ConvertedTransaction(transaction, exchangeRate))
+								.doOnNext(converted -> {
+									if (!converted.hasStaleRate()) {
+										responseCache.put(key, converted);
+									}
+								})
+								.defaultIfEmpty(new ConvertedTransaction(transaction, null)));
+		});
+	}
+
+	//the entity tag of the cached conversion, null when it isn't cached
+	//it's checked before the transaction is read, the cache is cleared when the rates change
+	public String getCachedETag(long id, String currency) {
+		var convertedTransaction = responseCache.getIfPresent(new ResponseKey(id, currency));
+		return convertedTransaction == null ? null : convertedTransaction.getETag();
+	}
+
+	//the synced rates can replace the rates of the cached conversions
+	@EventListener
+	public void onExchangeRatesSynced(ExchangeRatesSyncedEvent event) {
+		clearResponseCache();
+	}
+
+	public void clearResponseCache() {
+		responseCache.invalidateAll();
+	}
+
+	//convert a list of transactions to a currency, the exchange rate of each transaction date is collected once
+	//the transactions without a date have no exchange rate
+	public Mono<Map<String, Object>> convertTransactions(List<Long> ids, String currency) {
+		return Mono.defer(() -> {
+			var transactions = new HashMap<Long, Transaction>();
+			transactionStore.findAllById(ids).forEach(transaction -> transactions.put(transaction.getId(), transaction));
+			var dates = new HashSet<LocalDate>();
+			transactions.values().forEach(transaction -> {
+				if (transaction.getDate() != null) {
+					dates.add(transaction.getDate());
+				}
+			});
+			return Flux.fromIterable(dates)
+					.flatMap(date -> getExchangeRate(currency, date).map(exchangeRate -> Map.entry(date, exchangeRate)))
+					.collectMap(Map.Entry::getKey, Map.Entry::getValue)
+					.map(exchangeRates -> createConversionData(ids, transactions, exchangeRates));
+		});
+	}
+
+	//write the transactions in a date range to the output while they are read from the database
+	//every transaction is written when there is no range, including the ones without a date
+	//the transactions are converted when the currency is provided, the ones without a date have no rate
+	@Transactional(readOnly = true)
+	public void exportTransactions(LocalDate from, LocalDate to, String currency, ExportFormat format, OutputStream output) throws IOException {
+		var writer = ExportWriter.create(format, output, currency == null ? exportColumns : conversionColumns, objectMapper);
+		// the exchange rate of each transaction date is collected once, the export runs outside of the request thread
+		var exchangeRates = new HashMap<LocalDate, Optional<ExchangeRate>>();
+		try (var transactions = from == null && to == null ? transactionStore.streamAll()
+				: transactionStore.streamByDateBetween(from == null ? firstDate : from, to == null ? lastDate : to)) {
+			var count = 0;
+			for (var iterator = transactions.iterator(); iterator.hasNext();) {
+				var transaction = iterator.next();
+				if (currency == null) {
+					writer.write(createExportData(transaction));
+				} else {
+					var exchangeRate = transaction.getDate() == null ? Optional.<ExchangeRate>empty()
+							: exchangeRates.computeIfAbsent(transaction.getDate(), date -> getExchangeRate(currency, date).blockOptional());
+					writer.write(new ConvertedTransaction(transaction, exchangeRate.orElse(null)));
+				}
+				if (++count % exportFlushSize == 0) {
+					writer.flush();
+				}
+			}
 		}
-		var transaction = transactionOptional.get();
-		// if the currency code is not provide, keep it as US dollar
-		Map<String, String> exchangeRateData = getExchangeRate(currency, transaction);
-		if (exchangeRateData == null) {
-			return new HashMap<String, Object>();
+		writer.flush();
+	}
+
+	//the transaction is saved before it is returned unless the ingest queue is enabled
+	//a null result means the ingest queue is full
+	//the amount is in cents, it is rounded when the request is read
+	public Transaction createTransaction(LocalDate date, String description, long amount) throws Exception {
+		if (transactionIngestQueue.isEnabled()) {
+			return transactionIngestQueue.submit(new Transaction(date, description, amount));
 		}
-				
-		return createTransactionData(transaction, exchangeRateData);
+		return saveTransaction(date, description, amount, null);
+	}
+
+	//the transaction created with the idempotency key in its window is returned instead of creating another one
+	//the key is committed with the new transaction
+	public IdempotencyKeys.Result createTransaction(String idempotencyKey, LocalDate date, String description, long amount) throws Exception {
+		return idempotencyKeys.execute(idempotencyKey, () -> {
+			if (transactionIngestQueue.isEnabled()) {
+				return transactionIngestQueue.submit(new Transaction(date, description, amount), idempotencyKey);
+			}
+			return saveTransaction(date, description, amount, idempotencyKey);
+		});
+	}
+
+	private Transaction saveTransaction(LocalDate date, String description, long amount, String idempotencyKey) {
+		return transactionTemplate.execute(status -> {
+			var transaction = transactionStore.save(new Transaction(date, description, amount));
+			if (idempotencyKey != null) {
+				idempotencyKeys.save(idempotencyKey, transaction);
+			}
+			transactionRollupRepository.add(List.of(transaction));
+			transactionSnapshot.add(List.of(transaction));
+			descriptionIndex.add(List.of(transaction));
+			return transaction;
+		});
+	}
+
+	//the transaction is only queued when it is returned, or when the commit ack timed out
+	public boolean isTransactionQueued(Transaction transaction) {
+		return transactionIngestQueue.isEnabled()
+				&& (transactionIngestQueue.isAckOnEnqueue() || transactionIngestQueue.isQueued(transaction.getId()));
+	}
+
+	//whether a transaction is still queued, committed or failed to commit
+	public TransactionIngestQueue.Status getTransactionStatus(long id) {
+		return transactionIngestQueue.getStatus(id);
 	}
 
+	//create the transactions in one database transaction, the inserts are sent in JDBC batches
+	@Transactional
+	public List<Transaction> createTransactions(List<Transaction> transactions) {
+		var newTransactions = new ArrayList<Transaction>(transactions.size());
+		for (var transaction : transactions) {
+			newTransactions.add(new Transaction(transaction.getDate(), transaction.getDescription(), transaction.getAmount()));
+		}
+		var savedTransactions = transactionStore.saveAll(newTransactions);
+		transactionRollupRepository.add(savedTransactions);
+		transactionSnapshot.add(savedTransactions);
+		descriptionIndex.add(savedTransactions);
+		return savedTransactions;
+	}
 
-	public Transaction createTransaction(LocalDate date, String description, float amount) {
-		// round up
-		amount = Float.parseFloat(decimalFormat.format(amount));
-		return transactionRepository.save(new Transaction(date, description, amount));
+	//the totals of each day or month in a date range, the periods which contain the range bounds are included
+	//they are read from the rollups, or totalled in the snapshot when it's enabled, and converted with the exchange rate on the last day of each period
+	public Mono<List<TransactionSummary>> getSummary(TransactionRollup.Period period, LocalDate from, LocalDate to, String currency) {
+		return Mono.defer(() -> {
+			var rollups = transactionSnapshot.isEnabled() ? transactionSnapshot.summarize(period, from, to) : null;
+			if (rollups == null) {
+				rollups = transactionRollupRepository.findByPeriodAndStartDateBetweenOrderByStartDateAsc(period,
+						period.start(from == null ? firstDate : from), to == null ? lastDate : to);
+			}
+			return Flux.fromIterable(rollups)
+					.flatMapSequential(rollup -> currency == null ? Mono.just(new TransactionSummary(rollup, null))
+							: getExchangeRate(currency, rollup.getEndDate())
+									.map(exchangeRate -> new TransactionSummary(rollup, exchangeRate))
+									.defaultIfEmpty(new TransactionSummary(rollup, null)))
+					.collectList();
+		});
 	}
 
-	private Map<String, String> getExchangeRate(String currency, Transaction transaction) {
-		var date = transaction.getDate();
-		Map<String, String> exchangeRateData;
+	//the dates without a rate are counted
+	private Mono<ExchangeRate> getExchangeRate(String currency, LocalDate date) {
+		// if the currency code is not provide, keep it as US dollar
 		if (currency == null) {
-			exchangeRateData = new HashMap<>();
-			exchangeRateData.put(CurrencyData.COUNTRY_CURRENCY_DESC, "U.S.-Dollar");
-			exchangeRateData.put(CurrencyData.EXCHANGE_RATE, "1");
-			exchangeRateData.put(CurrencyData.RECORD_DATE, date.format(ExchangeRateService.DATE_FORMAT));
-		} else {
-			 exchangeRateData= exchangeRateService.getExchangeRate(currency, date);
+			return Mono.just(new ExchangeRate("U.S.-Dollar", date, BigDecimal.ONE));
+		}
+		return exchangeRateService.getExchangeRate(currency, date)
+				.switchIfEmpty(Mono.fromRunnable(() -> meterRegistry.counter(RATES_NOT_FOUND).increment()));
+	}
+
+	private Map<String, Object> createExportData(Transaction transaction) {
+		Map<String, Object> exportData = new LinkedHashMap<>();
+		exportData.put("id", transaction.getId());
+		exportData.put("date", transaction.getDate() == null ? null : transaction.getDate().format(ExchangeRateService.DATE_FORMAT));
+		exportData.put("description", transaction.getDescription());
+		exportData.put("amount", Money.toDecimal(transaction.getAmount()));
+		return exportData;
+	}
+
+	// the converted transactions in the requested order and the Ids which can't be converted
+	private Map<String, Object> createConversionData(List<Long> ids, Map<Long, Transaction> transactions, Map<LocalDate, ExchangeRate> exchangeRates) {
+		var transactionsData = new ArrayList<ConvertedTransaction>(ids.size());
+		var idsNotFound = new ArrayList<Long>();
+		var exchangeRatesNotFound = new ArrayList<Long>();
+		for (var id : ids) {
+			var transaction = transactions.get(id);
+			if (transaction == null) {
+				idsNotFound.add(id);
+				continue;
+			}
+			var exchangeRate = exchangeRates.get(transaction.getDate());
+			if (exchangeRate == null) {
+				exchangeRatesNotFound.add(id);
+				continue;
+			}
+			transactionsData.add(new ConvertedTransaction(transaction, exchangeRate));
+		}
+		Map<String, Object> conversionData = new LinkedHashMap<>();
+		conversionData.put("transactions", transactionsData);
+		conversionData.put("id_not_found", idsNotFound);
+		conversionData.put("exchange_rate_not_found", exchangeRatesNotFound);
+		return conversionData;
+	}
+
+	// the currency is null for US dollar
+	private static final class ResponseKey {
+		private final long id;
+		private final String currency;
+
+		ResponseKey(long id, String currency) {
+			this.id = id;
+			this.currency = currency;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ResponseKey))
+				return false;
+			var other = (ResponseKey) obj;
+			return id == other.id && Objects.equals(currency, other.currency);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(id, currency);
 		}
-		return exchangeRateData;
-	}
-
-	private Map<String, Object> createTransactionData(Transaction transaction, Map<String, String> exchangeRateData) {
-		Map<String, Object> transactionData = new LinkedHashMap<>();
-		// transaction data
-		transactionData.put("transaction_id", transaction.getId());
-		transactionData.put("description", transaction.getDescription());
-		transactionData.put("original_amount", transaction.getAmount());
-		transactionData.put("transaction_date", transaction.getDate().format(ExchangeRateService.DATE_FORMAT));
-
-		//foreign exchange
-		var rate = Float.parseFloat(exchangeRateData.get(CurrencyData.EXCHANGE_RATE));
-		transactionData.put("currency_amount", Float.parseFloat(decimalFormat.format(transaction.getAmount()*rate)));
-		transactionData.put("curreny", exchangeRateData.get(CurrencyData.COUNTRY_CURRENCY_DESC));
-		transactionData.put("exchange_rate", Float.valueOf(exchangeRateData.get(CurrencyData.EXCHANGE_RATE)));
-		transactionData.put("rate_date", exchangeRateData.get(CurrencyData.RECORD_DATE));
-		return transactionData;
 	}
 }
@@ -0,0 +1,429 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+import com.samuelwu.wex.tag.transaction.model.TransactionRollup;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+// a columnar copy of the transactions in memory for the scans of the filtered lists and of the summaries
+// the epoch days, amounts, Ids and description codes are primitive columns in direct buffers outside the heap,
+// the distinct descriptions are kept once in a dictionary
+// it's loaded at startup and the committed transactions are appended, a scan is split over the fork/join pool
+@Component
+public class TransactionSnapshot {
+
+	private static final int NO_DATE = Integer.MIN_VALUE;
+	private static final int NO_DESCRIPTION = -1;
+	// the rows scanned by one task
+	private static final int chunkRows = 1 << 16;
+	// the longest summary in days, a longer one is read from the rollups
+	private static final int maxSummaryDays = 1 << 20;
+	private static final LocalDate firstDate = LocalDate.of(1, 1, 1);
+	private static final LocalDate lastDate = LocalDate.of(9999, 12, 31);
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Value("${transaction.snapshot.enabled:false}")
+	private boolean enabled;
+	// the rows allocated at startup, the columns double when they are full
+	@Value("${transaction.snapshot.capacity:1048576}")
+	private int capacity;
+
+	@Autowired
+	private TransactionStore transactionStore;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	// a scan reads the size first, the columns and the dictionary published before it hold all its rows
+	private volatile Columns columns;
+	private volatile int size;
+	private volatile String[] descriptions = new String[1024];
+	private final Map<String, Integer> descriptionCodes = new HashMap<>();
+	private volatile int firstDay = Integer.MAX_VALUE;
+	private volatile int lastDay = Integer.MIN_VALUE;
+
+	@PostConstruct
+	public void load() {
+		if (!enabled) {
+			return;
+		}
+		columns = new Columns(capacity);
+		var readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+		readOnly.setReadOnly(true);
+		readOnly.executeWithoutResult(status -> {
+			try (var transactions = transactionStore.streamAll()) {
+				transactions.forEach(this::append);
+			}
+		});
+		Gauge.builder("transaction.snapshot.rows", this, TransactionSnapshot::size).register(meterRegistry);
+		Gauge.builder("transaction.snapshot.offheap", this, snapshot -> snapshot.getOffHeapBytes())
+				.baseUnit("bytes")
+				.register(meterRegistry);
+		logger.info(String.format("Loaded %d transactions into the snapshot, %.1f MB off heap, %d distinct descriptions",
+				size, getOffHeapBytes() / 1048576.0, descriptionCodes.size()));
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getOffHeapBytes() {
+		var current = columns;
+		return current == null ? 0 : current.getBytes();
+	}
+
+	// the transactions are appended once their database transaction is committed, so a rollback doesn't leave them in the snapshot
+	public void add(Collection<Transaction> transactions) {
+		if (!enabled) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					appendAll(transactions);
+				}
+			});
+		} else {
+			appendAll(transactions);
+		}
+	}
+
+	// the page after the cursor in the order of date and Id, or of amount and Id for an amount range only
+	// each task keeps the first rows of its chunk and the chunks are merged
+	public Slice<Transaction> findPage(TransactionFilter filter, TransactionCursor cursor, int pageSize) {
+		var rowCount = size;
+		var scan = new PageScan(columns, filter, cursor, pageSize + 1);
+		var rows = ForkJoinPool.commonPool().invoke(scan.new Task(0, rowCount));
+		var descriptionArray = descriptions;
+		var transactions = new ArrayList<Transaction>(rows.length);
+		for (var row : rows) {
+			transactions.add(scan.columns.read(row, descriptionArray));
+		}
+		var hasNext = transactions.size() > pageSize;
+		var content = hasNext ? transactions.subList(0, pageSize) : transactions;
+		return new SliceImpl<>(content, PageRequest.of(0, pageSize), hasNext);
+	}
+
+	// the rollups of the periods which start between the start of the period of from and to, like the rollups table has them
+	// null when the range is too long to be totalled in arrays
+	public List<TransactionRollup> summarize(TransactionRollup.Period period, LocalDate from, LocalDate to) {
+		var rowCount = size;
+		var start = (int) Math.max(period.start(from == null ? firstDate : from).toEpochDay(), firstDay);
+		var end = (int) Math.min(period.end(period.start(to == null ? lastDate : to)).toEpochDay(), lastDay);
+		if (end < start) {
+			return List.of();
+		}
+		if (end - start + 1 > maxSummaryDays) {
+			return null;
+		}
+		// the period of each day of the range
+		var periodOfDay = new int[end - start + 1];
+		var periodStarts = new ArrayList<LocalDate>();
+		for (int day = start; day <= end; day++) {
+			var periodStart = period.start(LocalDate.ofEpochDay(day));
+			if (periodStarts.isEmpty() || !periodStarts.get(periodStarts.size() - 1).equals(periodStart)) {
+				periodStarts.add(periodStart);
+			}
+			periodOfDay[day - start] = periodStarts.size() - 1;
+		}
+		var totals = ForkJoinPool.commonPool().invoke(new SummaryTask(columns, start, end, periodOfDay, periodStarts.size(), 0, rowCount));
+		var rollups = new ArrayList<TransactionRollup>();
+		for (int i = 0; i < periodStarts.size(); i++) {
+			if (totals[0][i] > 0) {
+				rollups.add(new TransactionRollup(period, periodStarts.get(i), totals[0][i], totals[1][i]));
+			}
+		}
+		return rollups;
+	}
+
+	private synchronized void appendAll(Collection<Transaction> transactions) {
+		for (var transaction : transactions) {
+			append(transaction);
+		}
+	}
+
+	// the row is written before the size is published
+	private synchronized void append(Transaction transaction) {
+		var current = columns;
+		if (size == current.capacity) {
+			current = current.grow(size);
+			columns = current;
+		}
+		var day = transaction.getDate() == null ? NO_DATE : (int) transaction.getDate().toEpochDay();
+		current.days.put(size, day);
+		current.amounts.put(size, transaction.getAmount());
+		current.ids.put(size, transaction.getId());
+		current.descriptions.put(size, encode(transaction.getDescription()));
+		if (day != NO_DATE) {
+			firstDay = Math.min(firstDay, day);
+			lastDay = Math.max(lastDay, day);
+		}
+		size++;
+	}
+
+	private int encode(String description) {
+		if (description == null) {
+			return NO_DESCRIPTION;
+		}
+		var code = descriptionCodes.get(description);
+		if (code == null) {
+			code = descriptionCodes.size();
+			var current = descriptions;
+			if (code == current.length) {
+				current = Arrays.copyOf(current, current.length * 2);
+			}
+			current[code] = description;
+			descriptions = current;
+			descriptionCodes.put(description, code);
+		}
+		return code;
+	}
+
+	// the columns of a capacity of rows, they are replaced by larger ones when they are full
+	// a buffer holds at most Integer.MAX_VALUE bytes, so the long columns limit the rows
+	private static final class Columns {
+		private static final int MAX_CAPACITY = Integer.MAX_VALUE / Long.BYTES;
+
+		private final int capacity;
+		private final IntBuffer days;
+		private final LongBuffer amounts;
+		private final LongBuffer ids;
+		private final IntBuffer descriptions;
+
+		Columns(int capacity) {
+			if (capacity < 1 || capacity > MAX_CAPACITY) {
+				throw new IllegalArgumentException("The snapshot capacity needs to be between 1 and " + MAX_CAPACITY + " rows: " + capacity);
+			}
+			this.capacity = capacity;
+			days = allocate((long) capacity * Integer.BYTES).asIntBuffer();
+			amounts = allocate((long) capacity * Long.BYTES).asLongBuffer();
+			ids = allocate((long) capacity * Long.BYTES).asLongBuffer();
+			descriptions = allocate((long) capacity * Integer.BYTES).asIntBuffer();
+		}
+
+		private static ByteBuffer allocate(long bytes) {
+			return ByteBuffer.allocateDirect(Math.toIntExact(bytes)).order(ByteOrder.nativeOrder());
+		}
+
+		// the capacity doubles up to the largest one
+		Columns grow(int rows) {
+			if (capacity == MAX_CAPACITY) {
+				throw new IllegalStateException("The snapshot is full at " + MAX_CAPACITY + " rows, disable it with transaction.snapshot.enabled=false");
+			}
+			var grown = new Columns((int) Math.min(2L * capacity, MAX_CAPACITY));
+			grown.days.put(0, days, 0, rows);
+			grown.amounts.put(0, amounts, 0, rows);
+			grown.ids.put(0, ids, 0, rows);
+			grown.descriptions.put(0, descriptions, 0, rows);
+			return grown;
+		}
+
+		long getBytes() {
+			return (long) capacity * (2 * Integer.BYTES + 2 * Long.BYTES);
+		}
+
+		Transaction read(int row, String[] descriptionArray) {
+			var day = days.get(row);
+			var code = descriptions.get(row);
+			var transaction = new Transaction(day == NO_DATE ? null : LocalDate.ofEpochDay(day),
+					code == NO_DESCRIPTION ? null : descriptionArray[code], amounts.get(row));
+			transaction.setId(ids.get(row));
+			return transaction;
+		}
+	}
+
+	// the bounds of a page scan, the rows are compared by their key (the day or the amount) and their Id
+	private static final class PageScan {
+		private final Columns columns;
+		private final boolean byAmount;
+		private final boolean hasDateRange;
+		private final int fromDay;
+		private final int toDay;
+		private final long minAmount;
+		private final long maxAmount;
+		private final boolean hasCursor;
+		private final long cursorKey;
+		private final long cursorId;
+		private final int limit;
+
+		PageScan(Columns columns, TransactionFilter filter, TransactionCursor cursor, int limit) {
+			this.columns = columns;
+			this.limit = limit;
+			byAmount = filter.isOrderedByAmount();
+			hasDateRange = filter.hasDateRange();
+			fromDay = filter.getFrom() == null ? Integer.MIN_VALUE : (int) filter.getFrom().toEpochDay();
+			toDay = filter.getTo() == null ? Integer.MAX_VALUE : (int) filter.getTo().toEpochDay();
+			minAmount = filter.getMinAmount() == null ? Long.MIN_VALUE : filter.getMinAmount();
+			maxAmount = filter.getMaxAmount() == null ? Long.MAX_VALUE : filter.getMaxAmount();
+			hasCursor = cursor != null;
+			// a cursor without a date is before the rows with a date, like its transaction
+			cursorKey = cursor == null ? 0
+					: byAmount ? cursor.getAmount() : cursor.getDate() == null ? NO_DATE : cursor.getDate().toEpochDay();
+			cursorId = cursor == null ? 0 : cursor.getId();
+		}
+
+		long key(int row) {
+			return byAmount ? columns.amounts.get(row) : columns.days.get(row);
+		}
+
+		boolean before(int row, int other) {
+			var key = key(row);
+			var otherKey = key(other);
+			return key < otherKey || key == otherKey && columns.ids.get(row) < columns.ids.get(other);
+		}
+
+		// a row without a date is only in the lists without a date range, as in the query
+		boolean matches(int row) {
+			var day = columns.days.get(row);
+			var amount = columns.amounts.get(row);
+			if (hasDateRange && day == NO_DATE || day < fromDay || day > toDay || amount < minAmount || amount > maxAmount) {
+				return false;
+			}
+			if (!hasCursor) {
+				return true;
+			}
+			var key = byAmount ? amount : day;
+			return key > cursorKey || key == cursorKey && columns.ids.get(row) > cursorId;
+		}
+
+		// the first rows of a range of rows in order
+		final class Task extends RecursiveTask<int[]> {
+			private static final long serialVersionUID = 1L;
+
+			private final int from;
+			private final int to;
+
+			Task(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+
+			@Override
+			protected int[] compute() {
+				if (to - from > chunkRows) {
+					var middle = (from + to) >>> 1;
+					var left = new Task(from, middle);
+					left.fork();
+					var right = new Task(middle, to).compute();
+					return merge(left.join(), right);
+				}
+				var rows = new int[limit];
+				var count = 0;
+				for (int row = from; row < to; row++) {
+					if (!matches(row) || count == limit && !before(row, rows[limit - 1])) {
+						continue;
+					}
+					// insert in order, the last row drops out of a full page
+					var position = count;
+					while (position > 0 && before(row, rows[position - 1])) {
+						position--;
+					}
+					var moved = Math.min(count, limit - 1) - position;
+					System.arraycopy(rows, position, rows, position + 1, moved);
+					rows[position] = row;
+					count = Math.min(count + 1, limit);
+				}
+				return Arrays.copyOf(rows, count);
+			}
+
+			private int[] merge(int[] left, int[] right) {
+				var merged = new int[Math.min(left.length + right.length, limit)];
+				int i = 0, j = 0;
+				for (int k = 0; k < merged.length; k++) {
+					merged[k] = j == right.length || i < left.length && before(left[i], right[j]) ? left[i++] : right[j++];
+				}
+				return merged;
+			}
+		}
+	}
+
+	// the count and the total amount of each period of a range of rows
+	private static final class SummaryTask extends RecursiveTask<long[][]> {
+		private static final long serialVersionUID = 1L;
+
+		// the task is never serialized, the columns are off heap
+		private final transient Columns columns;
+		private final int start;
+		private final int end;
+		private final int[] periodOfDay;
+		private final int periods;
+		private final int from;
+		private final int to;
+
+		SummaryTask(Columns columns, int start, int end, int[] periodOfDay, int periods, int from, int to) {
+			this.columns = columns;
+			this.start = start;
+			this.end = end;
+			this.periodOfDay = periodOfDay;
+			this.periods = periods;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected long[][] compute() {
+			if (to - from > chunkRows) {
+				var middle = (from + to) >>> 1;
+				var left = new SummaryTask(columns, start, end, periodOfDay, periods, from, middle);
+				left.fork();
+				var totals = new SummaryTask(columns, start, end, periodOfDay, periods, middle, to).compute();
+				var leftTotals = left.join();
+				for (int i = 0; i < periods; i++) {
+					totals[0][i] += leftTotals[0][i];
+					totals[1][i] += leftTotals[1][i];
+				}
+				return totals;
+			}
+			var counts = new long[periods];
+			var amounts = new long[periods];
+			for (int row = from; row < to; row++) {
+				var day = columns.days.get(row);
+				if (day >= start && day <= end) {
+					var period = periodOfDay[day - start];
+					counts[period]++;
+					amounts[period] += columns.amounts.get(row);
+				}
+			}
+			return new long[][] { counts, amounts };
+		}
+	}
+}
@@ -0,0 +1,10 @@
+-- the transaction schema created by Hibernate before the migrations were added
+create sequence if not exists transactions_seq start with 1 increment by 50;
+
+create table if not exists transactions (
+	id bigint not null,
+	amount float(24),
+	date date,
+	description varchar(255),
+	primary key (id)
+);
@@ -0,0 +1,10 @@
+-- keep the amounts as cents, the float amounts were rounded to cents when they were created
+-- the cast to decimal removes the float error before the rounding, e.g. 123.12999725 becomes 123.1300
+-- a transaction without an amount fails the migration rather than becoming 0
+alter table transactions add column amount_cents bigint;
+
+update transactions set amount_cents = round(cast(amount as decimal(19, 4)) * 100);
+
+alter table transactions alter column amount_cents set not null;
+
+alter table transactions drop column amount;
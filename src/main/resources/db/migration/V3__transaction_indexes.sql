@@ -0,0 +1,3 @@
+-- the pages of transactions are read in the order of date or amount
+create index if not exists transactions_date_id on transactions (date, id);
+create index if not exists transactions_amount_id on transactions (amount_cents, id);
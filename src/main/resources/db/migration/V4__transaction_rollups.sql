@@ -0,0 +1,16 @@
+-- the number and total amount of the transactions per day and per month
+create table if not exists transaction_rollups (
+	period varchar(5) not null,
+	start_date date not null,
+	transaction_count bigint not null,
+	amount_cents bigint not null,
+	primary key (period, start_date)
+);
+
+-- the rollups of the existing transactions
+insert into transaction_rollups (period, start_date, transaction_count, amount_cents)
+select 'DAY', date, count(*), sum(amount_cents) from transactions where date is not null group by date;
+
+insert into transaction_rollups (period, start_date, transaction_count, amount_cents)
+select 'MONTH', cast(date_trunc('month', date) as date), count(*), sum(amount_cents)
+from transactions where date is not null group by cast(date_trunc('month', date) as date);
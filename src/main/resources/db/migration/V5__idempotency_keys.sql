@@ -0,0 +1,9 @@
+-- the transaction created for each idempotency key, so a retried request returns it instead of creating another one
+create table if not exists idempotency_keys (
+	idempotency_key varchar(255) not null primary key,
+	transaction_id bigint not null,
+	created_at timestamp with time zone not null
+);
+
+-- the expired keys are deleted by their creation time
+create index if not exists idempotency_keys_created_at on idempotency_keys (created_at);
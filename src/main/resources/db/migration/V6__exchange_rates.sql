@@ -0,0 +1,11 @@
+-- the local copy of the Treasury exchange rates, a database where Hibernate already created it keeps its table
+create sequence if not exists exchange_rates_seq start with 1 increment by 50;
+
+create table if not exists exchange_rates (
+	id bigint not null,
+	currency varchar(255) not null,
+	record_date date not null,
+	exchange_rate numeric(19, 6) not null,
+	primary key (id),
+	constraint exchange_rates_currency_record_date unique (currency, record_date)
+);
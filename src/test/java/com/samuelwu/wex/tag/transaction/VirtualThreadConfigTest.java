@@ -0,0 +1,54 @@
+package com.samuelwu.wex.tag.transaction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+// the requests, the async executor and the scheduler run on virtual threads
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"spring.threads.virtual.enabled=true",
+		"spring.datasource.url=jdbc:h2:mem:virtual;DB_CLOSE_DELAY=-1" })
+public class VirtualThreadConfigTest {
+
+	@Autowired
+	private ServletWebServerApplicationContext applicationContext;
+
+	@Autowired
+	@Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+	private AsyncTaskExecutor applicationTaskExecutor;
+
+	@Autowired
+	private ThreadPoolTaskScheduler taskScheduler;
+
+	private final Callable<Boolean> isVirtual = () -> Thread.currentThread().isVirtual();
+
+	@Test
+	void requestThreads() throws Exception {
+		var tomcat = ((TomcatWebServer) applicationContext.getWebServer()).getTomcat();
+		var executor = tomcat.getConnector().getProtocolHandler().getExecutor();
+		var result = new CompletableFuture<Boolean>();
+		executor.execute(() -> result.complete(Thread.currentThread().isVirtual()));
+		assertTrue(result.get());
+	}
+
+	@Test
+	void asyncThreads() throws Exception {
+		assertTrue(applicationTaskExecutor.submit(isVirtual).get());
+	}
+
+	@Test
+	void scheduledThreads() throws Exception {
+		assertTrue(taskScheduler.submit(isVirtual).get());
+	}
+}
@@ -1,10 +1,15 @@
 package com.samuelwu.wex.tag.transaction.controller;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.handler;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -12,13 +17,19 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import com.samuelwu.wex.tag.transaction.service.CurrencyCatalog;
 import com.samuelwu.wex.tag.transaction.service.ExchangeRateService;
 
+import reactor.core.publisher.Mono;
+
 @WebMvcTest(ExchangeRateController.class)
 @AutoConfigureMockMvc
 public class ExchangeRateControllerTest {
@@ -28,25 +39,51 @@ public class ExchangeRateControllerTest {
 	@MockBean
 	ExchangeRateService exchangeRateService;
 
+	@MockBean
+	CurrencyCatalog currencyCatalog;
+
 	@Test
 	public void getAllCurrencies_success() throws Exception {
 		var currencies = new ArrayList<String>();
 		currencies.add("currency1");
 		currencies.add("currency2");
-		Mockito.when(exchangeRateService.getValidCurrencies()).thenReturn(currencies);
-		mvc.perform(MockMvcRequestBuilders.get("/api/exchange")
+		Mockito.when(currencyCatalog.getCatalog()).thenReturn(Mono.just(new CurrencyCatalog.Catalog(currencies)));
+		performAsync(MockMvcRequestBuilders.get("/api/exchange")
 				.accept(MediaType.APPLICATION_JSON))
 				.andExpect(status().isOk())
 				.andExpect(handler().handlerType(ExchangeRateController.class))
 				.andExpect(handler().methodName("getAllCurrencies"))
+				.andExpect(header().string(HttpHeaders.ETAG, new CurrencyCatalog.Catalog(currencies).getETag()))
+				.andExpect(content().string("[\"currency1\",\"currency2\"]"));
+	}
+
+	@Test
+	public void getAllCurrencies_notModified() throws Exception {
+		var eTag = new CurrencyCatalog.Catalog(List.of("currency1", "currency2")).getETag();
+		Mockito.when(currencyCatalog.getETag()).thenReturn(eTag);
+		performAsync(MockMvcRequestBuilders.get("/api/exchange")
+				.header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + eTag)
+				.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isNotModified())
+				.andExpect(handler().methodName("getAllCurrencies"))
+				.andExpect(header().string(HttpHeaders.ETAG, eTag))
+				.andExpect(content().string(""));
+		Mockito.verify(currencyCatalog, Mockito.never()).getCatalog();
+
+		// a client with another version gets the list
+		Mockito.when(currencyCatalog.getCatalog()).thenReturn(Mono.just(new CurrencyCatalog.Catalog(List.of("currency1", "currency2"))));
+		performAsync(MockMvcRequestBuilders.get("/api/exchange")
+				.header(HttpHeaders.IF_NONE_MATCH, "\"other\"")
+				.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
 				.andExpect(content().string("[\"currency1\",\"currency2\"]"));
 	}
 
 	@Test
 	public void getAllCurrencies_empty() throws Exception {
 		var currencies = new ArrayList<String>();
-		Mockito.when(exchangeRateService.getValidCurrencies()).thenReturn(currencies);
-		mvc.perform(MockMvcRequestBuilders.get("/api/exchange")
+		Mockito.when(currencyCatalog.getCatalog()).thenReturn(Mono.just(new CurrencyCatalog.Catalog(currencies)));
+		performAsync(MockMvcRequestBuilders.get("/api/exchange")
 				.accept(MediaType.APPLICATION_JSON))
 				.andExpect(status().is(HttpStatus.NO_CONTENT.value()))
 				.andExpect(handler().handlerType(ExchangeRateController.class))
@@ -56,8 +93,8 @@ public class ExchangeRateControllerTest {
 
 	@Test
 	public void getAllCurrencies_exception() throws Exception {
-		Mockito.when(exchangeRateService.getValidCurrencies()).thenThrow(new RuntimeException());
-		mvc.perform(MockMvcRequestBuilders.get("/api/exchange")
+		Mockito.when(currencyCatalog.getCatalog()).thenThrow(new RuntimeException());
+		performAsync(MockMvcRequestBuilders.get("/api/exchange")
 				.accept(MediaType.APPLICATION_JSON))
 				.andExpect(status().is(HttpStatus.INTERNAL_SERVER_ERROR.value()))
 				.andExpect(handler().handlerType(ExchangeRateController.class))
@@ -65,4 +102,28 @@ public class ExchangeRateControllerTest {
 				.andExpect(content().string("System error. Contact administrator."));
 
 	}
+
+	@Test
+	public void getCacheStatistics_success() throws Exception {
+		var statistics = new LinkedHashMap<String, Object>();
+		statistics.put("size", 1);
+		statistics.put("hits", 2);
+		statistics.put("misses", 1);
+		statistics.put("evictions", 0);
+		Mockito.when(exchangeRateService.getCacheStatistics()).thenReturn(statistics);
+		mvc.perform(MockMvcRequestBuilders.get("/api/exchange/cache")
+				.accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(handler().handlerType(ExchangeRateController.class))
+				.andExpect(handler().methodName("getCacheStatistics"))
+				.andExpect(content().json("{\"size\":1,\"hits\":2,\"misses\":1,\"evictions\":0}"));
+	}
+
+	// the response of a reactive endpoint is written by an async dispatch
+	private ResultActions performAsync(MockHttpServletRequestBuilder builder) throws Exception {
+		var result = mvc.perform(builder)
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		return mvc.perform(asyncDispatch(result));
+	}
 }
\ No newline at end of file
@@ -1,84 +1,328 @@
 package com.samuelwu.wex.tag.transaction.controller;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.handler;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-import com.samuelwu.wex.tag.transaction.model.CurrencyData;
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
 import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+import com.samuelwu.wex.tag.transaction.model.TransactionRollup;
+import com.samuelwu.wex.tag.transaction.repository.IdempotencyKeyRepository;
 import com.samuelwu.wex.tag.transaction.repository.TransactionRepository;
+import com.samuelwu.wex.tag.transaction.repository.TransactionRollupRepository;
+import com.samuelwu.wex.tag.transaction.service.CurrencyCatalog;
+import com.samuelwu.wex.tag.transaction.service.DescriptionIndex;
 import com.samuelwu.wex.tag.transaction.service.ExchangeRateService;
+import com.samuelwu.wex.tag.transaction.service.ExchangeRateUnavailableException;
+import com.samuelwu.wex.tag.transaction.service.ExchangeRatesSyncedEvent;
+import com.samuelwu.wex.tag.transaction.service.IdempotencyKeys;
+import com.samuelwu.wex.tag.transaction.service.TransactionIngestQueue;
+import com.samuelwu.wex.tag.transaction.service.TransactionService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
 
 
 @SpringBootTest
+@AutoConfigureTestDatabase
 @AutoConfigureMockMvc
 public class TransactionControllerTest {
 
 	@Autowired
 	private MockMvc mvc;
 	
+	@Autowired
+	private TransactionService transactionService;
+	
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+	
 	@MockBean
 	private TransactionRepository transactionRepository;
 	
 	@MockBean
 	private ExchangeRateService exchangeRateService;
 	
+	@MockBean
+	private TransactionIngestQueue transactionIngestQueue;
+	
+	@MockBean
+	private TransactionRollupRepository transactionRollupRepository;
+	
+	@MockBean
+	private CurrencyCatalog currencyCatalog;
+	
+	@Autowired
+	private IdempotencyKeyRepository idempotencyKeyRepository;
+	
+	@Autowired
+	private IdempotencyKeys idempotencyKeys;
+	
+	@Autowired
+	private MeterRegistry meterRegistry;
+	
+	@Autowired
+	private DescriptionIndex descriptionIndex;
+	
 	@Test
 	public void getAllTransactions_empty() throws Exception {
-		Mockito.when(transactionRepository.findAll(PageRequest.of(0, 50))).thenReturn(new PageImpl<Transaction>(new ArrayList<Transaction>()));
+		Mockito.when(transactionRepository.findAllByOrderByDateAscIdAsc(PageRequest.of(0, 50))).thenReturn(new SliceImpl<Transaction>(new ArrayList<Transaction>()));
 		getTransactions_empty(null);
 	}
 
 	@Test
 	public void getTransactionsByDate_empty() throws Exception {
 		var date = LocalDate.now();
-		Mockito.when(transactionRepository.findByDate(date, PageRequest.of(0, 50))).thenReturn(new ArrayList<Transaction>());
+		Mockito.when(transactionRepository.findByDateOrderByIdAsc(date, PageRequest.of(0, 50))).thenReturn(new SliceImpl<Transaction>(new ArrayList<Transaction>()));
 		getTransactions_empty(date);
 	}
 	
 	@Test
 	public void getAllTransactions_common() throws Exception {
 		var transactions = getSampleTransactions();
-		Mockito.when(transactionRepository.findAll( PageRequest.of(0, 50))).thenReturn(new PageImpl<Transaction>(transactions));
+		Mockito.when(transactionRepository.findAllByOrderByDateAscIdAsc(PageRequest.of(0, 50))).thenReturn(new SliceImpl<Transaction>(transactions));
 		getTransactions_common(null, transactions);
 	}
 	
+	@Test
+	public void getAllTransactions_nextPage() throws Exception {
+		var transactions = getSampleTransactions();
+		var last = transactions.get(1);
+		last.setId(7);
+		var pageSize = PageRequest.of(0, 50);
+		Mockito.when(transactionRepository.findAllByOrderByDateAscIdAsc(pageSize)).thenReturn(new SliceImpl<Transaction>(transactions, pageSize, true));
+		var cursor = new TransactionCursor(last.getDate(), last.getId()).encode();
+		mvc.perform(createGetTransactionsRequestBuilder(null))
+				.andExpect(status().isOk())
+				.andExpect(header().string(TransactionController.NEXT_CURSOR_HEADER, cursor));
+
+		// the next page starts after the last transaction
+		var nextTransactions = new ArrayList<Transaction>();
+		nextTransactions.add(new Transaction(last.getDate(), "description", 150));
+		Mockito.when(transactionRepository.findAfter(last.getDate(), last.getId(), pageSize)).thenReturn(new SliceImpl<Transaction>(nextTransactions, pageSize, false));
+		mvc.perform(createGetTransactionsRequestBuilder(null).queryParam("cursor", cursor))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(TransactionController.NEXT_CURSOR_HEADER))
+				.andExpect(content().json("[{\"description\":\"description\",\"amount\":1.5}]"));
+	}
+	
+	@Test
+	public void getAllTransactions_nextPageWithoutDate() throws Exception {
+		// the page ends on a transaction without a date
+		var last = new Transaction(null, "description", 150);
+		last.setId(7);
+		var pageSize = PageRequest.of(0, 50);
+		Mockito.when(transactionRepository.findAllByOrderByDateAscIdAsc(pageSize)).thenReturn(new SliceImpl<Transaction>(List.of(last), pageSize, true));
+		var cursor = mvc.perform(createGetTransactionsRequestBuilder(null))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(TransactionController.NEXT_CURSOR_HEADER);
+		assertEquals(null, TransactionCursor.decode(cursor).getDate());
+
+		var nextTransactions = new ArrayList<Transaction>();
+		nextTransactions.add(new Transaction(LocalDate.of(2023, 10, 1), "description", 150));
+		Mockito.when(transactionRepository.findAfterNoDate(7, pageSize)).thenReturn(new SliceImpl<Transaction>(nextTransactions, pageSize, false));
+		mvc.perform(createGetTransactionsRequestBuilder(null).queryParam("cursor", cursor))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(TransactionController.NEXT_CURSOR_HEADER))
+				.andExpect(content().json("[{\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":1.5}]"));
+	}
+	
+	@Test
+	public void getTransactionsByDate_nextPage() throws Exception {
+		var date = LocalDate.now();
+		var pageSize = PageRequest.of(0, 50);
+		var transactions = new ArrayList<Transaction>();
+		transactions.add(new Transaction(date, "description", 150));
+		Mockito.when(transactionRepository.findByDateAndIdGreaterThanOrderByIdAsc(date, 7, pageSize)).thenReturn(new SliceImpl<Transaction>(transactions, pageSize, false));
+		var cursor = new TransactionCursor(date, 7).encode();
+		mvc.perform(createGetTransactionsRequestBuilder(date).queryParam("cursor", cursor))
+				.andExpect(status().isOk())
+				.andExpect(handler().methodName("getAllTransactions"))
+				.andExpect(content().json("[{\"description\":\"description\",\"amount\":1.5}]"));
+	}
+	
+	@Test
+	public void getAllTransactions_invalidCursor() throws Exception {
+		mvc.perform(createGetTransactionsRequestBuilder(null).queryParam("cursor", "invalid"))
+				.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+				.andExpect(handler().methodName("getAllTransactions"))
+				.andExpect(content().string("Invalid cursor"));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+	
+	@Test
+	public void searchTransactions() throws Exception {
+		var date = LocalDate.of(2023, 10, 1);
+		var transactions = new ArrayList<Transaction>();
+		for (int i = 0; i < 52; i++) {
+			// every other description has the trigrams of the fragment but not the fragment
+			var transaction = new Transaction(date, i % 2 == 0 ? "Zebra crossing " + i : "zeb ebr bra " + i, 100);
+			transaction.setId(9000 + i);
+			transactions.add(transaction);
+		}
+		for (int i = 52; i < 104; i++) {
+			var transaction = new Transaction(date, "ZEBRA " + i, 100);
+			transaction.setId(9000 + i);
+			transactions.add(transaction);
+		}
+		descriptionIndex.add(transactions);
+		Mockito.when(transactionRepository.findAllById(Mockito.any())).thenAnswer(invocation -> {
+			List<Long> ids = invocation.getArgument(0);
+			return transactions.stream().filter(transaction -> ids.contains(transaction.getId())).toList();
+		});
+
+		// the first page of 50 in the order of Id, ignoring the case
+		var matching = transactions.stream().filter(transaction -> transaction.getDescription().toLowerCase().contains("zebra")).toList();
+		var result = mvc.perform(MockMvcRequestBuilders.get("/api/transactions/search").queryParam("q", "zeBRA"))
+				.andExpect(status().isOk())
+				.andExpect(handler().methodName("searchTransactions"))
+				.andExpect(header().string(TransactionController.NEXT_CURSOR_HEADER, String.valueOf(matching.get(49).getId())))
+				.andReturn();
+		var type = new TypeReference<List<Transaction>>() {};
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new JavaTimeModule());
+		List<Transaction> page = objectMapper.readValue(result.getResponse().getContentAsString(), type);
+		assertEquals(matching.subList(0, 50).stream().map(Transaction::getId).toList(), page.stream().map(Transaction::getId).toList());
+
+		// the rest after the cursor
+		result = mvc.perform(MockMvcRequestBuilders.get("/api/transactions/search").queryParam("q", "zebra")
+				.queryParam("cursor", String.valueOf(matching.get(49).getId())))
+				.andExpect(status().isOk())
+				.andExpect(header().doesNotExist(TransactionController.NEXT_CURSOR_HEADER))
+				.andReturn();
+		page = objectMapper.readValue(result.getResponse().getContentAsString(), type);
+		assertEquals(matching.subList(50, matching.size()).stream().map(Transaction::getId).toList(), page.stream().map(Transaction::getId).toList());
+
+		// a fragment without a match
+		mvc.perform(MockMvcRequestBuilders.get("/api/transactions/search").queryParam("q", "zebras"))
+				.andExpect(status().isNoContent());
+	}
+	
+	@Test
+	public void searchTransactions_invalid() throws Exception {
+		mvc.perform(MockMvcRequestBuilders.get("/api/transactions/search").queryParam("q", "ze"))
+				.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+				.andExpect(handler().methodName("searchTransactions"))
+				.andExpect(content().string("The search needs between 3 and 50 characters"));
+		mvc.perform(MockMvcRequestBuilders.get("/api/transactions/search").queryParam("q", "z".repeat(51)))
+				.andExpect(status().is(HttpStatus.BAD_REQUEST.value()));
+		mvc.perform(MockMvcRequestBuilders.get("/api/transactions/search").queryParam("q", "zebra").queryParam("cursor", "invalid"))
+				.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+				.andExpect(content().string("Invalid cursor"));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+	
+	@Test
+	public void getTransactionsInRanges_common() throws Exception {
+		var transactions = getSampleTransactions();
+		var captor = ArgumentCaptor.forClass(TransactionFilter.class);
+		Mockito.when(transactionRepository.findPage(captor.capture(), Mockito.isNull(), Mockito.eq(50))).thenReturn(new SliceImpl<Transaction>(transactions));
+		mvc.perform(createGetTransactionsRequestBuilder(null).queryParam("from", "2023-10-01").queryParam("to", "2023-10-31")
+				.queryParam("minAmount", "1.005").queryParam("maxAmount", "200"))
+				.andExpect(status().isOk())
+				.andExpect(handler().methodName("getAllTransactions"))
+				.andExpect(header().doesNotExist(TransactionController.NEXT_CURSOR_HEADER));
+		var filter = captor.getValue();
+		assertEquals(LocalDate.of(2023, 10, 1), filter.getFrom());
+		assertEquals(LocalDate.of(2023, 10, 31), filter.getTo());
+		assertEquals(101, filter.getMinAmount());
+		assertEquals(20000, filter.getMaxAmount());
+	}
+
+	@Test
+	public void getTransactionsInAmountRange_nextPage() throws Exception {
+		var transactions = getSampleTransactions();
+		var last = transactions.get(1);
+		last.setId(7);
+		var pageSize = PageRequest.of(0, 50);
+		Mockito.when(transactionRepository.findPage(Mockito.any(), Mockito.isNull(), Mockito.eq(50))).thenReturn(new SliceImpl<Transaction>(transactions, pageSize, true));
+		// the cursor of the amount order has the amount of the last transaction
+		var cursor = TransactionCursor.ofAmount(last).encode();
+		mvc.perform(createGetTransactionsRequestBuilder(null).queryParam("minAmount", "100"))
+				.andExpect(status().isOk())
+				.andExpect(header().string(TransactionController.NEXT_CURSOR_HEADER, cursor));
+
+		var captor = ArgumentCaptor.forClass(TransactionCursor.class);
+		Mockito.when(transactionRepository.findPage(Mockito.any(), captor.capture(), Mockito.eq(50))).thenReturn(new SliceImpl<Transaction>(new ArrayList<Transaction>()));
+		mvc.perform(createGetTransactionsRequestBuilder(null).queryParam("minAmount", "100").queryParam("cursor", cursor))
+				.andExpect(status().is(HttpStatus.NO_CONTENT.value()));
+		assertEquals(10045, captor.getValue().getAmount());
+		assertEquals(7, captor.getValue().getId());
+
+		// a cursor of the date order can't be used
+		mvc.perform(createGetTransactionsRequestBuilder(null).queryParam("minAmount", "100")
+				.queryParam("cursor", TransactionCursor.of(last).encode()))
+				.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+				.andExpect(content().string("Invalid cursor"));
+	}
+
+	@Test
+	public void getTransactionsInRanges_invalid() throws Exception {
+		var message = "The start of a range can't be after its end, and a date can't be combined with from or to";
+		mvc.perform(createGetTransactionsRequestBuilder(null).queryParam("from", "2023-10-02").queryParam("to", "2023-10-01"))
+				.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+				.andExpect(content().string(message));
+		mvc.perform(createGetTransactionsRequestBuilder(null).queryParam("minAmount", "2").queryParam("maxAmount", "1"))
+				.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+				.andExpect(content().string(message));
+		mvc.perform(createGetTransactionsRequestBuilder(LocalDate.now()).queryParam("from", "2023-10-01"))
+				.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+				.andExpect(content().string(message));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+
 	@Test
 	public void getTransactionsByDate_common() throws Exception {
 		var date = LocalDate.now();
 		var transactions = getSampleTransactions();
-		Mockito.when(transactionRepository.findByDate(date, PageRequest.of(0, 50))).thenReturn(transactions);
+		Mockito.when(transactionRepository.findByDateOrderByIdAsc(date, PageRequest.of(0, 50))).thenReturn(new SliceImpl<Transaction>(transactions));
 		getTransactions_common(date, transactions);
 	}
 	
 	@Test
 	public void getAllTransactions_exception() throws Exception {
-		Mockito.when(transactionRepository.findAll()).thenThrow(new RuntimeException());
+		Mockito.when(transactionRepository.findAllByOrderByDateAscIdAsc(PageRequest.of(0, 50))).thenThrow(new RuntimeException());
 
 		mvc.perform(MockMvcRequestBuilders.get("/api/transactions").accept(MediaType.APPLICATION_JSON))
 				.andExpect(status().is(HttpStatus.INTERNAL_SERVER_ERROR.value()))
@@ -87,15 +331,106 @@ public class TransactionControllerTest {
 				.andExpect(content().string("System error. Contact administrator."));
 	}
 	
+	@BeforeEach
+	public void setUp() {
+		// the mocked transactions have the same Id in every test
+		transactionService.clearResponseCache();
+		Mockito.when(currencyCatalog.isValid(Mockito.anyString())).thenReturn(true);
+	}
+	
+	@Test
+	public void invalidCurrency() throws Exception {
+		var message = "Unknown currency. The valid currencies can be collected from /api/exchange";
+		Mockito.when(currencyCatalog.isValid("Unknown")).thenReturn(false);
+		var failures = meterRegistry.counter(TransactionController.VALIDATION_FAILURES, "reason", "currency").count();
+		performAsync(MockMvcRequestBuilders.get("/api/transactions/123").queryParam("currency", "Unknown"))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+		.andExpect(content().string(message));
+		performAsync(MockMvcRequestBuilders.post("/api/transactions/convert").queryParam("currency", "Unknown")
+				.contentType(MediaType.APPLICATION_JSON).content("[123]"))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+		.andExpect(content().string(message));
+		performAsync(MockMvcRequestBuilders.get("/api/transactions/summary").queryParam("currency", "Unknown"))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+		.andExpect(content().string(message));
+		mvc.perform(MockMvcRequestBuilders.get("/api/transactions/export").queryParam("currency", "Unknown"))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()));
+		// the currency is rejected without any lookup
+		Mockito.verifyNoInteractions(transactionRepository, transactionRollupRepository, exchangeRateService);
+		assertEquals(failures + 4, meterRegistry.counter(TransactionController.VALIDATION_FAILURES, "reason", "currency").count());
+	}
+	
+	@Test
+	public void getTransactionById_cached() throws Exception {
+		var currency = "Canada-Dollar";
+		var date = LocalDate.of(2023, 10, 1);
+		var transaction = new Transaction(date, "description", 12312);
+		transaction.setId((long)123);
+		Mockito.when(transactionRepository.findById((long) 123)).thenReturn(Optional.of(transaction));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date)).thenReturn(Mono.empty());
+
+		// a transaction without exchange rate isn't cached
+		performAsync(createGetTransactionByIdRequest(currency)).andExpect(status().is(HttpStatus.NOT_FOUND.value()));
+		var exchangeRate = new ExchangeRate(currency, LocalDate.of(2023, 6, 30), new BigDecimal("1.3"));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date)).thenReturn(Mono.just(exchangeRate));
+		for (int i = 0; i < 3; i++) {
+			performAsync(createGetTransactionByIdRequest(currency))
+			.andExpect(status().isOk())
+			.andExpect(content().json("{\"currency_amount\":160.06,\"exchange_rate\":1.3}"));
+		}
+		Mockito.verify(transactionRepository, Mockito.times(2)).findById((long) 123);
+		Mockito.verify(exchangeRateService, Mockito.times(2)).getExchangeRate(currency, date);
+
+		// the synced rates replace the cached conversions
+		var newRate = new ExchangeRate(currency, LocalDate.of(2023, 9, 30), new BigDecimal("1.35"));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date)).thenReturn(Mono.just(newRate));
+		eventPublisher.publishEvent(new ExchangeRatesSyncedEvent(1));
+		performAsync(createGetTransactionByIdRequest(currency))
+		.andExpect(status().isOk())
+		.andExpect(content().json("{\"currency_amount\":166.21,\"exchange_rate\":1.35}"));
+		Mockito.verify(transactionRepository, Mockito.times(3)).findById((long) 123);
+	}
+	
+	@Test
+	public void getTransactionById_notModified() throws Exception {
+		var currency = "Canada-Dollar";
+		var date = LocalDate.of(2023, 10, 1);
+		var transaction = new Transaction(date, "description", 12312);
+		transaction.setId((long)124);
+		Mockito.when(transactionRepository.findById((long) 124)).thenReturn(Optional.of(transaction));
+		var exchangeRate = new ExchangeRate(currency, LocalDate.of(2023, 6, 30), new BigDecimal("1.3"));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date)).thenReturn(Mono.just(exchangeRate));
+
+		var eTag = performAsync(MockMvcRequestBuilders.get("/api/transactions/124").queryParam("currency", currency))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertTrue(eTag.startsWith("\""));
+
+		// the cached conversion is answered with a 304 without reading the transaction or the rate
+		performAsync(MockMvcRequestBuilders.get("/api/transactions/124").queryParam("currency", currency).header(HttpHeaders.IF_NONE_MATCH, eTag))
+		.andExpect(status().isNotModified())
+		.andExpect(handler().methodName("getTransactionById"))
+		.andExpect(header().string(HttpHeaders.ETAG, eTag))
+		.andExpect(content().string(""));
+		Mockito.verify(transactionRepository, Mockito.times(1)).findById((long) 124);
+		Mockito.verify(exchangeRateService, Mockito.times(1)).getExchangeRate(currency, date);
+
+		// the tag changes with the rate
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date))
+				.thenReturn(Mono.just(new ExchangeRate(currency, LocalDate.of(2023, 9, 30), new BigDecimal("1.35"))));
+		eventPublisher.publishEvent(new ExchangeRatesSyncedEvent(1));
+		performAsync(MockMvcRequestBuilders.get("/api/transactions/124").queryParam("currency", currency).header(HttpHeaders.IF_NONE_MATCH, eTag))
+		.andExpect(status().isOk())
+		.andExpect(header().exists(HttpHeaders.ETAG))
+		.andExpect(content().json("{\"currency_amount\":166.21,\"exchange_rate\":1.35}"));
+	}
+
 	@Test
 	public void getTransactionById_common() throws Exception {
 		var currency = "Canada-Dollar";
-		var exchangeRateData = new HashMap<String, String>();
-		exchangeRateData.put(CurrencyData.COUNTRY_CURRENCY_DESC, currency);
-		exchangeRateData.put(CurrencyData.EXCHANGE_RATE, "1.3");
-		exchangeRateData.put(CurrencyData.RECORD_DATE, "2023-06-30");
+		var exchangeRate = new ExchangeRate(currency, LocalDate.of(2023, 6, 30), new BigDecimal("1.3"));
 		var expectedResult = "{\"transaction_id\":123,\"description\":\"description\",\"original_amount\":123.12,\"transaction_date\":\"2023-10-01\",\"currency_amount\":160.06,\"curreny\":\"Canada-Dollar\",\"exchange_rate\":1.3,\"rate_date\":\"2023-06-30\"}";
-		Mockito.when(exchangeRateService.getExchangeRate(currency, LocalDate.of(2023, 10, 1))).thenReturn(exchangeRateData);
+		Mockito.when(exchangeRateService.getExchangeRate(currency, LocalDate.of(2023, 10, 1))).thenReturn(Mono.just(exchangeRate));
 		getTransactionById(currency, expectedResult);
 	}
 	
@@ -109,17 +444,69 @@ public class TransactionControllerTest {
 	public void getTransactionById_noExchangeRate() throws Exception {
 		var currency = "Canada-Dollar";
 		var date = LocalDate.of(2023, 10, 1);
-		var transaction = new Transaction(date, "description", (float)123.12);
+		var transaction = new Transaction(date, "description", 12312);
 		transaction.setId((long)123);
 		Mockito.when(transactionRepository.findById((long) 123)).thenReturn(Optional.of(transaction));
-		Mockito.when(exchangeRateService.getExchangeRate(currency, date)).thenReturn(null);
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date)).thenReturn(Mono.empty());
+		var notFound = meterRegistry.counter(TransactionService.RATES_NOT_FOUND).count();
 		
 		var builder = createGetTransactionByIdRequest(currency);
-		mvc.perform(builder)
+		performAsync(builder)
 		.andExpect(status().is(HttpStatus.NOT_FOUND.value()))
 		.andExpect(handler().handlerType(TransactionController.class))
 		.andExpect(handler().methodName("getTransactionById"))
 		.andExpect(content().string("Failed to find the exchange rate"));
+		assertEquals(notFound + 1, meterRegistry.counter(TransactionService.RATES_NOT_FOUND).count());
+	}
+
+	@Test
+	public void getTransactionById_withoutDate() throws Exception {
+		var currency = "Canada-Dollar";
+		var transaction = new Transaction(null, "description", 12312);
+		transaction.setId((long)123);
+		Mockito.when(transactionRepository.findById((long) 123)).thenReturn(Optional.of(transaction));
+
+		// a transaction without a date has no exchange rate and Treasury isn't called
+		performAsync(createGetTransactionByIdRequest(currency))
+		.andExpect(status().is(HttpStatus.NOT_FOUND.value()))
+		.andExpect(handler().methodName("getTransactionById"))
+		.andExpect(content().string("Failed to find the exchange rate"));
+		Mockito.verifyNoInteractions(exchangeRateService);
+	}
+
+	@Test
+	public void getTransactionById_staleRate() throws Exception {
+		var currency = "Canada-Dollar";
+		var date = LocalDate.of(2023, 10, 1);
+		var transaction = new Transaction(date, "description", 12312);
+		transaction.setId((long)123);
+		Mockito.when(transactionRepository.findById((long) 123)).thenReturn(Optional.of(transaction));
+		var exchangeRate = new ExchangeRate(currency, LocalDate.of(2023, 6, 30), new BigDecimal("1.3")).asStale();
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date)).thenReturn(Mono.just(exchangeRate));
+
+		// a conversion with a stale rate is flagged and isn't cached
+		for (int i = 0; i < 2; i++) {
+			performAsync(createGetTransactionByIdRequest(currency))
+			.andExpect(status().isOk())
+			.andExpect(content().json("{\"currency_amount\":160.06,\"exchange_rate\":1.3,\"stale_rate\":true}"));
+		}
+		Mockito.verify(exchangeRateService, Mockito.times(2)).getExchangeRate(currency, date);
+	}
+
+	@Test
+	public void getTransactionById_unavailable() throws Exception {
+		var currency = "Canada-Dollar";
+		var date = LocalDate.of(2023, 10, 1);
+		var transaction = new Transaction(date, "description", 12312);
+		transaction.setId((long)123);
+		Mockito.when(transactionRepository.findById((long) 123)).thenReturn(Optional.of(transaction));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date))
+				.thenReturn(Mono.error(new ExchangeRateUnavailableException("Treasury is down", new RuntimeException())));
+
+		performAsync(createGetTransactionByIdRequest(currency))
+		.andExpect(status().is(HttpStatus.SERVICE_UNAVAILABLE.value()))
+		.andExpect(header().string(HttpHeaders.RETRY_AFTER, "30"))
+		.andExpect(content().string("The exchange rates can't be collected now. Try again later."));
 	}
 
 	@Test
@@ -128,7 +515,7 @@ public class TransactionControllerTest {
 		Mockito.when(transactionRepository.findById((long) 123)).thenReturn(Optional.empty());
 		
 		var builder = createGetTransactionByIdRequest(null);
-		mvc.perform(builder)
+		performAsync(builder)
 		.andExpect(status().is(HttpStatus.NOT_FOUND.value()))
 		.andExpect(handler().handlerType(TransactionController.class))
 		.andExpect(handler().methodName("getTransactionById"))
@@ -141,25 +528,193 @@ public class TransactionControllerTest {
 		Mockito.when(transactionRepository.findById((long) 123)).thenThrow(new RuntimeException());
 		
 		var builder = createGetTransactionByIdRequest(null);
-		mvc.perform(builder)
+		performAsync(builder)
 		.andExpect(status().is(HttpStatus.INTERNAL_SERVER_ERROR.value()))
 		.andExpect(handler().handlerType(TransactionController.class))
 		.andExpect(handler().methodName("getTransactionById"))
 		.andExpect(content().string("System error. Contact administrator."));
 	}
 	
+	@Test
+	public void convertTransactions_common() throws Exception {
+		var currency = "Canada-Dollar";
+		var date = LocalDate.of(2023, 10, 1);
+		var earlierDate = LocalDate.of(2001, 1, 1);
+		var transactions = new ArrayList<Transaction>();
+		for (long id = 1; id <= 3; id++) {
+			var transaction = new Transaction(id < 3 ? date : earlierDate, "description" + id, 12312);
+			transaction.setId(id);
+			transactions.add(transaction);
+		}
+		var ids = List.of(2L, 1L, 3L, 4L);
+		Mockito.when(transactionRepository.findAllById(ids)).thenReturn(transactions);
+		var exchangeRate = new ExchangeRate(currency, LocalDate.of(2023, 6, 30), new BigDecimal("1.3"));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date)).thenReturn(Mono.just(exchangeRate));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, earlierDate)).thenReturn(Mono.empty());
+
+		var expectedResult = "{\"transactions\":["
+				+ "{\"transaction_id\":2,\"description\":\"description2\",\"original_amount\":123.12,\"transaction_date\":\"2023-10-01\",\"currency_amount\":160.06,\"curreny\":\"Canada-Dollar\",\"exchange_rate\":1.3,\"rate_date\":\"2023-06-30\"},"
+				+ "{\"transaction_id\":1,\"description\":\"description1\",\"original_amount\":123.12,\"transaction_date\":\"2023-10-01\",\"currency_amount\":160.06,\"curreny\":\"Canada-Dollar\",\"exchange_rate\":1.3,\"rate_date\":\"2023-06-30\"}],"
+				+ "\"id_not_found\":[4],\"exchange_rate_not_found\":[3]}";
+		var builder = createConvertTransactionsRequest(ids, currency);
+		performAsync(builder)
+		.andExpect(status().isOk())
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("convertTransactions"))
+		.andExpect(content().json(expectedResult, true));
+		// each transaction date collects its exchange rate once
+		Mockito.verify(exchangeRateService, Mockito.times(1)).getExchangeRate(currency, date);
+		Mockito.verify(exchangeRateService, Mockito.times(1)).getExchangeRate(currency, earlierDate);
+	}
+
+	@Test
+	public void convertTransactions_withoutDate() throws Exception {
+		var currency = "Canada-Dollar";
+		var date = LocalDate.of(2023, 10, 1);
+		var transaction = new Transaction(date, "description1", 12312);
+		transaction.setId(1L);
+		var undatedTransaction = new Transaction(null, "description2", 12312);
+		undatedTransaction.setId(2L);
+		var ids = List.of(1L, 2L);
+		Mockito.when(transactionRepository.findAllById(ids)).thenReturn(List.of(transaction, undatedTransaction));
+		var exchangeRate = new ExchangeRate(currency, LocalDate.of(2023, 6, 30), new BigDecimal("1.3"));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date)).thenReturn(Mono.just(exchangeRate));
+
+		var expectedResult = "{\"transactions\":["
+				+ "{\"transaction_id\":1,\"description\":\"description1\",\"original_amount\":123.12,\"transaction_date\":\"2023-10-01\",\"currency_amount\":160.06,\"curreny\":\"Canada-Dollar\",\"exchange_rate\":1.3,\"rate_date\":\"2023-06-30\"}],"
+				+ "\"id_not_found\":[],\"exchange_rate_not_found\":[2]}";
+		var builder = createConvertTransactionsRequest(ids, currency);
+		performAsync(builder)
+		.andExpect(status().isOk())
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("convertTransactions"))
+		.andExpect(content().json(expectedResult, true));
+		// the transaction without a date doesn't look up an exchange rate
+		Mockito.verify(exchangeRateService, Mockito.never()).getExchangeRate(currency, null);
+	}
+
+	@Test
+	public void convertTransactions_tooLarge() throws Exception {
+		var ids = new ArrayList<Long>();
+		for (long id = 0; id <= 1000; id++) {
+			ids.add(id);
+		}
+		performAsync(createConvertTransactionsRequest(ids, null))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("convertTransactions"))
+		.andExpect(content().string("Too many transactions in a request"));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+
+	@Test
+	public void convertTransactions_nullId() throws Exception {
+		var ids = new ArrayList<Long>();
+		ids.add(1L);
+		ids.add(null);
+		performAsync(createConvertTransactionsRequest(ids, null))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+		.andExpect(handler().methodName("convertTransactions"))
+		.andExpect(content().string("The transaction Ids can't be null"));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+
+	@Test
+	public void convertTransactions_exception() throws Exception {
+		var ids = List.of(1L);
+		Mockito.when(transactionRepository.findAllById(ids)).thenThrow(new RuntimeException());
+		performAsync(createConvertTransactionsRequest(ids, null))
+		.andExpect(status().is(HttpStatus.INTERNAL_SERVER_ERROR.value()))
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("convertTransactions"))
+		.andExpect(content().string("System error. Contact administrator."));
+	}
+
+	@Test
+	public void exportTransactions_ndjson() throws Exception {
+		var from = LocalDate.of(2023, 1, 1);
+		var transactions = getExportTransactions();
+		Mockito.when(transactionRepository.streamByDateBetween(from, LocalDate.of(9999, 12, 31))).thenReturn(transactions.stream());
+
+		var builder = MockMvcRequestBuilders.get("/api/transactions/export").queryParam("from", "2023-01-01");
+		performAsync(builder)
+		.andExpect(status().isOk())
+		.andExpect(handler().methodName("exportTransactions"))
+		.andExpect(header().string("Content-Type", "application/x-ndjson"))
+		.andExpect(content().string("{\"id\":1,\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.12}\n"
+				+ "{\"id\":2,\"date\":\"2023-10-02\",\"description\":\"one, \\\"two\\\"\",\"amount\":1.50}\n"));
+	}
+
+	@Test
+	public void exportTransactions_csvConverted() throws Exception {
+		var currency = "Canada-Dollar";
+		var transactions = getExportTransactions();
+		Mockito.when(transactionRepository.streamByDateBetween(LocalDate.of(1, 1, 1), LocalDate.of(2023, 12, 31))).thenReturn(transactions.stream());
+		var exchangeRate = new ExchangeRate(currency, LocalDate.of(2023, 6, 30), new BigDecimal("1.3"));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, LocalDate.of(2023, 10, 1))).thenReturn(Mono.just(exchangeRate));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, LocalDate.of(2023, 10, 2))).thenReturn(Mono.empty());
+
+		var builder = MockMvcRequestBuilders.get("/api/transactions/export")
+				.queryParam("format", "csv").queryParam("to", "2023-12-31").queryParam("currency", currency);
+		performAsync(builder)
+		.andExpect(status().isOk())
+		.andExpect(handler().methodName("exportTransactions"))
+		.andExpect(header().string("Content-Type", "text/csv"))
+		.andExpect(content().string("transaction_id,description,original_amount,transaction_date,currency_amount,curreny,exchange_rate,rate_date\r\n"
+				+ "1,description,123.12,2023-10-01,160.06,Canada-Dollar,1.3,2023-06-30\r\n"
+				+ "2,\"one, \"\"two\"\"\",1.50,2023-10-02,,,,\r\n"));
+	}
+
+	@Test
+	public void exportTransactions_all() throws Exception {
+		var transaction = new Transaction(null, "no date", 100);
+		transaction.setId(3);
+		var transactions = new ArrayList<Transaction>(List.of(transaction));
+		transactions.addAll(getExportTransactions());
+		Mockito.when(transactionRepository.streamAll()).thenReturn(transactions.stream());
+
+		performAsync(MockMvcRequestBuilders.get("/api/transactions/export"))
+		.andExpect(status().isOk())
+		.andExpect(handler().methodName("exportTransactions"))
+		.andExpect(content().string("{\"id\":3,\"date\":null,\"description\":\"no date\",\"amount\":1.00}\n"
+				+ "{\"id\":1,\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.12}\n"
+				+ "{\"id\":2,\"date\":\"2023-10-02\",\"description\":\"one, \\\"two\\\"\",\"amount\":1.50}\n"));
+	}
+
+	@Test
+	public void exportTransactions_allConverted() throws Exception {
+		var currency = "Canada-Dollar";
+		var transaction = new Transaction(null, "no date", 100);
+		transaction.setId(3);
+		Mockito.when(transactionRepository.streamAll()).thenReturn(List.of(transaction).stream());
+
+		var builder = MockMvcRequestBuilders.get("/api/transactions/export")
+				.queryParam("format", "csv").queryParam("currency", currency);
+		performAsync(builder)
+		.andExpect(status().isOk())
+		.andExpect(content().string("transaction_id,description,original_amount,transaction_date,currency_amount,curreny,exchange_rate,rate_date\r\n"
+				+ "3,no date,1.00,,,,,\r\n"));
+		Mockito.verifyNoInteractions(exchangeRateService);
+	}
+
+	@Test
+	public void exportTransactions_invalidFormat() throws Exception {
+		performAsync(MockMvcRequestBuilders.get("/api/transactions/export").queryParam("format", "xml"))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+		.andExpect(content().string("The export format needs to be ndjson or csv"));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+
 	@Test
 	public void createTransaction_common() throws Exception {
 		var date = LocalDate.of(2023, 10, 1);
-		var transaction = new Transaction(date, "description", (float)123.128);
-		var transactionRound = new Transaction(date, "description", (float)123.13);
+		var transactionRound = new Transaction(date, "description", 12313);
 
 		Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenReturn(transactionRound);
 		
 
-		ObjectMapper objectMapper = new ObjectMapper();
-		objectMapper.registerModule(new JavaTimeModule());
-		var builder = createCreateTransactionRequest(objectMapper.writeValueAsString(transaction));
+		// the amount is rounded half up to cents when it is read
+		var builder = createCreateTransactionRequest("{\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.125}");
 		mvc.perform(builder)
 		.andExpect(status().is(HttpStatus.CREATED.value()))
 		.andExpect(handler().handlerType(TransactionController.class))
@@ -173,12 +728,14 @@ public class TransactionControllerTest {
 		assertEquals(transactionRound.getDate(), transactionSaved.getDate());
 		assertEquals(transactionRound.getDescription(), transactionSaved.getDescription());
 		assertEquals(transactionRound.toString(), transactionSaved.toString());
+		//the rollups are updated with the saved transaction
+		Mockito.verify(transactionRollupRepository).add(List.of(transactionRound));
 	}
 
 	@Test
 	public void createTransaction_negativeAmount() throws Exception {
 		var date = LocalDate.of(2023, 10, 1);
-		var transaction = new Transaction(date, "description", (float)-123.128);
+		var transaction = new Transaction(date, "description", -12313);
 
 		ObjectMapper objectMapper = new ObjectMapper();
 		objectMapper.registerModule(new JavaTimeModule());
@@ -198,7 +755,7 @@ public class TransactionControllerTest {
 		description += "12345678901234567890";
 		description += "12345678901234567890";
 		description += "12345678901234567890";
-		var transaction = new Transaction(date, description, (float)123.128);
+		var transaction = new Transaction(date, description, 12313);
 
 		ObjectMapper objectMapper = new ObjectMapper();
 		objectMapper.registerModule(new JavaTimeModule());
@@ -211,6 +768,15 @@ public class TransactionControllerTest {
 
 	}
 
+	@Test
+	public void createTransaction_noDescription() throws Exception {
+		mvc.perform(createCreateTransactionRequest("{\"date\":\"2023-10-01\",\"amount\":1}"))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+		.andExpect(handler().methodName("createTransaction"))
+		.andExpect(content().string("[\"Description is required\"]"));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+
 	@Test
 	public void createTransaction_bothErrors() throws Exception {
 		var date = LocalDate.of(2023, 10, 1);
@@ -218,7 +784,7 @@ public class TransactionControllerTest {
 		description += "12345678901234567890";
 		description += "12345678901234567890";
 		description += "12345678901234567890";
-		var transaction = new Transaction(date, description, (float)-123.128);
+		var transaction = new Transaction(date, description, -12313);
 
 		ObjectMapper objectMapper = new ObjectMapper();
 		objectMapper.registerModule(new JavaTimeModule());
@@ -234,7 +800,7 @@ public class TransactionControllerTest {
 	@Test
 	public void createTransaction_exception() throws Exception {
 		var date = LocalDate.of(2023, 10, 1);
-		var transaction = new Transaction(date, "description", (float)123.128);
+		var transaction = new Transaction(date, "description", 12313);
 
 		Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenThrow(new RuntimeException());
 		
@@ -249,21 +815,336 @@ public class TransactionControllerTest {
 		.andExpect(content().string("System error. Contact administrator."));
 	}
 	
+	@Test
+	public void createTransaction_queued() throws Exception {
+		var date = LocalDate.of(2023, 10, 1);
+		var transactionQueued = new Transaction(date, "description", 12313);
+		transactionQueued.setId(51);
+		Mockito.when(transactionIngestQueue.isEnabled()).thenReturn(true);
+		Mockito.when(transactionIngestQueue.isAckOnEnqueue()).thenReturn(true);
+		Mockito.when(transactionIngestQueue.submit(Mockito.any(Transaction.class))).thenReturn(transactionQueued);
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new JavaTimeModule());
+		var builder = createCreateTransactionRequest("{\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.128}");
+		mvc.perform(builder)
+		.andExpect(status().is(HttpStatus.ACCEPTED.value()))
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("createTransaction"))
+		.andExpect(content().json("{\"id\":51,\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.13}"));
+		//the transaction is rounded before it is queued
+		ArgumentCaptor<Transaction> transactionCaptor = ArgumentCaptor.forClass(Transaction.class);
+		Mockito.verify(transactionIngestQueue).submit(transactionCaptor.capture());
+		assertEquals(12313, transactionCaptor.getValue().getAmount());
+		Mockito.verify(transactionRepository, Mockito.never()).save(Mockito.any(Transaction.class));
+	}
+
+	@Test
+	public void createTransaction_commitTimeout() throws Exception {
+		var transactionQueued = new Transaction(LocalDate.of(2023, 10, 1), "description", 12313);
+		transactionQueued.setId(52);
+		Mockito.when(transactionIngestQueue.isEnabled()).thenReturn(true);
+		Mockito.when(transactionIngestQueue.isAckOnEnqueue()).thenReturn(false);
+		Mockito.when(transactionIngestQueue.submit(Mockito.any(Transaction.class))).thenReturn(transactionQueued);
+		Mockito.when(transactionIngestQueue.isQueued(52)).thenReturn(true);
+
+		//the commit ack timed out, the transaction can still be committed so it isn't a failure
+		var builder = createCreateTransactionRequest("{\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.13}");
+		mvc.perform(builder)
+		.andExpect(status().is(HttpStatus.ACCEPTED.value()))
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("createTransaction"))
+		.andExpect(content().json("{\"id\":52,\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.13}"));
+	}
+
+	@Test
+	public void createTransaction_queueFull() throws Exception {
+		var date = LocalDate.of(2023, 10, 1);
+		Mockito.when(transactionIngestQueue.isEnabled()).thenReturn(true);
+		Mockito.when(transactionIngestQueue.submit(Mockito.any(Transaction.class))).thenReturn(null);
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new JavaTimeModule());
+		var builder = createCreateTransactionRequest(objectMapper.writeValueAsString(new Transaction(date, "description", 100)));
+		mvc.perform(builder)
+		.andExpect(status().is(HttpStatus.SERVICE_UNAVAILABLE.value()))
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("createTransaction"))
+		.andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+		.andExpect(content().string("Too many transactions in progress. Try again later."));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+
+	@Test
+	public void createTransaction_idempotencyKey() throws Exception {
+		var transactionSaved = new Transaction(LocalDate.of(2023, 10, 1), "description", 12313);
+		transactionSaved.setId(61);
+		Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenReturn(transactionSaved);
+
+		var content = "{\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.13}";
+		var expected = "{\"id\":61,\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.13}";
+		mvc.perform(createCreateTransactionRequest(content).header(TransactionController.IDEMPOTENCY_KEY_HEADER, "create-61"))
+		.andExpect(status().is(HttpStatus.CREATED.value()))
+		.andExpect(header().doesNotExist(TransactionController.IDEMPOTENT_REPLAYED_HEADER))
+		.andExpect(content().json(expected));
+		assertEquals(61, idempotencyKeyRepository.findById("create-61").get().getTransactionId());
+
+		//the retry returns the same transaction without saving another one
+		mvc.perform(createCreateTransactionRequest(content).header(TransactionController.IDEMPOTENCY_KEY_HEADER, "create-61"))
+		.andExpect(status().is(HttpStatus.CREATED.value()))
+		.andExpect(handler().methodName("createTransaction"))
+		.andExpect(header().string(TransactionController.IDEMPOTENT_REPLAYED_HEADER, "true"))
+		.andExpect(content().json(expected));
+		Mockito.verify(transactionRepository, Mockito.times(1)).save(Mockito.any(Transaction.class));
+		Mockito.verify(transactionRollupRepository, Mockito.times(1)).add(List.of(transactionSaved));
+
+		//a key used for a different transaction is rejected
+		mvc.perform(createCreateTransactionRequest(content.replace("123.13", "99")).header(TransactionController.IDEMPOTENCY_KEY_HEADER, "create-61"))
+		.andExpect(status().is(HttpStatus.UNPROCESSABLE_ENTITY.value()))
+		.andExpect(content().string("The Idempotency-Key was already used for a different transaction"));
+		Mockito.verify(transactionRepository, Mockito.times(1)).save(Mockito.any(Transaction.class));
+	}
+
+	@Test
+	public void createTransaction_idempotencyKeyInProgress() throws Exception {
+		var transactionSaved = new Transaction(LocalDate.of(2023, 10, 1), "description", 12313);
+		transactionSaved.setId(62);
+		var started = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		Mockito.when(transactionRepository.save(Mockito.any(Transaction.class))).thenAnswer(invocation -> {
+			started.countDown();
+			release.await();
+			return transactionSaved;
+		});
+		var wait = ReflectionTestUtils.getField(idempotencyKeys, "wait");
+		ReflectionTestUtils.setField(idempotencyKeys, "wait", Duration.ofMillis(100));
+		var executor = Executors.newSingleThreadExecutor();
+		try {
+			var content = "{\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.13}";
+			var first = executor.submit(() -> mvc.perform(createCreateTransactionRequest(content).header(TransactionController.IDEMPOTENCY_KEY_HEADER, "create-62"))
+					.andReturn().getResponse().getStatus());
+			started.await();
+
+			//the retry is told to try again while the first request is running
+			mvc.perform(createCreateTransactionRequest(content).header(TransactionController.IDEMPOTENCY_KEY_HEADER, "create-62"))
+			.andExpect(status().is(HttpStatus.CONFLICT.value()))
+			.andExpect(handler().methodName("createTransaction"))
+			.andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+			.andExpect(content().string("A request with the Idempotency-Key is still in progress. Try again later."));
+			release.countDown();
+			assertEquals(HttpStatus.CREATED.value(), first.get());
+			Mockito.verify(transactionRepository, Mockito.times(1)).save(Mockito.any(Transaction.class));
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+			ReflectionTestUtils.setField(idempotencyKeys, "wait", wait);
+		}
+	}
+
+	@Test
+	public void createTransaction_invalidIdempotencyKey() throws Exception {
+		var content = "{\"date\":\"2023-10-01\",\"description\":\"description\",\"amount\":123.13}";
+		for (var key : List.of(" ", "k".repeat(256))) {
+			mvc.perform(createCreateTransactionRequest(content).header(TransactionController.IDEMPOTENCY_KEY_HEADER, key))
+			.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+			.andExpect(handler().methodName("createTransaction"))
+			.andExpect(content().string("The Idempotency-Key header can't be blank or over 255 characters"));
+		}
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+
+	@Test
+	public void getTransactionStatus_common() throws Exception {
+		Mockito.when(transactionIngestQueue.getStatus(51)).thenReturn(TransactionIngestQueue.Status.QUEUED);
+		mvc.perform(MockMvcRequestBuilders.get("/api/transactions/51/status").accept(MediaType.APPLICATION_JSON))
+		.andExpect(status().is(HttpStatus.OK.value()))
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("getTransactionStatus"))
+		.andExpect(content().string("{\"transaction_id\":51,\"status\":\"queued\"}"));
+	}
+
+	@Test
+	public void getTransactionStatus_turkishLocale() throws Exception {
+		//the status is written the same way whatever the default locale, where FAILED isn't lower-cased to failed
+		Mockito.when(transactionIngestQueue.getStatus(53)).thenReturn(TransactionIngestQueue.Status.FAILED);
+		var locale = Locale.getDefault();
+		Locale.setDefault(Locale.of("tr", "TR"));
+		try {
+			mvc.perform(MockMvcRequestBuilders.get("/api/transactions/53/status").accept(MediaType.APPLICATION_JSON))
+			.andExpect(status().is(HttpStatus.OK.value()))
+			.andExpect(content().string("{\"transaction_id\":53,\"status\":\"failed\"}"));
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+
+	@Test
+	public void getTransactionStatus_notFound() throws Exception {
+		Mockito.when(transactionIngestQueue.getStatus(52)).thenReturn(TransactionIngestQueue.Status.NOT_FOUND);
+		mvc.perform(MockMvcRequestBuilders.get("/api/transactions/52/status").accept(MediaType.APPLICATION_JSON))
+		.andExpect(status().is(HttpStatus.NOT_FOUND.value()))
+		.andExpect(handler().methodName("getTransactionStatus"))
+		.andExpect(content().string("{\"transaction_id\":52,\"status\":\"not_found\"}"));
+	}
+
+	@Test
+	public void createTransactions_common() throws Exception {
+		var transactions = "[{\"date\":\"2023-10-01\",\"description\":\"first\",\"amount\":123.128},"
+				+ "{\"date\":\"2023-10-01\",\"description\":\"second\",\"amount\":-1},"
+				+ "{\"date\":\"2023-10-01\",\"description\":\"third\",\"amount\":\"4.5\"}]";
+
+		Mockito.when(transactionRepository.saveAll(Mockito.anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+		mvc.perform(createCreateTransactionsRequest(transactions))
+		.andExpect(status().is(HttpStatus.CREATED.value()))
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("createTransactions"))
+		.andExpect(content().json("{\"created\":[{\"description\":\"first\",\"amount\":123.13},{\"description\":\"third\",\"amount\":4.5}],"
+				+ "\"errors\":[{\"index\":1,\"errors\":[\"Transaction amount needs to be a positive number\"]}]}"));
+		//verify the saved values are rounded and only the valid ones are saved
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<List<Transaction>> transactionsCaptor = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(transactionRepository, Mockito.times(1)).saveAll(transactionsCaptor.capture());
+		Mockito.verify(transactionRepository, Mockito.never()).save(Mockito.any(Transaction.class));
+		var transactionsSaved = transactionsCaptor.getValue();
+		assertEquals(2, transactionsSaved.size());
+		assertEquals(12313, transactionsSaved.get(0).getAmount());
+		assertEquals("third", transactionsSaved.get(1).getDescription());
+		Mockito.verify(transactionRollupRepository).add(transactionsSaved);
+	}
+
+	@Test
+	public void getSummary_common() throws Exception {
+		var currency = "Canada-Dollar";
+		var october = new TransactionRollup(TransactionRollup.Period.MONTH, LocalDate.of(2023, 10, 1), 3, 10001);
+		var november = new TransactionRollup(TransactionRollup.Period.MONTH, LocalDate.of(2023, 11, 1), 1, 500);
+		Mockito.when(transactionRollupRepository.findByPeriodAndStartDateBetweenOrderByStartDateAsc(TransactionRollup.Period.MONTH,
+				LocalDate.of(2023, 10, 1), LocalDate.of(2023, 11, 30))).thenReturn(List.of(october, november));
+		// the exchange rate is collected on the last day of the month
+		var exchangeRate = new ExchangeRate(currency, LocalDate.of(2023, 9, 30), new BigDecimal("1.3"));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, LocalDate.of(2023, 10, 31))).thenReturn(Mono.just(exchangeRate));
+		Mockito.when(exchangeRateService.getExchangeRate(currency, LocalDate.of(2023, 11, 30))).thenReturn(Mono.empty());
+
+		performAsync(MockMvcRequestBuilders.get("/api/transactions/summary").queryParam("from", "2023-10-15")
+				.queryParam("to", "2023-11-30").queryParam("currency", currency))
+		.andExpect(status().isOk())
+		.andExpect(handler().methodName("getSummary"))
+		.andExpect(content().string("[{\"period\":\"month\",\"start_date\":\"2023-10-01\",\"end_date\":\"2023-10-31\",\"count\":3,"
+				+ "\"total_amount\":100.01,\"currency_amount\":130.01,\"currency\":\"Canada-Dollar\",\"exchange_rate\":1.3,\"rate_date\":\"2023-09-30\"},"
+				+ "{\"period\":\"month\",\"start_date\":\"2023-11-01\",\"end_date\":\"2023-11-30\",\"count\":1,\"total_amount\":5.00}]"));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+
+	@Test
+	public void getSummary_days() throws Exception {
+		var day = new TransactionRollup(TransactionRollup.Period.DAY, LocalDate.of(2023, 10, 2), 2, 300);
+		Mockito.when(transactionRollupRepository.findByPeriodAndStartDateBetweenOrderByStartDateAsc(TransactionRollup.Period.DAY,
+				LocalDate.of(1, 1, 1), LocalDate.of(9999, 12, 31))).thenReturn(List.of(day));
+
+		performAsync(MockMvcRequestBuilders.get("/api/transactions/summary").queryParam("period", "day"))
+		.andExpect(status().isOk())
+		.andExpect(content().string("[{\"period\":\"day\",\"start_date\":\"2023-10-02\",\"end_date\":\"2023-10-02\",\"count\":2,\"total_amount\":3.00}]"));
+		Mockito.verifyNoInteractions(exchangeRateService);
+	}
+
+	@Test
+	public void getSummary_invalid() throws Exception {
+		performAsync(MockMvcRequestBuilders.get("/api/transactions/summary").queryParam("period", "week"))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+		.andExpect(content().string("The summary period needs to be day or month"));
+		performAsync(MockMvcRequestBuilders.get("/api/transactions/summary").queryParam("from", "2023-10-02").queryParam("to", "2023-10-01"))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()));
+		Mockito.verifyNoInteractions(transactionRollupRepository);
+	}
+
+	@Test
+	public void createTransactions_allInvalid() throws Exception {
+		var date = LocalDate.of(2023, 10, 1);
+		var transactions = List.of(new Transaction(date, "description", -100));
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new JavaTimeModule());
+		mvc.perform(createCreateTransactionsRequest(objectMapper.writeValueAsString(transactions)))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("createTransactions"))
+		.andExpect(content().string("{\"created\":[],\"errors\":[{\"index\":0,\"errors\":[\"Transaction amount needs to be a positive number\"]}]}"));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+
+	@Test
+	public void createTransactions_noDescription() throws Exception {
+		var transactions = "[{\"date\":\"2023-10-01\",\"description\":\"first\",\"amount\":1.5},"
+				+ "{\"date\":\"2023-10-01\",\"amount\":2}]";
+
+		Mockito.when(transactionRepository.saveAll(Mockito.anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+		var failures = meterRegistry.counter(TransactionController.VALIDATION_FAILURES, "reason", "description").count();
+
+		mvc.perform(createCreateTransactionsRequest(transactions))
+		.andExpect(status().is(HttpStatus.CREATED.value()))
+		.andExpect(handler().methodName("createTransactions"))
+		.andExpect(content().json("{\"created\":[{\"description\":\"first\",\"amount\":1.5}],"
+				+ "\"errors\":[{\"index\":1,\"errors\":[\"Description is required\"]}]}"));
+		assertEquals(failures + 1, meterRegistry.counter(TransactionController.VALIDATION_FAILURES, "reason", "description").count());
+	}
+
+	@Test
+	public void createTransactions_tooLarge() throws Exception {
+		var date = LocalDate.of(2023, 10, 1);
+		var transactions = new ArrayList<Transaction>();
+		for (int i = 0; i <= 1000; i++) {
+			transactions.add(new Transaction(date, "description", 1));
+		}
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new JavaTimeModule());
+		mvc.perform(createCreateTransactionsRequest(objectMapper.writeValueAsString(transactions)))
+		.andExpect(status().is(HttpStatus.BAD_REQUEST.value()))
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("createTransactions"))
+		.andExpect(content().string("Too many transactions in a request"));
+		Mockito.verifyNoInteractions(transactionRepository);
+	}
+
+	@Test
+	public void createTransactions_exception() throws Exception {
+		var date = LocalDate.of(2023, 10, 1);
+		var transactions = List.of(new Transaction(date, "description", 12313));
+
+		Mockito.when(transactionRepository.saveAll(Mockito.anyList())).thenThrow(new RuntimeException());
+
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new JavaTimeModule());
+		mvc.perform(createCreateTransactionsRequest(objectMapper.writeValueAsString(transactions)))
+		.andExpect(status().is(HttpStatus.INTERNAL_SERVER_ERROR.value()))
+		.andExpect(handler().handlerType(TransactionController.class))
+		.andExpect(handler().methodName("createTransactions"))
+		.andExpect(content().string("System error. Contact administrator."));
+	}
+	
 	private void getTransactionById(String currency, String expectedResult) throws Exception {
 		var date = LocalDate.of(2023, 10, 1);
-		var transaction = new Transaction(date, "description", (float)123.12);
+		var transaction = new Transaction(date, "description", 12312);
 		transaction.setId((long)123);
 		
 		Mockito.when(transactionRepository.findById((long) 123)).thenReturn(Optional.of(transaction));
 		
 		var builder = createGetTransactionByIdRequest(currency);
-		mvc.perform(builder)
+		performAsync(builder)
 		.andExpect(status().isOk())
 		.andExpect(handler().handlerType(TransactionController.class))
 		.andExpect(handler().methodName("getTransactionById"))
 		.andExpect(content().json(expectedResult));
 	}
 
+	// the response of a reactive endpoint is written by an async dispatch
+	private ResultActions performAsync(MockHttpServletRequestBuilder builder) throws Exception {
+		var result = mvc.perform(builder)
+		.andExpect(request().asyncStarted())
+		.andReturn();
+		return mvc.perform(asyncDispatch(result));
+	}
+
 	private MockHttpServletRequestBuilder createGetTransactionByIdRequest(String currency) {
 		var builder = MockMvcRequestBuilders.get("/api/transactions/123")
 		.accept(MediaType.APPLICATION_JSON);
@@ -273,6 +1154,17 @@ public class TransactionControllerTest {
 		return builder;
 	}
 
+	private MockHttpServletRequestBuilder createConvertTransactionsRequest(List<Long> ids, String currency) throws Exception {
+		var builder = MockMvcRequestBuilders.post("/api/transactions/convert")
+		.contentType(MediaType.APPLICATION_JSON)
+		.accept(MediaType.APPLICATION_JSON)
+		.content(new ObjectMapper().writeValueAsString(ids));
+		if (currency != null) {
+			builder.queryParam("currency", currency);
+		}
+		return builder;
+	}
+
 	private MockHttpServletRequestBuilder createCreateTransactionRequest(String content) {
 		var builder = MockMvcRequestBuilders.post("/api/transactions")
 		.contentType(MediaType.APPLICATION_JSON)
@@ -281,12 +1173,28 @@ public class TransactionControllerTest {
 		return builder;
 	}
 	
+	private MockHttpServletRequestBuilder createCreateTransactionsRequest(String content) {
+		var builder = MockMvcRequestBuilders.post("/api/transactions/batch")
+		.contentType(MediaType.APPLICATION_JSON)
+		.accept(MediaType.APPLICATION_JSON)
+		.content(content);
+		return builder;
+	}
+	
+	private List<Transaction> getExportTransactions() {
+		var transaction1 = new Transaction(LocalDate.of(2023, 10, 1), "description", 12312);
+		transaction1.setId(1);
+		var transaction2 = new Transaction(LocalDate.of(2023, 10, 2), "one, \"two\"", 150);
+		transaction2.setId(2);
+		return List.of(transaction1, transaction2);
+	}
+
 	private ArrayList<Transaction> getSampleTransactions() {
 		var transactions = new ArrayList<Transaction>();
 		var date = LocalDate.now();
 		var lastMonth = date.minusMonths(1);
-		transactions.add(new Transaction(date, "description", (float)123.12));
-		transactions.add(new Transaction(lastMonth, "description", (float)100.45));
+		transactions.add(new Transaction(date, "description", 12312));
+		transactions.add(new Transaction(lastMonth, "description", 10045));
 		return transactions;
 	}
 
@@ -0,0 +1,230 @@
+package com.samuelwu.wex.tag.transaction.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// drive the REST endpoints at a fixed rate against the Treasury stand-in and report the latency percentiles and the throughput
+// run it with: mvn test -Pload
+// the rate per second, the duration, the stand-in latency in milliseconds and error rate can be changed with
+// -Dload.rate=200 -Dload.duration=PT30S -Dload.treasury.latency=50 -Dload.treasury.errorRate=0
+// the in-flight run holds rising numbers of conversions open at once, the levels and the stand-in latency can be changed with
+// -Dload.inflight.levels=100,200,400,800,1600 -Dload.inflight.latency=2000, compare the modes with -Dspring.threads.virtual.enabled=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+		"spring.jpa.show-sql=false",
+		"spring.h2.console.enabled=false" })
+public class ConversionLoadTest {
+
+	private static final int currencies = 150;
+	private static final int transactions = 5000;
+	private static final int batchSize = 1000;
+	private static final Duration warmUp = Duration.ofSeconds(5);
+
+	private static TreasuryStandIn standIn;
+	// the transactions are created once for both runs
+	private static List<Long> ids;
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	private final int rate = Integer.getInteger("load.rate", 200);
+	private final Duration duration = Duration.parse(System.getProperty("load.duration", "PT30S"));
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private Environment environment;
+
+	@BeforeAll
+	public static void startStandIn() throws Exception {
+		standIn = new TreasuryStandIn(0, currencies, LocalDate.now().minusYears(3));
+		standIn.setLatency(Duration.ofMillis(Long.getLong("load.treasury.latency", 50L)));
+		standIn.setErrorRate(Double.parseDouble(System.getProperty("load.treasury.errorRate", "0")));
+	}
+
+	@AfterAll
+	public static void stopStandIn() {
+		standIn.close();
+	}
+
+	@DynamicPropertySource
+	static void treasuryUrl(DynamicPropertyRegistry registry) {
+		registry.add("exchange.treasury.url", () -> standIn.getUrl());
+	}
+
+	@Test
+	void endpoints() throws Exception {
+		createTransactions();
+		try (var loadGenerator = new LoadGenerator()) {
+			// each request converts a random transaction to a random currency, so both the cached and the Treasury paths are used
+			run(loadGenerator, "get by id", i -> get("/api/transactions/" + randomId() + "?currency=" + randomCurrency()));
+			run(loadGenerator, "convert", i -> {
+				var batch = new StringBuilder("[");
+				for (int j = 0; j < 20; j++) {
+					batch.append(j == 0 ? "" : ",").append(randomId());
+				}
+				return HttpRequest.newBuilder(uri("/api/transactions/convert?currency=" + randomCurrency()))
+						.header("Content-Type", "application/json")
+						.POST(HttpRequest.BodyPublishers.ofString(batch.append("]").toString()))
+						.build();
+			});
+			run(loadGenerator, "summary", i -> get("/api/transactions/summary?currency=" + randomCurrency()));
+			run(loadGenerator, "list", i -> get("/api/transactions?minAmount=" + ThreadLocalRandom.current().nextInt(100) + "&maxAmount=1000"));
+		}
+		logger.info("Treasury stand-in requests: " + standIn.getRequests());
+	}
+
+	// the largest number of conversions in flight at once which all succeed, and the memory each of them holds
+	@Test
+	void inFlight() throws Exception {
+		createTransactions();
+		var latency = Duration.ofMillis(Long.getLong("load.inflight.latency", 2000L));
+		var mode = "Java " + Runtime.version().feature() + ", "
+				+ (environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false) ? "virtual" : "platform") + " threads";
+		var previousLatency = standIn.getLatency();
+		standIn.setLatency(latency);
+		var maxConcurrent = 0;
+		try (var loadGenerator = new LoadGenerator()) {
+			for (var level : System.getProperty("load.inflight.levels", "100,200,400,800,1600").split(",")) {
+				var concurrency = Integer.parseInt(level.trim());
+				var idle = MemorySample.take();
+				var inFlight = new MemorySample[1];
+				// most of the currency and date pairs aren't cached yet, so the conversions wait for the stand-in
+				var report = loadGenerator.burst(concurrency, latency.dividedBy(2), () -> inFlight[0] = MemorySample.take(),
+						i -> get("/api/transactions/" + randomId() + "?currency=" + randomCurrency()));
+				logger.info(String.format("%s: %s, %.1f KB heap and %.1f KB resident memory per request, %d more threads", mode, report,
+						(inFlight[0].heapBytes - idle.heapBytes) / 1024.0 / concurrency,
+						(inFlight[0].residentBytes - idle.residentBytes) / 1024.0 / concurrency,
+						inFlight[0].threads - idle.threads));
+				if (report.getRequests() < concurrency || !report.getStatuses().keySet().equals(Set.of(200))) {
+					break;
+				}
+				maxConcurrent = concurrency;
+			}
+		} finally {
+			standIn.setLatency(previousLatency);
+		}
+		logger.info(mode + ": max concurrent conversions " + maxConcurrent);
+	}
+
+	// a warm up run before the measured run
+	private void run(LoadGenerator loadGenerator, String name, IntFunction<HttpRequest> requests) throws Exception {
+		loadGenerator.run(rate, warmUp, requests);
+		var report = loadGenerator.run(rate, duration, requests);
+		logger.info(name + ": " + report);
+	}
+
+	private synchronized void createTransactions() throws Exception {
+		if (ids != null) {
+			return;
+		}
+		var created = new ArrayList<Long>(transactions);
+		var client = HttpClient.newHttpClient();
+		var today = LocalDate.now();
+		// the dates of the last two years
+		for (int i = 0; i < transactions; i += batchSize) {
+			var batch = new ArrayList<Map<String, Object>>(batchSize);
+			for (int j = 0; j < batchSize; j++) {
+				batch.add(Map.of("date", today.minusDays(ThreadLocalRandom.current().nextInt(720)).toString(),
+						"description", "load " + (i + j),
+						"amount", ThreadLocalRandom.current().nextInt(1, 100000) / 100.0));
+			}
+			var request = HttpRequest.newBuilder(uri("/api/transactions/batch"))
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(batch)))
+					.build();
+			var response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+			assertEquals(201, response.statusCode());
+			Map<String, List<Map<String, Object>>> result = objectMapper.readValue(response.body(), new TypeReference<>() {
+			});
+			for (var transaction : result.get("created")) {
+				created.add(((Number) transaction.get("id")).longValue());
+			}
+		}
+		ids = created;
+	}
+
+	private HttpRequest get(String path) {
+		return HttpRequest.newBuilder(uri(path)).GET().build();
+	}
+
+	private URI uri(String path) {
+		return URI.create("http://localhost:" + port + path);
+	}
+
+	private long randomId() {
+		return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+	}
+
+	private String randomCurrency() {
+		return TreasuryStandIn.currencyName(ThreadLocalRandom.current().nextInt(currencies));
+	}
+
+	// the live heap after a collection, which holds the stacks of the parked virtual threads, the resident memory, which holds
+	// the stacks of the platform threads, and the number of platform threads
+	private static class MemorySample {
+		private final long heapBytes;
+		private final long residentBytes;
+		private final int threads;
+
+		private MemorySample(long heapBytes, long residentBytes, int threads) {
+			this.heapBytes = heapBytes;
+			this.residentBytes = residentBytes;
+			this.threads = threads;
+		}
+
+		static MemorySample take() {
+			System.gc();
+			return new MemorySample(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), residentBytes(),
+					ManagementFactory.getThreadMXBean().getThreadCount());
+		}
+
+		// VmRSS of Linux, 0 elsewhere
+		private static long residentBytes() {
+			try {
+				for (var line : Files.readAllLines(Path.of("/proc/self/status"))) {
+					if (line.startsWith("VmRSS:")) {
+						return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+					}
+				}
+			} catch (Exception e) {
+				// not available
+			}
+			return 0;
+		}
+	}
+}
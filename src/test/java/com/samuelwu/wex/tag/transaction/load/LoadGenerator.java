@@ -0,0 +1,150 @@
+package com.samuelwu.wex.tag.transaction.load;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+// send requests at a fixed rate whatever the response times are, so a slow response doesn't hold back the next requests
+// the latency of a request is measured from the time it was due, not from the time it was sent
+public class LoadGenerator implements AutoCloseable {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(8);
+	private final HttpClient httpClient = HttpClient.newBuilder()
+			.executor(executor)
+			.connectTimeout(Duration.ofSeconds(5))
+			.build();
+
+	// send the requests created for each sequence number at the rate per second for the duration
+	public Report run(int rate, Duration duration, IntFunction<HttpRequest> requests) throws InterruptedException {
+		var count = (int) (rate * duration.toMillis() / 1000);
+		var interval = TimeUnit.SECONDS.toNanos(1) / rate;
+		var run = new Run(count);
+		for (int i = 0; i < count; i++) {
+			var due = run.start + i * interval;
+			var wait = due - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			run.send(i, due, requests);
+		}
+		return run.await("target " + rate + "/s");
+	}
+
+	// send the requests at once and run the sampler after the delay, while they are still in flight
+	public Report burst(int concurrency, Duration delay, Runnable sampler, IntFunction<HttpRequest> requests) throws InterruptedException {
+		var run = new Run(concurrency);
+		for (int i = 0; i < concurrency; i++) {
+			run.send(i, run.start, requests);
+		}
+		var wait = run.start + delay.toNanos() - System.nanoTime();
+		if (wait > 0) {
+			LockSupport.parkNanos(wait);
+		}
+		sampler.run();
+		return run.await(concurrency + " at once");
+	}
+
+	private class Run {
+		private final int count;
+		private final long[] latencies;
+		private final AtomicInteger completed = new AtomicInteger();
+		private final ConcurrentHashMap<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+		private final CompletableFuture<?>[] futures;
+		private final long start = System.nanoTime();
+
+		Run(int count) {
+			this.count = count;
+			latencies = new long[count];
+			futures = new CompletableFuture<?>[count];
+		}
+
+		// the latency is measured from the time the request was due
+		void send(int index, long due, IntFunction<HttpRequest> requests) {
+			futures[index] = httpClient.sendAsync(requests.apply(index), HttpResponse.BodyHandlers.discarding())
+					.handle((response, e) -> {
+						latencies[index] = System.nanoTime() - due;
+						statuses.computeIfAbsent(e == null ? response.statusCode() : -1, status -> new AtomicLong()).incrementAndGet();
+						completed.incrementAndGet();
+						return null;
+					});
+		}
+
+		Report await(String target) {
+			try {
+				CompletableFuture.allOf(futures).get(1, TimeUnit.MINUTES);
+			} catch (Exception e) {
+				// the requests which didn't complete are left out of the report
+			}
+			var elapsed = System.nanoTime() - start;
+			var done = completed.get();
+			var sorted = Arrays.copyOf(latencies, count);
+			Arrays.sort(sorted);
+			var statusCounts = new TreeMap<Integer, Long>();
+			statuses.forEach((status, statusCount) -> statusCounts.put(status, statusCount.get()));
+			return new Report(target, done, elapsed, Arrays.copyOfRange(sorted, count - done, count), statusCounts);
+		}
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	// the latency percentiles and the throughput of a run
+	public static class Report {
+		private final String target;
+		private final int requests;
+		private final long elapsedNanos;
+		private final long[] sortedLatencies;
+		// the number of responses by status, -1 is a request which failed without a response
+		private final Map<Integer, Long> statuses;
+
+		Report(String target, int requests, long elapsedNanos, long[] sortedLatencies, Map<Integer, Long> statuses) {
+			this.target = target;
+			this.requests = requests;
+			this.elapsedNanos = elapsedNanos;
+			this.sortedLatencies = sortedLatencies;
+			this.statuses = statuses;
+		}
+
+		public int getRequests() {
+			return requests;
+		}
+
+		public double getThroughput() {
+			return requests * 1e9 / elapsedNanos;
+		}
+
+		// the latency in milliseconds which the share of the requests didn't exceed
+		public double getPercentile(double share) {
+			if (sortedLatencies.length == 0) {
+				return 0;
+			}
+			var index = (int) Math.ceil(share * sortedLatencies.length) - 1;
+			return sortedLatencies[Math.max(index, 0)] / 1e6;
+		}
+
+		public Map<Integer, Long> getStatuses() {
+			return statuses;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s, throughput %.1f/s, %d requests, p50 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms, statuses %s",
+					target, getThroughput(), requests, getPercentile(0.5), getPercentile(0.99), getPercentile(0.999), getPercentile(1), statuses);
+		}
+	}
+}
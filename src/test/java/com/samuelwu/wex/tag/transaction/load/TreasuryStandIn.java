@@ -0,0 +1,228 @@
+package com.samuelwu.wex.tag.transaction.load;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.samuelwu.wex.tag.transaction.model.CurrencyData;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// a local stand-in of the Treasury rates_of_exchange endpoint with quarterly rates of generated currencies
+// it answers the query shapes of ExchangeRateService, the latency and the share of failed responses can be set
+// run it on its own with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.samuelwu.wex.tag.transaction.load.TreasuryStandIn
+public class TreasuryStandIn implements AutoCloseable {
+
+	public static final String PATH = "/services/api/fiscal_service/v1/accounting/od/rates_of_exchange";
+	private static final int defaultPageSize = 100;
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	// the rows in the order of record date and currency
+	private final List<Map<String, String>> rows = new ArrayList<>();
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	// the delayed responses are sent from a timer, so the requests waiting for the latency don't hold a thread each
+	private final ScheduledExecutorService delayer = Executors.newScheduledThreadPool(2);
+
+	private volatile Duration latency = Duration.ZERO;
+	private volatile double errorRate;
+	private final AtomicLong requests = new AtomicLong();
+
+	// the rates of the currencies on the last day of each quarter since the first date
+	public TreasuryStandIn(int port, int currencies, LocalDate firstDate) throws IOException {
+		for (var date = firstDate.withDayOfMonth(1).plusMonths(2 - (firstDate.getMonthValue() - 1) % 3); !date.isAfter(LocalDate.now()); date = date.plusMonths(3)) {
+			var recordDate = date.withDayOfMonth(date.lengthOfMonth()).toString();
+			for (int i = 0; i < currencies; i++) {
+				var row = new LinkedHashMap<String, String>();
+				row.put(CurrencyData.COUNTRY_CURRENCY_DESC, currencyName(i));
+				row.put(CurrencyData.EXCHANGE_RATE, BigDecimal.valueOf(1000 + (i * 137 + date.getYear() * 7 + date.getMonthValue()) % 9000, 3).toPlainString());
+				row.put(CurrencyData.RECORD_DATE, recordDate);
+				rows.add(row);
+			}
+		}
+		rows.sort(Comparator.comparing((Map<String, String> row) -> row.get(CurrencyData.RECORD_DATE))
+				.thenComparing(row -> row.get(CurrencyData.COUNTRY_CURRENCY_DESC)));
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 200);
+		server.createContext(PATH, this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	public static String currencyName(int index) {
+		return String.format("Country%03d-Currency", index);
+	}
+
+	public String getUrl() {
+		return "http://localhost:" + server.getAddress().getPort() + PATH;
+	}
+
+	public Duration getLatency() {
+		return latency;
+	}
+
+	public void setLatency(Duration latency) {
+		this.latency = latency;
+	}
+
+	// the share of the requests answered with 500
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+		delayer.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) {
+		requests.incrementAndGet();
+		if (latency.isZero()) {
+			respond(exchange);
+		} else {
+			delayer.schedule(() -> respond(exchange), latency.toMillis(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void respond(HttpExchange exchange) {
+		try {
+			if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+				exchange.sendResponseHeaders(500, -1);
+				return;
+			}
+			var body = objectMapper.writeValueAsBytes(query(parseQuery(exchange.getRequestURI().getRawQuery())));
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+		} catch (IOException e) {
+			// the client has gone
+		} catch (RuntimeException e) {
+			try {
+				exchange.sendResponseHeaders(400, -1);
+			} catch (IOException ignored) {
+				// the client has gone
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	// the fields, filter, sort and page parameters of the Treasury API
+	private Map<String, Object> query(Map<String, String> parameters) {
+		Predicate<Map<String, String>> filter = row -> true;
+		var filterParameter = parameters.get("filter");
+		if (filterParameter != null) {
+			for (var condition : filterParameter.split(",")) {
+				filter = filter.and(parseCondition(condition));
+			}
+		}
+		var matched = new ArrayList<Map<String, String>>();
+		for (var row : rows) {
+			if (filter.test(row)) {
+				matched.add(row);
+			}
+		}
+		// the rows are already in the order of record date and currency
+		if ("-record_date".equals(parameters.get("sort"))) {
+			matched.sort(Comparator.comparing((Map<String, String> row) -> row.get(CurrencyData.RECORD_DATE)).reversed());
+		}
+		var pageSize = Integer.parseInt(parameters.getOrDefault("page[size]", String.valueOf(defaultPageSize)));
+		var pageNumber = Integer.parseInt(parameters.getOrDefault("page[number]", "1"));
+		var totalPages = Math.max((matched.size() + pageSize - 1) / pageSize, 1);
+		var page = matched.subList(Math.min((pageNumber - 1) * pageSize, matched.size()), Math.min(pageNumber * pageSize, matched.size()));
+
+		var fields = parameters.containsKey("fields") ? List.of(parameters.get("fields").split(",")) : null;
+		var data = new ArrayList<Map<String, String>>(page.size());
+		for (var row : page) {
+			if (fields == null) {
+				data.add(row);
+				continue;
+			}
+			var selected = new LinkedHashMap<String, String>();
+			for (var field : fields) {
+				selected.put(field, row.get(field));
+			}
+			data.add(selected);
+		}
+		Map<String, Object> meta = new LinkedHashMap<>();
+		meta.put("count", data.size());
+		meta.put("total-count", matched.size());
+		meta.put(CurrencyData.TOTAL_PAGES, totalPages);
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("data", data);
+		response.put("meta", meta);
+		return response;
+	}
+
+	// a condition is field:operator:value, the values are compared as strings like the ISO dates
+	private Predicate<Map<String, String>> parseCondition(String condition) {
+		var parts = condition.split(":", 3);
+		var field = parts[0];
+		var value = parts[2];
+		switch (parts[1]) {
+		case "eq":
+			return row -> value.equals(row.get(field));
+		case "gt":
+			return row -> row.get(field).compareTo(value) > 0;
+		case "gte":
+			return row -> row.get(field).compareTo(value) >= 0;
+		case "lt":
+			return row -> row.get(field).compareTo(value) < 0;
+		case "lte":
+			return row -> row.get(field).compareTo(value) <= 0;
+		default:
+			throw new IllegalArgumentException("Unknown operator " + parts[1]);
+		}
+	}
+
+	private Map<String, String> parseQuery(String query) {
+		var parameters = new HashMap<String, String>();
+		if (query == null) {
+			return parameters;
+		}
+		for (var parameter : query.split("&")) {
+			var separator = parameter.indexOf('=');
+			if (separator > 0) {
+				parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+						URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return parameters;
+	}
+
+	// the port, the number of currencies, the latency in milliseconds and the error rate can be set with system properties
+	public static void main(String[] args) throws Exception {
+		var standIn = new TreasuryStandIn(Integer.getInteger("standin.port", 18090), Integer.getInteger("standin.currencies", 150),
+				LocalDate.now().minusYears(5));
+		standIn.setLatency(Duration.ofMillis(Long.getLong("standin.latency", 0L)));
+		standIn.setErrorRate(Double.parseDouble(System.getProperty("standin.errorRate", "0")));
+		standIn.logger.info("Treasury stand-in listening on " + standIn.getUrl());
+		Thread.currentThread().join();
+	}
+}
@@ -0,0 +1,55 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+
+public class CurrencyDataTest {
+
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	public void decode_rates() throws Exception {
+		var json = "{\"data\":[{\"country_currency_desc\":\"Canada-Dollar\",\"exchange_rate\":\"1.3565\",\"record_date\":\"2023-06-30\",\"src_line_nbr\":\"1\"},"
+				+ "{\"country_currency_desc\":\"Euro Zone-Euro\",\"exchange_rate\":0.9170004,\"record_date\":\"2023-03-31\"}],"
+				+ "\"meta\":{\"count\":2,\"labels\":{\"record_date\":\"Record Date\"},\"total-pages\":4},"
+				+ "\"links\":{\"self\":\"&page%5Bnumber%5D=1\",\"next\":null}}";
+		var currencyData = objectMapper.readValue(json, CurrencyData.class);
+
+		assertEquals(List.of("Canada-Dollar", "Euro Zone-Euro"), currencyData.getCurrencies());
+		assertEquals(4, currencyData.getTotalPages());
+		var rates = currencyData.getRates();
+		assertEquals(2, rates.size());
+		assertEquals("Canada-Dollar", rates.get(0).getCurrency());
+		assertEquals(1_356_500, rates.get(0).getScaledRate());
+		assertEquals(LocalDate.of(2023, 6, 30), rates.get(0).getRecordDate());
+		// rounded half up to six decimals
+		assertEquals(new BigDecimal("0.917"), rates.get(1).getRate());
+	}
+
+	@Test
+	public void decode_currencies() throws Exception {
+		var json = "{\"data\":[{\"country_currency_desc\":\"Canada-Dollar\"},{\"country_currency_desc\":\"Euro Zone-Euro\"}]}";
+		var currencyData = objectMapper.readValue(json, CurrencyData.class);
+
+		assertEquals(List.of("Canada-Dollar", "Euro Zone-Euro"), currencyData.getCurrencies());
+		assertEquals(0, currencyData.getRates().size());
+		assertEquals(1, currencyData.getTotalPages());
+	}
+
+	@Test
+	public void decode_invalid() {
+		assertThrows(InvalidFormatException.class, () -> objectMapper.readValue(
+				"{\"data\":[{\"country_currency_desc\":\"Canada-Dollar\",\"exchange_rate\":\"1.35\",\"record_date\":\"2023-02-30\"}]}", CurrencyData.class));
+		assertThrows(InvalidFormatException.class, () -> objectMapper.readValue(
+				"{\"data\":[{\"country_currency_desc\":\"Canada-Dollar\",\"exchange_rate\":\"n/a\",\"record_date\":\"2023-06-30\"}]}", CurrencyData.class));
+	}
+}
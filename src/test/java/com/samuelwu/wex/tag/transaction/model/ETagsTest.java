@@ -0,0 +1,33 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class ETagsTest {
+
+	@Test
+	public void of() {
+		var eTag = ETags.of("Canada-Dollar");
+		assertEquals(eTag, ETags.of("Canada-Dollar"));
+		assertNotEquals(eTag, ETags.of("Canada-Dollar "));
+		assertTrue(eTag.matches("\"[0-9a-f]{32}\""));
+	}
+
+	@Test
+	public void matches() {
+		var eTag = ETags.of("Canada-Dollar");
+		assertTrue(ETags.matches(eTag, eTag));
+		assertTrue(ETags.matches("\"other\", " + eTag, eTag));
+		assertTrue(ETags.matches("W/" + eTag, eTag));
+		assertTrue(ETags.matches("*", eTag));
+		assertFalse(ETags.matches("\"other\"", eTag));
+		assertFalse(ETags.matches(eTag.replace("\"", ""), eTag));
+		assertFalse(ETags.matches(null, eTag));
+		// nothing matches before there is a tag
+		assertFalse(ETags.matches("*", null));
+	}
+}
@@ -0,0 +1,92 @@
+package com.samuelwu.wex.tag.transaction.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+public class MoneyTest {
+
+	@Test
+	public void parse_halfUp() {
+		assertEquals(12313, Money.parse("123.128"));
+		assertEquals(12313, Money.parse("123.125"));
+		assertEquals(12312, Money.parse("123.1249"));
+		assertEquals(101, Money.parse("1.005"));
+		assertEquals(-101, Money.parse("-1.005"));
+		assertEquals(150, Money.parse("1.5"));
+		assertEquals(100, Money.parse("1"));
+		assertEquals(50, Money.parse(".5"));
+		// the exponent notation falls back to BigDecimal
+		assertEquals(150000, Money.parse("1.5E3"));
+		assertThrows(NumberFormatException.class, () -> Money.parse("-"));
+		assertThrows(NumberFormatException.class, () -> Money.parse("1.2.3"));
+	}
+
+	@Test
+	public void parse_overflow() {
+		assertEquals(9_999_999_999_999_999L, Money.parse("99999999999999.99"));
+		assertEquals(Long.MAX_VALUE, Money.parse("92233720368547758.07"));
+		// the cents don't fit in a long
+		assertThrows(ArithmeticException.class, () -> Money.parse("99999999999999999"));
+		assertThrows(ArithmeticException.class, () -> Money.parse("200000000000000000"));
+		assertThrows(ArithmeticException.class, () -> Money.parse("92233720368547758.075"));
+	}
+
+	@Test
+	public void multiply_halfUp() {
+		var rate = Money.toScaledRate(new BigDecimal("1.3"));
+		assertEquals(16006, Money.multiply(12312, rate));
+		assertEquals(1, Money.multiply(1, Money.toScaledRate(new BigDecimal("0.5"))));
+		assertEquals(0, Money.multiply(1, Money.toScaledRate(new BigDecimal("0.499999"))));
+		assertEquals(-1, Money.multiply(-1, Money.toScaledRate(new BigDecimal("0.5"))));
+		// the product doesn't fit in a long
+		var cents = 1_000_000_000_000L;
+		assertEquals(new BigDecimal("1503.123456").multiply(BigDecimal.valueOf(cents)).setScale(0, java.math.RoundingMode.HALF_UP).longValueExact(),
+				Money.multiply(cents, Money.toScaledRate(new BigDecimal("1503.123456"))));
+	}
+
+	@Test
+	public void toRate_plain() {
+		assertEquals("1.3", Money.toRate(1_300_000).toString());
+		assertEquals("1", Money.toRate(1_000_000).toString());
+		assertEquals("1500", Money.toRate(1_500_000_000).toString());
+	}
+
+	@Test
+	public void json_transactionAmount() throws Exception {
+		var objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new JavaTimeModule());
+		var transaction = objectMapper.readValue("{\"description\":\"d\",\"amount\":100.126}", Transaction.class);
+		assertEquals(10013, transaction.getAmount());
+		transaction = objectMapper.readValue("{\"description\":\"d\",\"amount\":7}", Transaction.class);
+		assertEquals(700, transaction.getAmount());
+		transaction = objectMapper.readValue("{\"description\":\"d\",\"amount\":\"2.5\"}", Transaction.class);
+		assertEquals(250, transaction.getAmount());
+		assertEquals("{\"id\":0,\"date\":null,\"description\":\"d\",\"amount\":2.50}", objectMapper.writeValueAsString(transaction));
+		assertThrows(InvalidFormatException.class,
+				() -> objectMapper.readValue("{\"description\":\"d\",\"amount\":\"ten\"}", Transaction.class));
+		assertThrows(InvalidFormatException.class,
+				() -> objectMapper.readValue("{\"description\":\"d\",\"amount\":\"200000000000000000\"}", Transaction.class));
+	}
+
+	@Test
+	public void json_scaledNumbers() throws Exception {
+		var objectMapper = new ObjectMapper();
+		var transaction = new Transaction(null, "d", -5);
+		assertEquals("{\"id\":0,\"date\":null,\"description\":\"d\",\"amount\":-0.05}", objectMapper.writeValueAsString(transaction));
+		var converted = new ConvertedTransaction(transaction, new ExchangeRate("Canada-Dollar", null, 2_000_000L));
+		var json = objectMapper.writeValueAsString(converted);
+		assertTrue(json.contains("\"currency_amount\":-0.10,"), json);
+		assertTrue(json.contains("\"exchange_rate\":2}"), json);
+		converted = new ConvertedTransaction(transaction, new ExchangeRate("Canada-Dollar", null, 1_305_000L));
+		assertTrue(objectMapper.writeValueAsString(converted).contains("\"exchange_rate\":1.305}"));
+	}
+}
@@ -0,0 +1,287 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+
+public class MappedTransactionStoreTest {
+
+	@TempDir
+	private Path directory;
+
+	private MappedTransactionStore store;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		store = open();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		store.close();
+	}
+
+	@Test
+	void saveAndFindById() {
+		var date = LocalDate.of(2023, 10, 1);
+		var first = store.save(new Transaction(date, "first", 111));
+		var second = store.save(new Transaction(date.minusDays(1), "ça coûte 2€", 222));
+		var third = store.save(new Transaction(null, null, 333));
+		assertEquals(1, first.getId());
+		assertEquals(2, second.getId());
+
+		var found = store.findById(second.getId()).get();
+		assertEquals(date.minusDays(1), found.getDate());
+		assertEquals("ça coûte 2€", found.getDescription());
+		assertEquals(222, found.getAmount());
+		found = store.findById(third.getId()).get();
+		assertNull(found.getDate());
+		assertNull(found.getDescription());
+		assertTrue(store.findById(4).isEmpty());
+		assertTrue(store.findById(0).isEmpty());
+		assertTrue(store.existsById(3));
+		assertFalse(store.existsById(4));
+		assertEquals(List.of(1L, 3L), ids(store.findAllById(List.of(1L, 3L, 9L))));
+		// the transaction without a date is first
+		try (var transactions = store.streamAll()) {
+			assertEquals(3L, transactions.findFirst().get().getId());
+		}
+	}
+
+	@Test
+	void descriptionTooLong() {
+		var transaction = new Transaction(LocalDate.now(), "€".repeat(MappedTransactionStore.MAX_DESCRIPTION_BYTES), 1);
+		assertThrows(IllegalArgumentException.class, () -> store.save(transaction));
+		assertEquals(0, store.count());
+	}
+
+	@Test
+	void pages() {
+		var date = LocalDate.of(2023, 10, 1);
+		store.saveAll(List.of(new Transaction(date, "first", 300), new Transaction(date.minusDays(1), "second", 100),
+				new Transaction(date, "third", 200), new Transaction(date.plusDays(1), "fourth", 100)));
+
+		// ordered by date and Id
+		var page = store.findPage((LocalDate) null, null, 2);
+		assertTrue(page.hasNext());
+		assertEquals(List.of(2L, 1L), ids(page.getContent()));
+		page = store.findPage((LocalDate) null, TransactionCursor.of(page.getContent().get(1)), 2);
+		assertFalse(page.hasNext());
+		assertEquals(List.of(3L, 4L), ids(page.getContent()));
+		page = store.findPage((LocalDate) null, TransactionCursor.of(page.getContent().get(1)), 2);
+		assertTrue(page.getContent().isEmpty());
+
+		// a day
+		page = store.findPage(date, new TransactionCursor(date, 1), 2);
+		assertFalse(page.hasNext());
+		assertEquals(List.of(3L), ids(page.getContent()));
+
+		// an amount range in the order of amount and Id
+		var filter = new TransactionFilter(null, null, 100L, 200L);
+		page = store.findPage(filter, null, 2);
+		assertTrue(page.hasNext());
+		assertEquals(List.of(2L, 4L), ids(page.getContent()));
+		page = store.findPage(filter, TransactionCursor.ofAmount(page.getContent().get(1)), 2);
+		assertFalse(page.hasNext());
+		assertEquals(List.of(3L), ids(page.getContent()));
+
+		// a date range with an amount range is in the order of date
+		page = store.findPage(new TransactionFilter(date, null, 150L, null), null, 10);
+		assertEquals(List.of(1L, 3L), ids(page.getContent()));
+
+		// a cursor after the range
+		page = store.findPage(new TransactionFilter(date.minusDays(1), date.minusDays(1), null, null), new TransactionCursor(date, 3), 10);
+		assertTrue(page.getContent().isEmpty());
+
+		try (var transactions = store.streamByDateBetween(date, date.plusDays(1))) {
+			assertEquals(List.of(1L, 3L, 4L), ids(transactions.collect(Collectors.toList())));
+		}
+	}
+
+	@Test
+	void dateRangeWithoutDate() {
+		var date = LocalDate.of(2023, 10, 1);
+		store.saveAll(List.of(new Transaction(null, "no date", 100), new Transaction(date, "first", 200)));
+
+		// a date range leaves out the transaction without a date, like the database
+		var page = store.findPage(new TransactionFilter(null, date, null, null), null, 10);
+		assertEquals(List.of(2L), ids(page.getContent()));
+		page = store.findPage(new TransactionFilter(null, date, null, null), new TransactionCursor(null, 1), 10);
+		assertEquals(List.of(2L), ids(page.getContent()));
+		try (var transactions = store.streamByDateBetween(null, date)) {
+			assertEquals(List.of(2L), ids(transactions.collect(Collectors.toList())));
+		}
+		// without a date range it is listed first
+		page = store.findPage(new TransactionFilter(null, null, 50L, null), null, 10);
+		assertEquals(List.of(1L, 2L), ids(page.getContent()));
+		page = store.findPage((LocalDate) null, null, 10);
+		assertEquals(List.of(1L, 2L), ids(page.getContent()));
+	}
+
+	@Test
+	void databaseTransaction() throws IOException {
+		var date = LocalDate.of(2023, 10, 1);
+		// committed
+		var committed = saveInTransaction(new Transaction(date, "committed", 100), TransactionSynchronization.STATUS_COMMITTED);
+		assertEquals(1, committed.getId());
+		assertEquals("committed", store.findById(1).get().getDescription());
+		// rolled back, it isn't found and its Id isn't reused
+		var rolledBack = saveInTransaction(new Transaction(date, "rolled back", 200), TransactionSynchronization.STATUS_ROLLED_BACK);
+		assertEquals(2, rolledBack.getId());
+		assertTrue(store.findById(2).isEmpty());
+		assertFalse(store.existsById(2));
+		assertEquals(List.of(1L), ids(store.findPage(date, null, 10).getContent()));
+		assertEquals(3, store.save(new Transaction(date, "after", 300)).getId());
+
+		// a pending record isn't found until its transaction completes, and it is voided at startup
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			store.save(new Transaction(date, "pending", 400));
+			assertTrue(store.findById(4).isEmpty());
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		store.close();
+		store = open();
+		assertEquals(4, store.count());
+		assertEquals(List.of(1L, 3L), ids(store.findPage(date, null, 10).getContent()));
+		assertTrue(store.findById(4).isEmpty());
+	}
+
+	@Test
+	void crashAfterDatabaseCommit() throws IOException {
+		var date = LocalDate.of(2023, 10, 1);
+		// the segments are committed before the database, the application stops before the transaction completes
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			store.save(new Transaction(date, "committed", 100));
+			TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.beforeCommit(false));
+			// it isn't found until the database has committed
+			assertTrue(store.findById(1).isEmpty());
+			assertFalse(store.existsById(1));
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+
+		// the transaction the client was answered for is found after a restart, without closing the crashed store
+		store = open();
+		assertEquals(1, store.count());
+		assertEquals("committed", store.findById(1).get().getDescription());
+		assertEquals(List.of(1L), ids(store.findPage(date, null, 10).getContent()));
+	}
+
+	@Test
+	void databaseCommitFailure() throws IOException {
+		var date = LocalDate.of(2023, 10, 1);
+		// the segments are committed, then the database commit fails and the transaction is rolled back
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			store.save(new Transaction(date, "rolled back", 100));
+			var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+			synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+			synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertTrue(store.findById(1).isEmpty());
+		store.close();
+		store = open();
+		assertTrue(store.findById(1).isEmpty());
+		assertTrue(store.findPage(date, null, 10).getContent().isEmpty());
+	}
+
+	@Test
+	void reopen() throws IOException {
+		// the segments have 4 records, so the transactions are in 3 segments
+		var date = LocalDate.of(2023, 10, 1);
+		for (int i = 0; i < 10; i++) {
+			store.save(new Transaction(date.plusDays(i % 3), "transaction " + i, 100 * i));
+		}
+		store.close();
+
+		store = open();
+		assertEquals(10, store.count());
+		assertEquals("transaction 6", store.findById(7).get().getDescription());
+		assertEquals(List.of(1L, 4L, 7L, 10L), ids(store.findPage(date, null, 10).getContent()));
+		// the next Id follows the last record
+		assertEquals(11, store.save(new Transaction(date, "after", 1)).getId());
+	}
+
+	@Test
+	void incompleteRecord() throws IOException {
+		var date = LocalDate.of(2023, 10, 1);
+		for (int i = 0; i < 7; i++) {
+			store.save(new Transaction(date, "transaction " + i, i));
+		}
+		store.close();
+
+		// a torn write of the sixth record, the second segment has the fifth to the seventh
+		try (var channel = FileChannel.open(directory.resolve("transactions-000001.seg"), StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), MappedTransactionStore.RECORD_SIZE + 30);
+		}
+		store = open();
+		assertEquals(5, store.count());
+		assertTrue(store.findById(6).isEmpty());
+		assertEquals(6, store.save(new Transaction(date, "after", 1)).getId());
+		store.close();
+
+		// the dropped records don't come back
+		store = open();
+		assertEquals(6, store.count());
+		assertEquals("after", store.findById(6).get().getDescription());
+		assertTrue(Files.exists(directory.resolve("transactions-000001.seg")));
+	}
+
+	// save in a database transaction which completes with the status, the commit is announced before it completes like in Spring
+	private Transaction saveInTransaction(Transaction transaction, int status) {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			store.save(transaction);
+			assertTrue(store.findById(transaction.getId()).isEmpty());
+			var synchronizations = TransactionSynchronizationManager.getSynchronizations();
+			if (status == TransactionSynchronization.STATUS_COMMITTED) {
+				synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+			}
+			synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		return transaction;
+	}
+
+	private MappedTransactionStore open() throws IOException {
+		var mappedStore = new MappedTransactionStore();
+		ReflectionTestUtils.setField(mappedStore, "path", directory.toString());
+		ReflectionTestUtils.setField(mappedStore, "segmentRecords", 4);
+		mappedStore.open();
+		return mappedStore;
+	}
+
+	private List<Long> ids(List<Transaction> transactions) {
+		return transactions.stream().map(Transaction::getId).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,113 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+
+// the query plans of the pages generated by the repository, the indexes are created by the migrations
+// H2 picks the index from the shape of the predicates, so the plans are checked on a few hundred transactions in every build,
+// run it on a million with: mvn test -Dtest=TransactionIndexTest -Dbenchmark=true
+@DataJpaTest(showSql = false, properties = {
+		"spring.jpa.properties.hibernate.session_factory.statement_inspector=com.samuelwu.wex.tag.transaction.repository.TransactionIndexTest$StatementCapture" })
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TransactionIndexTest {
+	private static final int rows = Boolean.getBoolean("benchmark") ? 1_000_000 : 500;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeAll
+	public void setUp() {
+		// ten years of dates and amounts up to 10000.00
+		jdbcTemplate.update("insert into transactions (id, date, description, amount_cents) "
+				+ "select x, dateadd(day, mod(x, 3650), date '2015-01-01'), 'description', mod(x * 7919, 1000000) from system_range(1, " + rows + ")");
+		jdbcTemplate.execute("analyze");
+	}
+
+	@AfterAll
+	public void tearDown() {
+		jdbcTemplate.execute("truncate table transactions");
+	}
+
+	@BeforeEach
+	public void clearStatements() {
+		StatementCapture.statements.clear();
+	}
+
+	@Test
+	void dateRangeTest() {
+		var from = LocalDate.of(2023, 10, 1);
+		var to = LocalDate.of(2023, 10, 31);
+		transactionRepository.findPage(new TransactionFilter(from, to, null, null), null, 50);
+		var plan = explain(from, to, 51);
+		assertTrue(plan.contains("PUBLIC.TRANSACTIONS_DATE_ID: DATE >= "), plan);
+		assertTrue(plan.contains("/* index sorted */"), plan);
+	}
+
+	@Test
+	void dateRangeAfterCursorTest() {
+		var from = LocalDate.of(2023, 10, 1);
+		var to = LocalDate.of(2023, 10, 31);
+		var cursorDate = LocalDate.of(2023, 10, 15);
+		transactionRepository.findPage(new TransactionFilter(from, to, null, null), new TransactionCursor(cursorDate, 1000), 50);
+		var plan = explain(from, to, cursorDate, cursorDate, 1000L, 51);
+		assertTrue(plan.contains("PUBLIC.TRANSACTIONS_DATE_ID"), plan);
+		assertTrue(plan.contains("/* index sorted */"), plan);
+	}
+
+	@Test
+	void amountRangeTest() {
+		transactionRepository.findPage(new TransactionFilter(null, null, 10000L, 10500L), null, 50);
+		var plan = explain(10000L, 10500L, 51);
+		assertTrue(plan.contains("PUBLIC.TRANSACTIONS_AMOUNT_ID: AMOUNT_CENTS >= "), plan);
+		assertTrue(plan.contains("/* index sorted */"), plan);
+	}
+
+	@Test
+	void dateTest() {
+		var date = LocalDate.of(2023, 10, 1);
+		transactionRepository.findByDateOrderByIdAsc(date, PageRequest.of(0, 50));
+		var plan = explain(date, 0, 51);
+		assertTrue(plan.contains("PUBLIC.TRANSACTIONS_DATE_ID: DATE = "), plan);
+	}
+
+	// the plan of the last query sent by Hibernate, with the values it bound to the parameters
+	private String explain(Object... parameters) {
+		var sql = StatementCapture.statements.get(StatementCapture.statements.size() - 1);
+		assertEquals(parameters.length, sql.chars().filter(c -> c == '?').count(), sql);
+		return jdbcTemplate.queryForObject("explain " + sql, String.class, parameters);
+	}
+
+	// collects the SQL of the repository queries
+	public static class StatementCapture implements StatementInspector {
+		private static final long serialVersionUID = 1L;
+
+		static final List<String> statements = new CopyOnWriteArrayList<>();
+
+		@Override
+		public String inspect(String sql) {
+			statements.add(sql);
+			return sql;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.FlywayException;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+public class TransactionMigrationTest {
+
+	@Test
+	void amountCentsMigrationTest() {
+		var dataSource = new DriverManagerDataSource("jdbc:h2:mem:migration;DB_CLOSE_DELAY=-1", "sa", "");
+		var jdbcTemplate = new JdbcTemplate(dataSource);
+
+		// the float amounts created before the migration
+		Flyway.configure().dataSource(dataSource).target("1").load().migrate();
+		jdbcTemplate.update("insert into transactions (id, amount, date, description) values (1, 123.13, date '2023-10-01', 'first')");
+		jdbcTemplate.update("insert into transactions (id, amount, date, description) values (2, 0.29, date '2023-10-01', 'second')");
+		jdbcTemplate.update("insert into transactions (id, amount, date, description) values (3, 100000.01, date '2023-10-01', 'third')");
+
+		Flyway.configure().dataSource(dataSource).load().migrate();
+		var amounts = jdbcTemplate.queryForList("select amount_cents from transactions order by id", Long.class);
+		assertEquals(List.of(12313L, 29L, 10000001L), amounts);
+	}
+
+	@Test
+	void amountCentsMigrationWithoutAmountTest() {
+		var dataSource = new DriverManagerDataSource("jdbc:h2:mem:noamount;DB_CLOSE_DELAY=-1", "sa", "");
+		var jdbcTemplate = new JdbcTemplate(dataSource);
+
+		// a transaction without an amount isn't migrated as 0
+		Flyway.configure().dataSource(dataSource).target("1").load().migrate();
+		jdbcTemplate.update("insert into transactions (id, amount, date, description) values (1, null, date '2023-10-01', 'first')");
+
+		assertThrows(FlywayException.class, () -> Flyway.configure().dataSource(dataSource).load().migrate());
+	}
+
+	@Test
+	void rollupsMigrationTest() {
+		var dataSource = new DriverManagerDataSource("jdbc:h2:mem:rollups;DB_CLOSE_DELAY=-1", "sa", "");
+		var jdbcTemplate = new JdbcTemplate(dataSource);
+
+		// the transactions created before the rollups
+		Flyway.configure().dataSource(dataSource).target("3").load().migrate();
+		jdbcTemplate.update("insert into transactions (id, amount_cents, date, description) values (1, 100, date '2023-09-30', 'first')");
+		jdbcTemplate.update("insert into transactions (id, amount_cents, date, description) values (2, 200, date '2023-10-01', 'second')");
+		jdbcTemplate.update("insert into transactions (id, amount_cents, date, description) values (3, 300, date '2023-10-31', 'third')");
+		jdbcTemplate.update("insert into transactions (id, amount_cents, date, description) values (4, 400, null, 'no date')");
+
+		Flyway.configure().dataSource(dataSource).load().migrate();
+		var rollups = jdbcTemplate.queryForList("select concat(period, ':', start_date, ':', transaction_count, ':', amount_cents) "
+				+ "from transaction_rollups order by period, start_date", String.class);
+		assertEquals(List.of("DAY:2023-09-30:1:100", "DAY:2023-10-01:1:200", "DAY:2023-10-31:1:300",
+				"MONTH:2023-09-01:1:100", "MONTH:2023-10-01:2:500"), rollups);
+	}
+}
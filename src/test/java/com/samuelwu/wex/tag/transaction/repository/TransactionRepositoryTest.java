@@ -2,8 +2,12 @@ package com.samuelwu.wex.tag.transaction.repository;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,6 +15,8 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.data.domain.PageRequest;
 
 import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
 
 @DataJpaTest
 public class TransactionRepositoryTest {
@@ -20,9 +26,9 @@ public class TransactionRepositoryTest {
 	@Test
 	void getTransactionByTest() {
 		var date = LocalDate.now();
-		var transactionsRetrieved = transactionRepository.findByDate(date, PageRequest.of(0, 50));
+		var transactionsRetrieved = transactionRepository.findByDateOrderByIdAsc(date, PageRequest.of(0, 50)).getContent();
 		assertEquals (0, transactionsRetrieved.size());
-		var transaction = new Transaction(date, "Remarks", (float)3.33);
+		var transaction = new Transaction(date, "Remarks", 333);
 		
 		// create new records
 		transactionRepository.save(transaction);
@@ -34,7 +40,7 @@ public class TransactionRepositoryTest {
 		assertEquals (2, transactionsRetrieved.size());
 		
 		// get by date
-		transactionsRetrieved = transactionRepository.findByDate(date, PageRequest.of(0, 50));
+		transactionsRetrieved = transactionRepository.findByDateOrderByIdAsc(date, PageRequest.of(0, 50)).getContent();
 		assertEquals (1, transactionsRetrieved.size());
 		var transactionRetrieved = transactionsRetrieved.get(0);
 		assertEquals (transaction.getDate().minusDays(-3), transactionRetrieved.getDate());
@@ -50,4 +56,111 @@ public class TransactionRepositoryTest {
 		assertEquals (transaction.getAmount(), transactionRetrieved.getAmount());
 
 	}
+
+	@Test
+	void getTransactionsAfterTest() {
+		var date = LocalDate.of(2023, 10, 1);
+		var first = transactionRepository.save(new Transaction(date, "first", 111));
+		var second = transactionRepository.save(new Transaction(date.minusDays(1), "second", 222));
+		var third = transactionRepository.save(new Transaction(date, "third", 333));
+		var pageSize = PageRequest.of(0, 2);
+
+		// ordered by date and Id
+		var page = transactionRepository.findAllByOrderByDateAscIdAsc(pageSize);
+		assertTrue(page.hasNext());
+		assertEquals(List.of(second.getId(), first.getId()), getIds(page.getContent()));
+
+		page = transactionRepository.findAfter(first.getDate(), first.getId(), pageSize);
+		assertFalse(page.hasNext());
+		assertEquals(List.of(third.getId()), getIds(page.getContent()));
+
+		// filtered by date
+		page = transactionRepository.findByDateOrderByIdAsc(date, PageRequest.of(0, 1));
+		assertTrue(page.hasNext());
+		assertEquals(List.of(first.getId()), getIds(page.getContent()));
+
+		page = transactionRepository.findByDateAndIdGreaterThanOrderByIdAsc(date, first.getId(), PageRequest.of(0, 1));
+		assertFalse(page.hasNext());
+		assertEquals(List.of(third.getId()), getIds(page.getContent()));
+	}
+
+	@Test
+	void getTransactionsWithoutDateTest() {
+		var date = LocalDate.of(2023, 10, 1);
+		var first = transactionRepository.save(new Transaction(date, "first", 111));
+		var second = transactionRepository.save(new Transaction(null, "second", 222));
+		var third = transactionRepository.save(new Transaction(date.minusDays(1), "third", 333));
+		var fourth = transactionRepository.save(new Transaction(null, "fourth", 444));
+		var pageSize = PageRequest.of(0, 1);
+
+		// the transactions without a date are first
+		var page = transactionRepository.findAllByOrderByDateAscIdAsc(pageSize);
+		assertEquals(List.of(second.getId()), getIds(page.getContent()));
+		page = transactionRepository.findAfterNoDate(second.getId(), pageSize);
+		assertEquals(List.of(fourth.getId()), getIds(page.getContent()));
+		page = transactionRepository.findAfterNoDate(fourth.getId(), pageSize);
+		assertTrue(page.hasNext());
+		assertEquals(List.of(third.getId()), getIds(page.getContent()));
+		page = transactionRepository.findAfter(third.getDate(), third.getId(), pageSize);
+		assertFalse(page.hasNext());
+		assertEquals(List.of(first.getId()), getIds(page.getContent()));
+
+		// a cursor without a date in a range of amounts ordered by date
+		var filter = new TransactionFilter(null, date, 200L, null);
+		var ranged = transactionRepository.findPage(filter, new TransactionCursor(null, second.getId()), 50);
+		assertEquals(List.of(third.getId()), getIds(ranged.getContent()));
+		filter = new TransactionFilter(null, null, 300L, null);
+		ranged = transactionRepository.findPage(filter, null, 50);
+		assertEquals(List.of(third.getId(), fourth.getId()), getIds(ranged.getContent()));
+	}
+
+	@Test
+	void getTransactionsInRangesTest() {
+		var date = LocalDate.of(2023, 10, 1);
+		var first = transactionRepository.save(new Transaction(date, "first", 300));
+		var second = transactionRepository.save(new Transaction(date.minusDays(1), "second", 200));
+		var third = transactionRepository.save(new Transaction(date.plusDays(1), "third", 100));
+		var fourth = transactionRepository.save(new Transaction(date, "fourth", 200));
+
+		// a date range is ordered by date and Id
+		var filter = new TransactionFilter(date.minusDays(1), date, null, null);
+		var page = transactionRepository.findPage(filter, null, 2);
+		assertTrue(page.hasNext());
+		assertEquals(List.of(second.getId(), first.getId()), getIds(page.getContent()));
+		page = transactionRepository.findPage(filter, TransactionCursor.of(first), 2);
+		assertFalse(page.hasNext());
+		assertEquals(List.of(fourth.getId()), getIds(page.getContent()));
+
+		// an amount range is ordered by amount and Id
+		filter = new TransactionFilter(null, null, 150L, 300L);
+		page = transactionRepository.findPage(filter, null, 2);
+		assertTrue(page.hasNext());
+		assertEquals(List.of(second.getId(), fourth.getId()), getIds(page.getContent()));
+		page = transactionRepository.findPage(filter, TransactionCursor.ofAmount(fourth), 2);
+		assertFalse(page.hasNext());
+		assertEquals(List.of(first.getId()), getIds(page.getContent()));
+
+		// both ranges
+		filter = new TransactionFilter(date, null, null, 250L);
+		page = transactionRepository.findPage(filter, null, 50);
+		assertEquals(List.of(fourth.getId(), third.getId()), getIds(page.getContent()));
+	}
+
+	@Test
+	void streamTransactionsTest() {
+		var date = LocalDate.of(2023, 10, 1);
+		var first = transactionRepository.save(new Transaction(date, "first", 111));
+		var second = transactionRepository.save(new Transaction(date.minusDays(1), "second", 222));
+		transactionRepository.save(new Transaction(date.plusDays(1), "third", 333));
+
+		try (var transactions = transactionRepository.streamByDateBetween(date.minusDays(1), date)) {
+			assertEquals(List.of(second.getId(), first.getId()), getIds(transactions.collect(Collectors.toList())));
+		}
+	}
+
+	private List<Long> getIds(List<Transaction> transactions) {
+		var ids = new ArrayList<Long>();
+		transactions.forEach(transaction -> ids.add(transaction.getId()));
+		return ids;
+	}
 }
@@ -0,0 +1,44 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionRollup;
+
+@DataJpaTest
+public class TransactionRollupRepositoryTest {
+	@Autowired
+	private TransactionRollupRepository transactionRollupRepository;
+
+	@Test
+	void addTransactionsTest() {
+		var date = LocalDate.of(2023, 10, 1);
+		transactionRollupRepository.add(List.of(new Transaction(date, "first", 100), new Transaction(date, "second", 250),
+				new Transaction(date.plusDays(30), "third", 1000), new Transaction(null, "no date", 7)));
+		// the rollups which exist are updated
+		transactionRollupRepository.add(List.of(new Transaction(date.minusDays(1), "fourth", 5), new Transaction(date, "fifth", 1)));
+
+		var days = transactionRollupRepository.findByPeriodAndStartDateBetweenOrderByStartDateAsc(TransactionRollup.Period.DAY,
+				LocalDate.of(2023, 1, 1), LocalDate.of(2023, 12, 31));
+		assertEquals(List.of("2023-09-30:1:5", "2023-10-01:3:351", "2023-10-31:1:1000"), describe(days));
+
+		var months = transactionRollupRepository.findByPeriodAndStartDateBetweenOrderByStartDateAsc(TransactionRollup.Period.MONTH,
+				LocalDate.of(2023, 10, 1), LocalDate.of(2023, 12, 31));
+		assertEquals(List.of("2023-10-01:4:1351"), describe(months));
+		assertEquals(LocalDate.of(2023, 10, 31), months.get(0).getEndDate());
+	}
+
+	private List<String> describe(List<TransactionRollup> rollups) {
+		var descriptions = new ArrayList<String>();
+		rollups.forEach(rollup -> descriptions.add(rollup.getStartDate() + ":" + rollup.getCount() + ":" + rollup.getAmount()));
+		return descriptions;
+	}
+}
@@ -0,0 +1,122 @@
+package com.samuelwu.wex.tag.transaction.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+
+// compare the database with the memory-mapped store for the ingest rate and the latency of a lookup by Id
+// the database is a file database, so every commit is written to disk
+// run it with: mvn test -Dtest=TransactionStoreBenchmarkTest -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:file:./target/benchmark/storedb",
+		"spring.jpa.show-sql=false" })
+public class TransactionStoreBenchmarkTest {
+
+	private static final int rows = 20000;
+	private static final int batchSize = 1000;
+	private static final int lookups = 100000;
+	private static final Path mappedPath = Path.of("target", "benchmark", "transactions");
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Autowired
+	private JpaTransactionStore jpaTransactionStore;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Test
+	void ingestAndLookup() throws Exception {
+		transactionRepository.deleteAllInBatch();
+		var mappedTransactionStore = openMappedStore();
+		try {
+			run("database", jpaTransactionStore);
+			run("mapped", mappedTransactionStore);
+		} finally {
+			mappedTransactionStore.close();
+		}
+	}
+
+	private void run(String name, TransactionStore store) {
+		var date = LocalDate.of(2023, 10, 1);
+		// warm up both paths
+		for (int i = 0; i < 2000; i++) {
+			store.save(new Transaction(date, "warm up", 1));
+		}
+		store.saveAll(createTransactions(date, batchSize));
+
+		var ids = new long[2 * rows];
+		var start = System.nanoTime();
+		for (int i = 0; i < rows; i++) {
+			ids[i] = store.save(new Transaction(date.minusDays(i % 365), "single " + i, 1235)).getId();
+		}
+		var singleNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for (int i = 0; i < rows; i += batchSize) {
+			var saved = store.saveAll(createTransactions(date, batchSize));
+			for (int j = 0; j < batchSize; j++) {
+				ids[rows + i + j] = saved.get(j).getId();
+			}
+		}
+		var batchNanos = System.nanoTime() - start;
+
+		// the lookups of random Ids, the first pass warms up
+		var latencies = new long[lookups];
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < lookups; i++) {
+				var id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+				var t0 = System.nanoTime();
+				var transaction = store.findById(id);
+				latencies[i] = System.nanoTime() - t0;
+				assertEquals(id, transaction.get().getId());
+			}
+		}
+		Arrays.sort(latencies);
+		logger.info(String.format("%s: single insert %.0f rows/s, batch insert %.0f rows/s, lookup p50 %.1f us, p99 %.1f us, p99.9 %.1f us",
+				name, rows * 1e9 / singleNanos, rows * 1e9 / batchNanos, latencies[lookups / 2] / 1e3,
+				latencies[lookups * 99 / 100] / 1e3, latencies[lookups * 999 / 1000] / 1e3));
+	}
+
+	// the store starts empty on every run
+	private MappedTransactionStore openMappedStore() throws IOException {
+		if (Files.exists(mappedPath)) {
+			try (var files = Files.walk(mappedPath)) {
+				for (var file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+					Files.delete(file);
+				}
+			}
+		}
+		var mappedTransactionStore = new MappedTransactionStore();
+		ReflectionTestUtils.setField(mappedTransactionStore, "path", mappedPath.toString());
+		ReflectionTestUtils.setField(mappedTransactionStore, "segmentRecords", 262144);
+		mappedTransactionStore.open();
+		return mappedTransactionStore;
+	}
+
+	private List<Transaction> createTransactions(LocalDate date, int size) {
+		var transactions = new ArrayList<Transaction>(size);
+		for (int i = 0; i < size; i++) {
+			transactions.add(new Transaction(date, "batch " + i, 1235));
+		}
+		return transactions;
+	}
+}
@@ -0,0 +1,101 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+public class CircuitBreakerTest {
+
+	private Instant now = Instant.parse("2023-10-01T00:00:00Z");
+
+	private CircuitBreaker createBreaker() {
+		var clock = new Clock() {
+			@Override
+			public Instant instant() {
+				return now;
+			}
+
+			@Override
+			public ZoneOffset getZone() {
+				return ZoneOffset.UTC;
+			}
+
+			@Override
+			public Clock withZone(java.time.ZoneId zone) {
+				return this;
+			}
+		};
+		return new CircuitBreaker("test", 2, Duration.ofSeconds(30), e -> !(e instanceof IllegalArgumentException), clock);
+	}
+
+	@Test
+	public void execute_opensAfterFailures() {
+		var breaker = createBreaker();
+		var calls = new AtomicInteger();
+
+		for (int i = 0; i < 2; i++) {
+			assertThrows(IllegalStateException.class, () -> breaker.execute(() -> {
+				calls.incrementAndGet();
+				return Mono.error(new IllegalStateException());
+			}).block());
+		}
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		// the open breaker doesn't make the call
+		assertThrows(CircuitBreaker.OpenException.class, () -> breaker.execute(() -> {
+			calls.incrementAndGet();
+			return Mono.just("value");
+		}).block());
+		assertEquals(2, calls.get());
+		assertEquals(1, breaker.getTransitions(CircuitBreaker.State.OPEN));
+		assertEquals(1, breaker.getRejectedCalls());
+	}
+
+	@Test
+	public void execute_ignoredErrors() {
+		var breaker = createBreaker();
+
+		// the errors which are not failures don't open the breaker
+		for (int i = 0; i < 3; i++) {
+			assertThrows(IllegalArgumentException.class, () -> breaker.execute(() -> Mono.error(new IllegalArgumentException())).block());
+		}
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(0, breaker.getTransitions(CircuitBreaker.State.OPEN));
+	}
+
+	@Test
+	public void execute_halfOpen() {
+		var breaker = createBreaker();
+		for (int i = 0; i < 2; i++) {
+			assertThrows(IllegalStateException.class, () -> breaker.execute(() -> Mono.error(new IllegalStateException())).block());
+		}
+
+		// a failed trial opens the breaker again
+		now = now.plusSeconds(30);
+		assertThrows(IllegalStateException.class, () -> breaker.execute(() -> Mono.error(new IllegalStateException())).block());
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		// only one trial call is made at a time and its success closes the breaker
+		now = now.plusSeconds(30);
+		Sinks.One<String> response = Sinks.one();
+		var trial = breaker.execute(response::asMono).toFuture();
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertThrows(CircuitBreaker.OpenException.class, () -> breaker.execute(() -> Mono.just("other")).block());
+		response.tryEmitValue("value");
+		assertEquals("value", trial.join());
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertEquals(2, breaker.getTransitions(CircuitBreaker.State.HALF_OPEN));
+		assertEquals(2, breaker.getTransitions(CircuitBreaker.State.OPEN));
+		assertEquals(1, breaker.getTransitions(CircuitBreaker.State.CLOSED));
+	}
+}
@@ -0,0 +1,165 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.samuelwu.wex.tag.transaction.model.CurrencyData;
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
+import com.samuelwu.wex.tag.transaction.model.Money;
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import reactor.core.publisher.Mono;
+
+// bytes allocated to decode the Treasury rates and to convert the transactions, against the maps they were built with before
+// run it with: mvn test -Dtest=ConversionAllocationBenchmarkTest -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@ExtendWith(MockitoExtension.class)
+public class ConversionAllocationBenchmarkTest {
+
+	private static final int rows = 1000;
+	private static final int rounds = 200;
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	private ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+			.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+	@Mock
+	private TransactionStore transactionStore;
+
+	@Mock
+	private ExchangeRateService exchangeRateService;
+
+	@InjectMocks
+	private TransactionService transactionService;
+
+	@Test
+	void decodeRates() throws Exception {
+		var json = new StringBuilder("{\"data\":[");
+		for (int i = 0; i < rows; i++) {
+			json.append(i == 0 ? "" : ",").append("{\"country_currency_desc\":\"Canada-Dollar\",\"exchange_rate\":\"1.")
+					.append(100 + i % 900).append("\",\"record_date\":\"2023-06-30\"}");
+		}
+		json.append("],\"meta\":{\"count\":").append(rows).append(",\"total-pages\":1}}");
+		var bytes = json.toString().getBytes();
+
+		var allocated = measure(() -> objectMapper.readValue(bytes, CurrencyData.class).getRates());
+		var mapAllocated = measure(() -> decodeWithMaps(bytes));
+		logger.info(String.format("decode: %.0f bytes per rate, with maps: %.0f", (double) allocated / rows, (double) mapAllocated / rows));
+	}
+
+	@Test
+	void convertTransactions() throws Exception {
+		ReflectionTestUtils.setField(transactionService, "transactionIngestQueue", Mockito.mock(TransactionIngestQueue.class));
+		var date = LocalDate.of(2023, 10, 1);
+		var ids = new ArrayList<Long>();
+		var transactions = new ArrayList<Transaction>();
+		for (long id = 1; id <= rows; id++) {
+			var transaction = new Transaction(date, "description" + id, 12312 + id);
+			transaction.setId(id);
+			ids.add(id);
+			transactions.add(transaction);
+		}
+		var currency = "Canada-Dollar";
+		Mockito.when(transactionStore.findAllById(ids)).thenReturn(transactions);
+		Mockito.when(exchangeRateService.getExchangeRate(currency, date))
+				.thenReturn(Mono.just(new ExchangeRate(currency, LocalDate.of(2023, 6, 30), new BigDecimal("1.3"))));
+
+		var allocated = measure(() -> objectMapper.writeValueAsBytes(transactionService.convertTransactions(ids, currency).block()));
+		var exchangeRate = new ExchangeRate(currency, LocalDate.of(2023, 6, 30), new BigDecimal("1.3"));
+		var mapAllocated = measure(() -> objectMapper.writeValueAsBytes(convertWithMaps(transactions, exchangeRate)));
+		logger.info(String.format("convert: %.0f bytes per transaction, with maps: %.0f", (double) allocated / rows, (double) mapAllocated / rows));
+	}
+
+	// the rows were decoded into a map each, then into a rate
+	private List<ExchangeRate> decodeWithMaps(byte[] bytes) throws Exception {
+		var data = objectMapper.readValue(bytes, MapCurrencyData.class).getData();
+		var rates = new ArrayList<ExchangeRate>(data.size());
+		for (var row : data) {
+			rates.add(new ExchangeRate(row.get("country_currency_desc"), LocalDate.parse(row.get("record_date")),
+					new BigDecimal(row.get("exchange_rate"))));
+		}
+		return rates;
+	}
+
+	// the converted transactions were maps of BigDecimal amounts and formatted dates, without the service around them
+	private Map<String, Object> convertWithMaps(List<Transaction> transactions, ExchangeRate exchangeRate) {
+		var transactionsData = new ArrayList<Map<String, Object>>();
+		for (var transaction : transactions) {
+			Map<String, Object> transactionData = new LinkedHashMap<>();
+			transactionData.put("transaction_id", transaction.getId());
+			transactionData.put("description", transaction.getDescription());
+			transactionData.put("original_amount", Money.toDecimal(transaction.getAmount()));
+			transactionData.put("transaction_date", transaction.getDate().format(ExchangeRateService.DATE_FORMAT));
+			transactionData.put("currency_amount", Money.toDecimal(Money.multiply(transaction.getAmount(), exchangeRate.getScaledRate())));
+			transactionData.put("curreny", exchangeRate.getCurrency());
+			transactionData.put("exchange_rate", exchangeRate.getRate());
+			transactionData.put("rate_date", exchangeRate.getRecordDate().format(ExchangeRateService.DATE_FORMAT));
+			transactionsData.add(transactionData);
+		}
+		Map<String, Object> conversionData = new LinkedHashMap<>();
+		conversionData.put("transactions", transactionsData);
+		conversionData.put("id_not_found", List.of());
+		conversionData.put("exchange_rate_not_found", List.of());
+		return conversionData;
+	}
+
+	// the average bytes allocated by a round after the warm up
+	private long measure(Round round) throws Exception {
+		for (int i = 0; i < rounds; i++) {
+			round.run();
+		}
+		var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		var threadId = Thread.currentThread().threadId();
+		var start = threadBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < rounds; i++) {
+			round.run();
+		}
+		return (threadBean.getThreadAllocatedBytes(threadId) - start) / rounds;
+	}
+
+	private interface Round {
+		void run() throws Exception;
+	}
+
+	// the Treasury response as it was decoded before, a map per row
+	private static class MapCurrencyData {
+		private List<Map<String, String>> data;
+		private Map<String, Object> meta;
+
+		public List<Map<String, String>> getData() {
+			return data;
+		}
+
+		public void setData(List<Map<String, String>> data) {
+			this.data = data;
+		}
+
+		public Map<String, Object> getMeta() {
+			return meta;
+		}
+
+		public void setMeta(Map<String, Object> meta) {
+			this.meta = meta;
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class CurrencyCatalogTest {
+	@Mock
+	private ExchangeRateService exchangeRateService;
+
+	@Mock
+	private ExchangeRateHistory exchangeRateHistory;
+
+	@InjectMocks
+	private CurrencyCatalog currencyCatalog;
+
+	@BeforeEach
+	public void setUp() {
+		ReflectionTestUtils.setField(currencyCatalog, "refreshTimeout", Duration.ofSeconds(1));
+	}
+
+	@Test
+	public void isValid_loaded() {
+		Mockito.when(exchangeRateService.fetchCurrencies()).thenReturn(Mono.just(List.of("Euro Zone-Euro", "Canada-Dollar")));
+		Mockito.when(exchangeRateService.fetchAllCurrencies()).thenReturn(Mono.just(List.of("Euro Zone-Euro", "Canada-Dollar", "Germany-Mark")));
+		Mockito.when(exchangeRateHistory.getCurrencies()).thenReturn(Set.of("Mexico-Peso"));
+
+		// every currency is accepted before the catalog is loaded
+		assertTrue(currencyCatalog.isValid("Unknown"));
+		currencyCatalog.scheduledRefresh();
+		assertTrue(currencyCatalog.isLoaded());
+		assertTrue(currencyCatalog.isValid("Canada-Dollar"));
+		assertTrue(currencyCatalog.isValid("Mexico-Peso"));
+		assertFalse(currencyCatalog.isValid("Unknown"));
+		assertEquals(List.of("Canada-Dollar", "Euro Zone-Euro", "Mexico-Peso"), currencyCatalog.getCurrencies().block());
+	}
+
+	@Test
+	public void isValid_discontinued() {
+		Mockito.when(exchangeRateService.fetchCurrencies()).thenReturn(Mono.just(List.of("Euro Zone-Euro")));
+		Mockito.when(exchangeRateService.fetchAllCurrencies()).thenReturn(Mono.just(List.of("Euro Zone-Euro", "Germany-Mark")));
+		currencyCatalog.refresh();
+
+		// a currency without a record in the last year isn't listed, an older transaction can still be converted to it
+		assertEquals(List.of("Euro Zone-Euro"), currencyCatalog.getCurrencies().block());
+		assertTrue(currencyCatalog.isValid("Germany-Mark"));
+		assertFalse(currencyCatalog.isValid("Unknown"));
+	}
+
+	@Test
+	public void isValid_notLoaded() {
+		Mockito.when(exchangeRateService.fetchCurrencies()).thenReturn(Mono.error(new IllegalStateException("Treasury is down")));
+		Mockito.when(exchangeRateService.fetchAllCurrencies()).thenReturn(Mono.error(new IllegalStateException("Treasury is down")));
+
+		// the currencies are accepted until a load succeeds, the lookup of an unknown one finds no exchange rate
+		currencyCatalog.scheduledRefresh();
+		assertFalse(currencyCatalog.isLoaded());
+		assertTrue(currencyCatalog.isValid("Unknown"));
+		assertNull(currencyCatalog.getETag());
+	}
+
+	@Test
+	public void refresh_failed() {
+		Mockito.when(exchangeRateService.fetchCurrencies()).thenReturn(Mono.just(List.of("Canada-Dollar")))
+				.thenReturn(Mono.error(new IllegalStateException("Treasury is down")));
+		Mockito.when(exchangeRateService.fetchAllCurrencies()).thenReturn(Mono.just(List.of("Canada-Dollar")));
+		currencyCatalog.scheduledRefresh();
+
+		// the previous catalog is kept
+		currencyCatalog.scheduledRefresh();
+		assertTrue(currencyCatalog.isValid("Canada-Dollar"));
+		assertFalse(currencyCatalog.isValid("Unknown"));
+	}
+
+	@Test
+	public void getCurrencies_notLoaded() {
+		Mockito.when(exchangeRateService.fetchCurrencies()).thenReturn(Mono.just(List.of("Canada-Dollar")));
+		Mockito.when(exchangeRateService.fetchAllCurrencies()).thenReturn(Mono.just(List.of("Canada-Dollar")));
+
+		// the first request loads the catalog
+		assertEquals(List.of("Canada-Dollar"), currencyCatalog.getCurrencies().block());
+		assertEquals(List.of("Canada-Dollar"), currencyCatalog.getCurrencies().block());
+		Mockito.verify(exchangeRateService, Mockito.times(1)).fetchCurrencies();
+		Mockito.verify(exchangeRateService, Mockito.times(1)).fetchAllCurrencies();
+		assertFalse(currencyCatalog.isValid("Unknown"));
+	}
+
+	@Test
+	public void onExchangeRatesSynced() {
+		Mockito.when(exchangeRateService.fetchCurrencies()).thenReturn(Mono.just(List.of("Canada-Dollar")));
+		Mockito.when(exchangeRateService.fetchAllCurrencies()).thenReturn(Mono.just(List.of("Canada-Dollar", "Germany-Mark")));
+		Mockito.when(exchangeRateHistory.getCurrencies()).thenReturn(Set.of()).thenReturn(Set.of("Mexico-Peso"));
+		currencyCatalog.refresh();
+		assertFalse(currencyCatalog.isValid("Mexico-Peso"));
+
+		// the synced currencies are added without calling Treasury
+		currencyCatalog.onExchangeRatesSynced(new ExchangeRatesSyncedEvent(1));
+		assertTrue(currencyCatalog.isValid("Mexico-Peso"));
+		assertTrue(currencyCatalog.isValid("Germany-Mark"));
+		Mockito.verify(exchangeRateService, Mockito.times(1)).fetchCurrencies();
+	}
+
+	@Test
+	public void getETag() {
+		Mockito.when(exchangeRateService.fetchCurrencies()).thenReturn(Mono.just(List.of("Canada-Dollar", "Euro Zone-Euro")))
+				.thenReturn(Mono.just(List.of("Euro Zone-Euro", "Canada-Dollar"))).thenReturn(Mono.just(List.of("Canada-Dollar")));
+		Mockito.when(exchangeRateService.fetchAllCurrencies()).thenReturn(Mono.just(List.of("Canada-Dollar", "Euro Zone-Euro")));
+		assertNull(currencyCatalog.getETag());
+
+		// the tag only changes with the currencies
+		currencyCatalog.refresh();
+		var eTag = currencyCatalog.getETag();
+		assertEquals(eTag, currencyCatalog.getCatalog().block().getETag());
+		currencyCatalog.refresh();
+		assertEquals(eTag, currencyCatalog.getETag());
+		currencyCatalog.refresh();
+		assertNotEquals(eTag, currencyCatalog.getETag());
+	}
+}
@@ -0,0 +1,147 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// the time and the heap to index a million descriptions, and the time of a search with the index and with a scan
+// run it with: mvn test -Dtest=DescriptionIndexBenchmarkTest -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@ExtendWith(MockitoExtension.class)
+public class DescriptionIndexBenchmarkTest {
+
+	private static final int rows = 1_000_000;
+	private static final int rounds = 50;
+	private static final int page = 50;
+	private static final List<String> merchants = List.of("Shell", "Starbucks", "Hilton", "Marriott", "Delta", "United",
+			"Uber", "Lyft", "Staples", "Office Depot", "Home Depot", "Walmart", "Target", "Costco", "Amazon", "Chipotle");
+	private static final List<String> cities = List.of("Portland", "Boston", "Chicago", "Denver", "Austin", "Seattle",
+			"Atlanta", "Phoenix", "Dallas", "Miami", "Detroit", "Nashville");
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Mock
+	private TransactionStore transactionStore;
+
+	@Spy
+	private TransactionTemplate transactionTemplate = new TransactionTemplate(Mockito.mock(PlatformTransactionManager.class));
+
+	@Spy
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@InjectMocks
+	private DescriptionIndex descriptionIndex;
+
+	@Test
+	void buildAndSearch() {
+		var random = new Random(7);
+		var descriptions = IntStream.range(0, rows)
+				.mapToObj(i -> merchants.get(random.nextInt(merchants.size())) + " " + cities.get(random.nextInt(cities.size()))
+						+ " #" + random.nextInt(100000))
+				.collect(Collectors.toList());
+
+		ReflectionTestUtils.setField(descriptionIndex, "enabled", true);
+		Mockito.when(transactionStore.streamAll())
+				.thenReturn(IntStream.range(0, rows).mapToObj(i -> createTransaction(i, descriptions.get(i))));
+		var heap = usedHeap();
+		var start = System.nanoTime();
+		descriptionIndex.load();
+		var buildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		var indexBytes = usedHeap() - heap;
+		logger.info(String.format("per million rows: built in %d ms, %.1f MB heap, %d trigrams and %d entries",
+				buildMillis, indexBytes / 1048576.0, descriptionIndex.getTrigrams(), descriptionIndex.getEntries()));
+
+		// a common fragment, one with a few matches and one spanning words, the first page of each
+		for (var fragment : List.of("depot", "#4242", "lyft den")) {
+			var scan = time(() -> scan(descriptions, fragment));
+			var indexed = time(() -> search(descriptions, fragment));
+			assertEquals(scan(descriptions, fragment), search(descriptions, fragment));
+			logger.info(String.format("median first page of \"%s\": scan %.2f ms, index %.3f ms", fragment, scan, indexed));
+		}
+	}
+
+	// the first page of the Ids whose descriptions contain the fragment, by reading every description
+	private static List<Long> scan(List<String> descriptions, String fragment) {
+		var lowercaseFragment = fragment.toLowerCase(Locale.ROOT);
+		var found = new ArrayList<Long>(page);
+		for (int i = 0; i < descriptions.size() && found.size() < page; i++) {
+			if (descriptions.get(i).toLowerCase(Locale.ROOT).contains(lowercaseFragment)) {
+				found.add((long) i + 1);
+			}
+		}
+		return found;
+	}
+
+	// the same page from the candidates of the index, they are checked as the service does after reading them
+	private List<Long> search(List<String> descriptions, String fragment) {
+		var lowercaseFragment = fragment.toLowerCase(Locale.ROOT);
+		var found = new ArrayList<Long>(page);
+		var after = 0L;
+		long[] candidates;
+		while (found.size() < page && (candidates = descriptionIndex.findCandidates(fragment, after, 2 * page)).length > 0) {
+			for (var id : candidates) {
+				if (found.size() < page && descriptions.get((int) id - 1).toLowerCase(Locale.ROOT).contains(lowercaseFragment)) {
+					found.add(id);
+				}
+			}
+			after = candidates[candidates.length - 1];
+		}
+		return found;
+	}
+
+	private static Transaction createTransaction(int i, String description) {
+		var transaction = new Transaction(null, description, 100);
+		transaction.setId(i + 1);
+		return transaction;
+	}
+
+	// the median milliseconds of the rounds after a warm up
+	private static double time(Supplier<?> search) {
+		for (int i = 0; i < rounds; i++) {
+			search.get();
+		}
+		var nanos = new long[rounds];
+		for (int i = 0; i < rounds; i++) {
+			var start = System.nanoTime();
+			search.get();
+			nanos[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(nanos);
+		return nanos[rounds / 2] / 1e6;
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,173 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+public class DescriptionIndexTest {
+
+	@Mock
+	private TransactionStore transactionStore;
+
+	@Spy
+	private TransactionTemplate transactionTemplate = new TransactionTemplate(Mockito.mock(PlatformTransactionManager.class));
+
+	@Spy
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@InjectMocks
+	private DescriptionIndex descriptionIndex;
+
+	@BeforeEach
+	public void setUp() {
+		ReflectionTestUtils.setField(descriptionIndex, "enabled", true);
+	}
+
+	@Test
+	public void findCandidates() {
+		load("Coffee shop", "COFFEE beans", null, "Office supplies", "fee", "Tea shop");
+		// the distinct trigrams of each description, a description without one isn't indexed
+		assertEquals(9 + 10 + 13 + 1 + 6, descriptionIndex.getEntries());
+		assertEquals(descriptionIndex.getTrigrams(), meterRegistry.get("transaction.search.trigrams").gauge().value());
+
+		// the case is ignored
+		assertArrayEquals(new long[] {1, 2}, descriptionIndex.findCandidates("cOFfee", 0, 10));
+		assertArrayEquals(new long[] {1, 2, 5}, descriptionIndex.findCandidates("fee", 0, 10));
+		// after the cursor and up to the limit
+		assertArrayEquals(new long[] {1, 2}, descriptionIndex.findCandidates("fee", 0, 2));
+		assertArrayEquals(new long[] {5}, descriptionIndex.findCandidates("fee", 2, 10));
+		assertArrayEquals(new long[0], descriptionIndex.findCandidates("fee", 5, 10));
+		// a trigram which isn't indexed
+		assertArrayEquals(new long[0], descriptionIndex.findCandidates("coffee mug", 0, 10));
+		// the intersection of two arrays
+		assertArrayEquals(new long[] {1, 6}, descriptionIndex.findCandidates("shop", 0, 10));
+
+		assertThrows(IllegalArgumentException.class, () -> descriptionIndex.findCandidates("ab", 0, 10));
+	}
+
+	@Test
+	public void findCandidates_random() {
+		var random = new Random(7);
+		var words = List.of("fuel", "Coffee", "hotel", "flight", "taxi", "office", "SUPPLIES", "lunch", "parking", "toll");
+		var descriptions = new ArrayList<String>();
+		for (int i = 0; i < 2000; i++) {
+			var description = new StringBuilder();
+			for (int j = random.nextInt(4); j >= 0; j--) {
+				description.append(words.get(random.nextInt(words.size()))).append(' ');
+			}
+			descriptions.add(description.toString().trim());
+		}
+		// the first ones are loaded in the order of their dates, which isn't the order of their Ids
+		var loaded = new ArrayList<Transaction>();
+		for (int i = 0; i < 1000; i++) {
+			loaded.add(transaction(i + 1, descriptions.get(i)));
+		}
+		Collections.shuffle(loaded, random);
+		load(loaded);
+		// the rest are added in a shuffled order, as the queue and the requests may commit them
+		var added = new ArrayList<Transaction>();
+		for (int i = 1000; i < descriptions.size(); i++) {
+			added.add(transaction(i + 1, descriptions.get(i)));
+		}
+		Collections.shuffle(added, random);
+		for (int i = 0; i < added.size(); i += 100) {
+			descriptionIndex.add(added.subList(i, i + 100));
+		}
+		// and some of them again
+		descriptionIndex.add(added.subList(0, 100));
+
+		for (var fragment : List.of("fee", "coffee", "ice sup", "hotel taxi", "lunch parking toll", "flight")) {
+			// the fragments span words, so the candidates are checked like the service does
+			var expected = new ArrayList<Long>();
+			var found = new ArrayList<Long>();
+			for (int i = 0; i < descriptions.size(); i++) {
+				if (descriptions.get(i).toLowerCase(Locale.ROOT).contains(fragment)) {
+					expected.add((long) i + 1);
+				}
+			}
+			var after = 0L;
+			long[] candidates;
+			while ((candidates = descriptionIndex.findCandidates(fragment, after, 64)).length > 0) {
+				for (var id : candidates) {
+					if (descriptions.get((int) id - 1).toLowerCase(Locale.ROOT).contains(fragment)) {
+						found.add(id);
+					}
+				}
+				after = candidates[candidates.length - 1];
+			}
+			assertEquals(expected, found, fragment);
+		}
+	}
+
+	@Test
+	public void add_afterCommit() {
+		load("first");
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			descriptionIndex.add(List.of(transaction(2, "second")));
+			// not visible until the commit
+			assertArrayEquals(new long[0], descriptionIndex.findCandidates("second", 0, 10));
+			TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+			assertArrayEquals(new long[] {2}, descriptionIndex.findCandidates("second", 0, 10));
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	public void disabled() {
+		ReflectionTestUtils.setField(descriptionIndex, "enabled", false);
+		descriptionIndex.load();
+		descriptionIndex.add(List.of(transaction(1, "first")));
+		assertEquals(0, descriptionIndex.getTrigrams());
+		Mockito.verifyNoInteractions(transactionStore);
+	}
+
+	// load the descriptions with the Ids from 1
+	private void load(String... descriptions) {
+		var transactions = new ArrayList<Transaction>();
+		for (int i = 0; i < descriptions.length; i++) {
+			transactions.add(transaction(i + 1, descriptions[i]));
+		}
+		load(transactions);
+	}
+
+	private void load(List<Transaction> transactions) {
+		Mockito.when(transactionStore.streamAll()).thenReturn(transactions.stream());
+		descriptionIndex.load();
+	}
+
+	private Transaction transaction(long id, String description) {
+		var transaction = new Transaction(LocalDate.of(2023, 10, 1), description, 100);
+		transaction.setId(id);
+		return transaction;
+	}
+}
@@ -0,0 +1,70 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
+import com.samuelwu.wex.tag.transaction.repository.ExchangeRateRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateHistoryTest {
+	@Mock
+	private ExchangeRateRepository exchangeRateRepository;
+
+	@InjectMocks
+	private ExchangeRateHistory exchangeRateHistory;
+
+	private ExchangeRate march = new ExchangeRate("Canada-Dollar", LocalDate.of(2023, 3, 31), new BigDecimal("1.35"));
+	private ExchangeRate june = new ExchangeRate("Canada-Dollar", LocalDate.of(2023, 6, 30), new BigDecimal("1.32"));
+	private ExchangeRate euro = new ExchangeRate("Euro Zone-Euro", LocalDate.of(2023, 6, 30), new BigDecimal("0.92"));
+
+	@BeforeEach
+	public void setupHistory() {
+		Mockito.when(exchangeRateRepository.findAllByOrderByCurrencyAscRecordDateAsc()).thenReturn(List.of(march, june, euro));
+		exchangeRateHistory.rebuild();
+	}
+
+	@Test
+	public void hasCurrency() {
+		assertTrue(exchangeRateHistory.hasCurrency("Canada-Dollar"));
+		assertTrue(exchangeRateHistory.hasCurrency("Euro Zone-Euro"));
+		assertFalse(exchangeRateHistory.hasCurrency("Mexico-Peso"));
+	}
+
+	@Test
+	public void getExchangeRate_onRecordDate() {
+		assertEquals(march, exchangeRateHistory.getExchangeRate("Canada-Dollar", LocalDate.of(2023, 3, 31)));
+		assertEquals(june, exchangeRateHistory.getExchangeRate("Canada-Dollar", LocalDate.of(2023, 6, 30)));
+		assertEquals(euro, exchangeRateHistory.getExchangeRate("Euro Zone-Euro", LocalDate.of(2023, 6, 30)));
+	}
+
+	@Test
+	public void getExchangeRate_betweenRecordDates() {
+		assertEquals(march, exchangeRateHistory.getExchangeRate("Canada-Dollar", LocalDate.of(2023, 6, 29)));
+		assertEquals(june, exchangeRateHistory.getExchangeRate("Canada-Dollar", LocalDate.of(2023, 10, 1)));
+	}
+
+	@Test
+	public void getExchangeRate_notFound() {
+		// before the first record
+		assertNull(exchangeRateHistory.getExchangeRate("Canada-Dollar", LocalDate.of(2023, 3, 30)));
+		// over six months after the last record
+		assertNull(exchangeRateHistory.getExchangeRate("Canada-Dollar", LocalDate.of(2024, 1, 1)));
+		// unknown currency
+		assertNull(exchangeRateHistory.getExchangeRate("Mexico-Peso", LocalDate.of(2023, 6, 30)));
+	}
+}
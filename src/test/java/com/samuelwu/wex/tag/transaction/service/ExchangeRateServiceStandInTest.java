@@ -0,0 +1,107 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.samuelwu.wex.tag.transaction.load.TreasuryStandIn;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// the Treasury queries are sent over HTTP to the stand-in server
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateServiceStandInTest {
+
+	private static TreasuryStandIn standIn;
+
+	@Mock
+	private ExchangeRateHistory exchangeRateHistory;
+
+	@Spy
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@InjectMocks
+	private ExchangeRateService exchangeRateService;
+
+	@BeforeAll
+	public static void startStandIn() throws Exception {
+		standIn = new TreasuryStandIn(0, 300, LocalDate.now().minusYears(2));
+	}
+
+	@AfterAll
+	public static void stopStandIn() {
+		standIn.close();
+	}
+
+	@BeforeEach
+	public void setUp() {
+		standIn.setLatency(Duration.ZERO);
+		standIn.setErrorRate(0);
+		ReflectionTestUtils.setField(exchangeRateService, "baseUrl", standIn.getUrl());
+		ReflectionTestUtils.setField(exchangeRateService, "connectTimeout", Duration.ofSeconds(1));
+		ReflectionTestUtils.setField(exchangeRateService, "readTimeout", Duration.ofSeconds(2));
+		ReflectionTestUtils.setField(exchangeRateService, "requestTimeout", Duration.ofSeconds(5));
+		ReflectionTestUtils.setField(exchangeRateService, "cacheSize", 100);
+		ReflectionTestUtils.setField(exchangeRateService, "cacheTtl", Duration.ofHours(1));
+		ReflectionTestUtils.setField(exchangeRateService, "staleSize", 100);
+		ReflectionTestUtils.setField(exchangeRateService, "breakerFailures", 2);
+		ReflectionTestUtils.setField(exchangeRateService, "breakerOpenDuration", Duration.ofHours(1));
+		exchangeRateService.initWebClient();
+		exchangeRateService.initCache();
+		exchangeRateService.initBreaker();
+	}
+
+	@Test
+	public void fetchCurrencies() {
+		// there are more rows in the last year than in a page
+		var currencies = exchangeRateService.fetchCurrencies().block();
+		assertEquals(300, currencies.size());
+		assertEquals(TreasuryStandIn.currencyName(0), currencies.get(0));
+	}
+
+	@Test
+	public void getExchangeRate() {
+		var date = LocalDate.now();
+		var exchangeRate = exchangeRateService.getExchangeRate(TreasuryStandIn.currencyName(1), date).block();
+		assertEquals(TreasuryStandIn.currencyName(1), exchangeRate.getCurrency());
+		assertTrue(!exchangeRate.getRecordDate().isAfter(date) && exchangeRate.getRecordDate().isAfter(date.minusMonths(6)));
+	}
+
+	@Test
+	public void getExchangeRates_page() {
+		var data = exchangeRateService.getExchangeRates(LocalDate.now().minusYears(1), 1, 100).block();
+		assertEquals(100, data.getRates().size());
+		assertTrue(data.getTotalPages() > 1);
+	}
+
+	@Test
+	public void getExchangeRate_slowTreasury() {
+		var currency = TreasuryStandIn.currencyName(2);
+		var date = LocalDate.now();
+		exchangeRateService.getExchangeRate(currency, date).block();
+
+		// the read timeout fails the calls of the other quarters, the breaker opens and the fetched window is served as stale
+		standIn.setLatency(Duration.ofSeconds(3));
+		assertThrows(ExchangeRateUnavailableException.class, () -> exchangeRateService.getExchangeRate(currency, date.minusMonths(3)).block());
+		assertThrows(ExchangeRateUnavailableException.class, () -> exchangeRateService.getExchangeRate(currency, date.minusMonths(6)).block());
+		assertEquals(CircuitBreaker.State.OPEN, exchangeRateService.getTreasuryBreaker().getState());
+		((Cache<?, ?>) ReflectionTestUtils.getField(exchangeRateService, "rateCache")).invalidateAll();
+		assertTrue(exchangeRateService.getExchangeRate(currency, date).block().isStale());
+	}
+}
@@ -1,26 +1,42 @@
 package com.samuelwu.wex.tag.transaction.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentMatchers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
 import com.samuelwu.wex.tag.transaction.model.CurrencyData;
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 @ExtendWith(MockitoExtension.class)
 public class ExchangeRateServiceTest {
@@ -46,57 +62,250 @@ public class ExchangeRateServiceTest {
 	@Mock
 	private Mono<CurrencyData> postResponseMock;
 
+	@Mock
+	private ExchangeRateHistory exchangeRateHistory;
+
+	@Spy
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
 	private static final String baseUrl = "https://api.fiscaldata.treasury.gov/services/api/fiscal_service/v1/accounting/od/rates_of_exchange";
 	// get the exchange rate for a currency
+	private static final String currencyQueryUrl = "?fields=country_currency_desc&filter=record_date:gte:{date}&page[number]={page}&page[size]={size}";
 	private static final String exchangeQueryUrl = "?fields=country_currency_desc,exchange_rate,record_date&filter=country_currency_desc:eq:{currency},record_date:gte:{startDate},record_date:lte:{endDate}&sort=-record_date";
 
 	@InjectMocks
 	private ExchangeRateService exchangeRateService;
 
+	@BeforeEach
+	public void setupCache() {
+		ReflectionTestUtils.setField(exchangeRateService, "cacheSize", 2);
+		ReflectionTestUtils.setField(exchangeRateService, "cacheTtl", Duration.ofHours(1));
+		ReflectionTestUtils.setField(exchangeRateService, "staleSize", 10);
+		ReflectionTestUtils.setField(exchangeRateService, "requestTimeout", Duration.ofMinutes(1));
+		ReflectionTestUtils.setField(exchangeRateService, "breakerFailures", 2);
+		ReflectionTestUtils.setField(exchangeRateService, "breakerOpenDuration", Duration.ofHours(1));
+		exchangeRateService.initCache();
+		exchangeRateService.initBreaker();
+	}
+
 	@Test
-	public void getValidCurrencies() throws Exception {
+	public void fetchCurrencies() throws Exception {
 		try (MockedStatic<WebClient> utilities = Mockito.mockStatic(WebClient.class)) {
 			setupMocks(utilities);
-			Mockito.when(requestHeadersUriSpecMock.uri( Mockito.anyString(), Mockito.anyString()))
+			var secondPage = Mockito.mock(WebClient.RequestHeadersSpec.class);
+			var secondResponse = Mockito.mock(WebClient.ResponseSpec.class);
+			Mockito.when(requestHeadersUriSpecMock.uri(Mockito.eq(currencyQueryUrl), Mockito.anyString(), Mockito.eq(1), Mockito.eq(1000)))
 			.thenReturn(requestHeadersSpecMock);
+			Mockito.when(requestHeadersUriSpecMock.uri(Mockito.eq(currencyQueryUrl), Mockito.anyString(), Mockito.eq(2), Mockito.eq(1000)))
+			.thenReturn(secondPage);
+			Mockito.when(secondPage.retrieve()).thenReturn(secondResponse);
 
+			// there is a row for each record date of a currency
 			List<Map<String, String>> currencies = getSampleCurrencies();
+			Mockito.when(responseSpecMock.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
+					.thenReturn(Mono.just(createCurrencyData(currencies, 2)));
+			Mockito.when(secondResponse.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
+					.thenReturn(Mono.just(createCurrencyData(List.of(currencies.get(0), Map.of(CurrencyData.COUNTRY_CURRENCY_DESC, "currency0")), 2)));
+
+			var response = exchangeRateService.fetchCurrencies().block();
+			assertEquals(List.of("currency0", "currency1", "currency2"), response);
+		}
+	}
+
+	@Test
+	public void fetchAllCurrencies() throws Exception {
+		try (MockedStatic<WebClient> utilities = Mockito.mockStatic(WebClient.class)) {
+			setupMocks(utilities);
+			// the currencies of the whole dataset
+			Mockito.when(requestHeadersUriSpecMock.uri(currencyQueryUrl, "2001-01-01", 1, 1000))
+			.thenReturn(requestHeadersSpecMock);
+			Mockito.when(responseSpecMock.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
+					.thenReturn(Mono.just(createCurrencyData(getSampleCurrencies(), 1)));
+
+			var response = exchangeRateService.fetchAllCurrencies().block();
+			assertEquals(List.of("currency1", "currency2"), response);
+		}
+	}
+
+	@Test
+	public void getExchangeRate_success() throws Exception {
+		try (MockedStatic<WebClient> utilities = Mockito.mockStatic(WebClient.class)) {
+			setupMocks(utilities);
+			// the rates from six months before the quarter of the date to its end are collected
+			var date = LocalDate.of(1995, 7, 15);
+			var currency = "currency1";
+			Mockito.when(requestHeadersUriSpecMock.uri(exchangeQueryUrl, currency, "1995-01-01", "1995-09-30"))
+			.thenReturn(requestHeadersSpecMock);
+
+			List<Map<String, String>> currencies = getSampleExchangeRates();
 
-			CurrencyData data = new CurrencyData();
-			data.setData(currencies);
+			CurrencyData data = createCurrencyData(currencies, 1);
 			Mockito.when(responseSpecMock.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
 					.thenReturn(Mono.just(data));
+			var response = exchangeRateService.getExchangeRate(currency, date).block();
+			assertExchangeRate(currencies.get(0), response);
+		}
+	}
 
-			var response = exchangeRateService.getValidCurrencies();
+	@Test
+	public void getExchangeRate_cached() throws Exception {
+		try (MockedStatic<WebClient> utilities = Mockito.mockStatic(WebClient.class)) {
+			setupMocks(utilities);
+			var date = LocalDate.of(1995, 7, 15);
+			var currency = "currency1";
+			Mockito.when(requestHeadersUriSpecMock.uri(Mockito.eq(exchangeQueryUrl), Mockito.eq(currency), Mockito.anyString(), Mockito.anyString()))
+			.thenReturn(requestHeadersSpecMock);
 
-			assertEquals(currencies.size(), response.size());
-			for (int i = 0; i < currencies.size(); i++) {
-				assertEquals(currencies.get(i).get(CurrencyData.COUNTRY_CURRENCY_DESC), response.get(i));
-			}
-			// check cached values
-			assertEquals(response, exchangeRateService.getValidCurrencies());
+			List<Map<String, String>> currencies = getSampleExchangeRates();
+
+			CurrencyData data = createCurrencyData(currencies, 1);
+			Mockito.when(responseSpecMock.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
+					.thenReturn(Mono.just(data));
+			// the other lookups of the same quarter are served from the cache
+			var response = exchangeRateService.getExchangeRate(currency, date).block();
+			assertExchangeRate(currencies.get(0), response);
+			assertEquals(response, exchangeRateService.getExchangeRate(currency, date).block());
+			assertEquals(response, exchangeRateService.getExchangeRate(currency, LocalDate.of(1995, 9, 30)).block());
+			Mockito.verify(webClientMock, Mockito.times(1)).get();
+			// a window is evicted once the cache is full
+			exchangeRateService.getExchangeRate(currency, date.minusMonths(3)).block();
+			exchangeRateService.getExchangeRate(currency, date.minusMonths(6)).block();
+
+			var statistics = exchangeRateService.getCacheStatistics();
+			assertEquals(2L, statistics.get("hits"));
+			assertEquals(3L, statistics.get("misses"));
+			assertEquals(1L, statistics.get("evictions"));
 		}
 	}
 
 	@Test
-	public void getExchangeRate_success() throws Exception {
+	public void getExchangeRate_sixMonths() throws Exception {
+		try (MockedStatic<WebClient> utilities = Mockito.mockStatic(WebClient.class)) {
+			setupMocks(utilities);
+			var currency = "currency1";
+			Mockito.when(requestHeadersUriSpecMock.uri(exchangeQueryUrl, currency, "1995-01-01", "1995-09-30"))
+			.thenReturn(requestHeadersSpecMock);
+
+			var currencies = List.of(Map.of(CurrencyData.COUNTRY_CURRENCY_DESC, currency, CurrencyData.EXCHANGE_RATE, "1.36", CurrencyData.RECORD_DATE, "1995-03-29"));
+			Mockito.when(responseSpecMock.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
+					.thenReturn(Mono.just(createCurrencyData(currencies, 1)));
+			// a rate of the quarter is used within six months of its record date
+			assertExchangeRate(currencies.get(0), exchangeRateService.getExchangeRate(currency, LocalDate.of(1995, 7, 15)).block());
+			assertEquals(null, exchangeRateService.getExchangeRate(currency, LocalDate.of(1995, 9, 30)).block());
+			Mockito.verify(webClientMock, Mockito.times(1)).get();
+		}
+	}
+
+	@Test
+	public void getExchangeRate_coalesced() throws Exception {
+		try (MockedStatic<WebClient> utilities = Mockito.mockStatic(WebClient.class)) {
+			setupMocks(utilities);
+			var date = LocalDate.of(1995, 7, 15);
+			var currency = "currency1";
+			Mockito.when(requestHeadersUriSpecMock.uri(Mockito.eq(exchangeQueryUrl), Mockito.eq(currency), Mockito.anyString(), Mockito.anyString()))
+			.thenReturn(requestHeadersSpecMock);
+
+			Sinks.One<CurrencyData> response = Sinks.one();
+			Mockito.when(responseSpecMock.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
+					.thenReturn(response.asMono());
+			// both requests of the quarter are waiting for the same Treasury call
+			var first = exchangeRateService.getExchangeRate(currency, date).toFuture();
+			var second = exchangeRateService.getExchangeRate(currency, date.plusMonths(1)).toFuture();
+
+			CurrencyData data = createCurrencyData(getSampleExchangeRates(), 1);
+			response.tryEmitValue(data);
+			assertEquals(first.join(), second.join());
+			Mockito.verify(webClientMock, Mockito.times(1)).get();
+
+			var statistics = exchangeRateService.getCacheStatistics();
+			assertEquals(1L, statistics.get("rate_requests"));
+			assertEquals(1L, statistics.get("rate_requests_coalesced"));
+		}
+	}
+
+	@Test
+	public void getExchangeRate_stale() throws Exception {
+		try (MockedStatic<WebClient> utilities = Mockito.mockStatic(WebClient.class)) {
+			setupMocks(utilities);
+			var date = LocalDate.of(1995, 7, 15);
+			var currency = "currency1";
+			Mockito.when(requestHeadersUriSpecMock.uri(Mockito.eq(exchangeQueryUrl), Mockito.eq(currency), Mockito.anyString(), Mockito.anyString()))
+			.thenReturn(requestHeadersSpecMock);
+
+			CurrencyData data = createCurrencyData(getSampleExchangeRates(), 1);
+			Mockito.when(responseSpecMock.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
+					.thenReturn(Mono.just(data)).thenReturn(Mono.error(new RuntimeException("timeout")));
+			var response = exchangeRateService.getExchangeRate(currency, date).block();
+			assertFalse(response.isStale());
+
+			// the cached rate expired and Treasury fails, the last fetched rate is served as stale
+			((Cache<?, ?>) ReflectionTestUtils.getField(exchangeRateService, "rateCache")).invalidateAll();
+			var staleRate = exchangeRateService.getExchangeRate(currency, date).block();
+			assertTrue(staleRate.isStale());
+			assertEquals(response.getScaledRate(), staleRate.getScaledRate());
+			assertEquals(1L, exchangeRateService.getCacheStatistics().get("stale_rates_served"));
+
+			// without an earlier rate of the quarter the error is reported as unavailable
+			assertThrows(ExchangeRateUnavailableException.class, () -> exchangeRateService.getExchangeRate(currency, date.minusMonths(3)).block());
+		}
+	}
+
+	@Test
+	public void getExchangeRate_breakerOpen() throws Exception {
 		try (MockedStatic<WebClient> utilities = Mockito.mockStatic(WebClient.class)) {
 			setupMocks(utilities);
 			var date = LocalDate.now();
-			var startYear = date.minusMonths(6).format(ExchangeRateService.DATE_FORMAT);
-			var endYear = date.format(ExchangeRateService.DATE_FORMAT);
 			var currency = "currency1";
-			Mockito.when(requestHeadersUriSpecMock.uri(exchangeQueryUrl, currency, startYear, endYear))
+			Mockito.when(requestHeadersUriSpecMock.uri(Mockito.eq(exchangeQueryUrl), Mockito.eq(currency), Mockito.anyString(), Mockito.anyString()))
 			.thenReturn(requestHeadersSpecMock);
+			Mockito.when(responseSpecMock.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
+					.thenReturn(Mono.error(new RuntimeException("timeout")));
 
-			List<Map<String, String>> currencies = getSampleExchangeRates();
+			// the breaker opens after two failures and the next call doesn't reach Treasury
+			for (int i = 0; i < 3; i++) {
+				var day = date.minusMonths(3 * i);
+				assertThrows(ExchangeRateUnavailableException.class, () -> exchangeRateService.getExchangeRate(currency, day).block());
+			}
+			Mockito.verify(webClientMock, Mockito.times(2)).get();
+			var statistics = exchangeRateService.getCacheStatistics();
+			assertEquals("open", statistics.get("breaker_state"));
+			assertEquals(1L, statistics.get("breaker_opened"));
+			assertEquals(1L, statistics.get("breaker_rejected_calls"));
+
+			// the calls are timed by outcome and the breaker state is a gauge
+			assertEquals(2, meterRegistry.get("treasury.requests").tags("query", "rate", "outcome", "error").timer().count());
+			assertEquals(1, meterRegistry.get("treasury.requests").tags("query", "rate", "outcome", "rejected").timer().count());
+			assertEquals(1, meterRegistry.get("treasury.breaker.state").gauge().value());
+			assertEquals(1, meterRegistry.get("treasury.breaker.transitions").tag("state", "open").functionCounter().count());
+		}
+	}
+
+	@Test
+	public void getExchangeRate_history() throws Exception {
+		var date = LocalDate.now();
+		var currency = "currency1";
+		var exchangeRate = new ExchangeRate(currency, date.minusDays(10), new BigDecimal("1.35"));
+		Mockito.when(exchangeRateHistory.hasCurrency(currency)).thenReturn(true);
+		Mockito.when(exchangeRateHistory.getExchangeRate(currency, date)).thenReturn(exchangeRate);
+		// a synced currency doesn't call Treasury
+		assertEquals(exchangeRate, exchangeRateService.getExchangeRate(currency, date).block());
+		Mockito.verifyNoInteractions(webClientMock);
+	}
 
-			CurrencyData data = new CurrencyData();
-			data.setData(currencies);
+	@Test
+	public void getExchangeRates_page() throws Exception {
+		try (MockedStatic<WebClient> utilities = Mockito.mockStatic(WebClient.class)) {
+			setupMocks(utilities);
+			var date = LocalDate.of(2023, 3, 31);
+			Mockito.when(requestHeadersUriSpecMock.uri(Mockito.anyString(), Mockito.eq("2023-03-31"), Mockito.eq(2), Mockito.eq(100)))
+			.thenReturn(requestHeadersSpecMock);
+
+			CurrencyData data = createCurrencyData(getSampleExchangeRates(), 3);
 			Mockito.when(responseSpecMock.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
 					.thenReturn(Mono.just(data));
-			var response = exchangeRateService.getExchangeRate(currency, date);
-			assertEquals(currencies.get(0), response);
+			var response = exchangeRateService.getExchangeRates(date, 2, 100).block();
+			assertEquals(2, response.getRates().size());
+			assertEquals(3, response.getTotalPages());
 		}
 	}
 
@@ -113,22 +322,32 @@ public class ExchangeRateServiceTest {
 	private void testGetExchangeRate_empty(List<Map<String, String>> data) {
 		try (MockedStatic<WebClient> utilities = Mockito.mockStatic(WebClient.class)) {
 			setupMocks(utilities);
-			var date = LocalDate.now();
-			var startYear = date.minusMonths(6).format(ExchangeRateService.DATE_FORMAT);
-			var endYear = date.format(ExchangeRateService.DATE_FORMAT);
+			var date = LocalDate.of(1995, 7, 15);
 			var currency = "currency1";
-			Mockito.when(requestHeadersUriSpecMock.uri(exchangeQueryUrl, currency, startYear, endYear))
+			Mockito.when(requestHeadersUriSpecMock.uri(exchangeQueryUrl, currency, "1995-01-01", "1995-09-30"))
 			.thenReturn(requestHeadersSpecMock);
 			
-			var currencyData = new CurrencyData();
-			currencyData.setData(data);
+			var currencyData = createCurrencyData(data, 1);
 			Mockito.when(responseSpecMock.bodyToMono(ArgumentMatchers.<Class<CurrencyData>>notNull()))
 					.thenReturn(Mono.just(currencyData));
-			var response = exchangeRateService.getExchangeRate(currency, date);
+			var response = exchangeRateService.getExchangeRate(currency, date).block();
 			assertEquals(null, response);
 		}
 	}
 	
+	// decode the rows as they are read from the Treasury response
+	private CurrencyData createCurrencyData(List<Map<String, String>> data, int totalPages) {
+		Map<String, Object> response = new HashMap<>();
+		response.put("data", data);
+		response.put("meta", Map.of(CurrencyData.TOTAL_PAGES, totalPages));
+		try {
+			var objectMapper = new ObjectMapper();
+			return objectMapper.readValue(objectMapper.writeValueAsBytes(response), CurrencyData.class);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
 	private List<Map<String, String>> getSampleCurrencies() {
 		List<Map<String, String>> currencies = new ArrayList<>();
 		Map<String, String> currency = new HashMap<>();
@@ -156,6 +375,12 @@ public class ExchangeRateServiceTest {
 		return currencies;
 	}
 
+	private void assertExchangeRate(Map<String, String> expected, ExchangeRate exchangeRate) {
+		assertEquals(expected.get(CurrencyData.COUNTRY_CURRENCY_DESC), exchangeRate.getCurrency());
+		assertEquals(new BigDecimal(expected.get(CurrencyData.EXCHANGE_RATE)), exchangeRate.getRate());
+		assertEquals(LocalDate.parse(expected.get(CurrencyData.RECORD_DATE)), exchangeRate.getRecordDate());
+	}
+
 	@SuppressWarnings("unchecked")
 	private void setupMocks(MockedStatic<WebClient> utilities) {
 		utilities.when(() -> WebClient.create(baseUrl)).thenReturn(webClientMock);
@@ -163,4 +388,4 @@ public class ExchangeRateServiceTest {
 		Mockito.when(webClientMock.get()).thenReturn(requestHeadersUriSpecMock);
 		Mockito.when(requestHeadersSpecMock.retrieve()).thenReturn(responseSpecMock);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.samuelwu.wex.tag.transaction.model.CurrencyData;
+import com.samuelwu.wex.tag.transaction.model.ExchangeRate;
+import com.samuelwu.wex.tag.transaction.repository.ExchangeRateRepository;
+
+import reactor.core.publisher.Mono;
+
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateSyncServiceTest {
+	@Mock
+	private ExchangeRateRepository exchangeRateRepository;
+
+	@Mock
+	private ExchangeRateHistory exchangeRateHistory;
+
+	@Mock
+	private ExchangeRateService exchangeRateService;
+
+	@Mock
+	private ApplicationEventPublisher eventPublisher;
+
+	@InjectMocks
+	private ExchangeRateSyncService exchangeRateSyncService;
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void sync_incremental() {
+		ReflectionTestUtils.setField(exchangeRateSyncService, "pageSize", 1);
+		var latestRecordDate = LocalDate.of(2023, 3, 31);
+		Mockito.when(exchangeRateRepository.findLatestRecordDate()).thenReturn(latestRecordDate);
+		Mockito.when(exchangeRateService.getExchangeRates(latestRecordDate, 1, 1))
+				.thenReturn(Mono.just(createCurrencyData("Canada-Dollar", "1.32", 2)));
+		Mockito.when(exchangeRateService.getExchangeRates(latestRecordDate, 2, 1))
+				.thenReturn(Mono.just(createCurrencyData("Euro Zone-Euro", "0.92", 2)));
+
+		assertEquals(2, exchangeRateSyncService.sync());
+
+		ArgumentCaptor<List<ExchangeRate>> ratesCaptor = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(exchangeRateRepository).saveAll(ratesCaptor.capture());
+		assertEquals("Canada-Dollar", ratesCaptor.getValue().get(0).getCurrency());
+		assertEquals("Euro Zone-Euro", ratesCaptor.getValue().get(1).getCurrency());
+		Mockito.verify(exchangeRateHistory).rebuild();
+		// the conversions with the older rates are cleared
+		var eventCaptor = ArgumentCaptor.forClass(ExchangeRatesSyncedEvent.class);
+		Mockito.verify(eventPublisher).publishEvent(eventCaptor.capture());
+		assertEquals(2, eventCaptor.getValue().getCount());
+	}
+
+	@Test
+	public void sync_upToDate() {
+		Mockito.when(exchangeRateService.getExchangeRates(Mockito.any(LocalDate.class), Mockito.eq(1), Mockito.anyInt()))
+				.thenReturn(Mono.just(CurrencyData.ofRates(List.of(), 1)));
+
+		assertEquals(0, exchangeRateSyncService.sync());
+		Mockito.verifyNoInteractions(exchangeRateHistory, eventPublisher);
+	}
+
+	private CurrencyData createCurrencyData(String currency, String rate, int totalPages) {
+		return CurrencyData.ofRates(List.of(new ExchangeRate(currency, LocalDate.of(2023, 6, 30), new BigDecimal(rate))), totalPages);
+	}
+}
@@ -0,0 +1,250 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.samuelwu.wex.tag.transaction.model.IdempotencyKey;
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.repository.IdempotencyKeyRepository;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyKeysTest {
+
+	@Mock
+	private IdempotencyKeyRepository idempotencyKeyRepository;
+
+	@Mock
+	private TransactionStore transactionStore;
+
+	@Spy
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@InjectMocks
+	private IdempotencyKeys idempotencyKeys;
+
+	// number of transactions created
+	private final AtomicInteger created = new AtomicInteger();
+
+	@BeforeEach
+	public void setUp() {
+		ReflectionTestUtils.setField(idempotencyKeys, "window", Duration.ofHours(24));
+		ReflectionTestUtils.setField(idempotencyKeys, "cacheSize", 1000L);
+		ReflectionTestUtils.setField(idempotencyKeys, "wait", Duration.ofSeconds(10));
+		idempotencyKeys.initCache();
+	}
+
+	@Test
+	public void execute_memory() throws Exception {
+		var first = idempotencyKeys.execute("key-1", this::createTransaction);
+		assertFalse(first.isReplayed());
+
+		// the retry is answered from memory
+		var retry = idempotencyKeys.execute("key-1", this::createTransaction);
+		assertTrue(retry.isReplayed());
+		assertSame(first.getTransaction(), retry.getTransaction());
+		assertEquals(1, created.get());
+		Mockito.verify(idempotencyKeyRepository, Mockito.times(1)).findById("key-1");
+		assertEquals(1, replays("memory"));
+
+		// another key creates another transaction
+		assertFalse(idempotencyKeys.execute("key-2", this::createTransaction).isReplayed());
+		assertEquals(2, created.get());
+	}
+
+	@Test
+	public void execute_database() throws Exception {
+		// a key saved before the restart, or by another instance
+		var transaction = new Transaction(LocalDate.of(2023, 10, 1), "description", 100);
+		transaction.setId(7);
+		Mockito.when(idempotencyKeyRepository.findById("key-1"))
+				.thenReturn(Optional.of(new IdempotencyKey("key-1", 7, Instant.now().minusSeconds(60))));
+		Mockito.when(transactionStore.findById(7)).thenReturn(Optional.of(transaction));
+
+		var result = idempotencyKeys.execute("key-1", this::createTransaction);
+		assertTrue(result.isReplayed());
+		assertEquals(7, result.getTransaction().getId());
+		assertEquals(0, created.get());
+		assertEquals(1, replays("database"));
+		// then it's kept in memory
+		idempotencyKeys.execute("key-1", this::createTransaction);
+		Mockito.verify(idempotencyKeyRepository, Mockito.times(1)).findById("key-1");
+	}
+
+	@Test
+	public void execute_expired() throws Exception {
+		var expired = new IdempotencyKey("key-1", 7, Instant.now().minus(Duration.ofHours(25)));
+		Mockito.when(idempotencyKeyRepository.findById("key-1")).thenReturn(Optional.of(expired));
+
+		// the expired key is deleted and used again
+		var result = idempotencyKeys.execute("key-1", this::createTransaction);
+		assertFalse(result.isReplayed());
+		assertEquals(1, created.get());
+		Mockito.verify(idempotencyKeyRepository).delete(expired);
+		Mockito.verifyNoInteractions(transactionStore);
+	}
+
+	@Test
+	public void execute_savedByAnotherInstance() throws Exception {
+		var transaction = new Transaction(LocalDate.of(2023, 10, 1), "description", 100);
+		transaction.setId(7);
+		Mockito.when(idempotencyKeyRepository.findById("key-1"))
+				.thenReturn(Optional.empty()).thenReturn(Optional.of(new IdempotencyKey("key-1", 7, Instant.now())));
+		Mockito.when(transactionStore.findById(7)).thenReturn(Optional.of(transaction));
+
+		// the key is rejected by the primary key and the transaction of the other instance is returned
+		var result = idempotencyKeys.execute("key-1", () -> {
+			throw new DataIntegrityViolationException("duplicate key");
+		});
+		assertTrue(result.isReplayed());
+		assertEquals(7, result.getTransaction().getId());
+	}
+
+	@Test
+	public void execute_notCreated() throws Exception {
+		// the queue was full, so the retry creates the transaction
+		assertNull(idempotencyKeys.execute("key-1", () -> null).getTransaction());
+		var retry = idempotencyKeys.execute("key-1", this::createTransaction);
+		assertFalse(retry.isReplayed());
+		assertEquals(1, created.get());
+
+		// the transaction failed to commit
+		idempotencyKeys.forget("key-1");
+		assertFalse(idempotencyKeys.execute("key-1", this::createTransaction).isReplayed());
+		assertEquals(2, created.get());
+	}
+
+	@Test
+	public void execute_concurrent() throws Exception {
+		var started = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		var executor = Executors.newFixedThreadPool(4);
+		try {
+			// the first request holds the creation while the others arrive
+			var first = executor.submit(() -> idempotencyKeys.execute("key-1", () -> {
+				started.countDown();
+				release.await();
+				return createTransaction();
+			}));
+			started.await();
+			var others = new ArrayList<Future<IdempotencyKeys.Result>>();
+			for (int i = 0; i < 3; i++) {
+				others.add(executor.submit(() -> idempotencyKeys.execute("key-1", this::createTransaction)));
+			}
+			release.countDown();
+			var transaction = first.get().getTransaction();
+			for (var other : others) {
+				assertTrue(other.get().isReplayed());
+				assertSame(transaction, other.get().getTransaction());
+			}
+			assertEquals(1, created.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void execute_concurrentTimeout() throws Exception {
+		ReflectionTestUtils.setField(idempotencyKeys, "wait", Duration.ofMillis(100));
+		var started = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		var executor = Executors.newSingleThreadExecutor();
+		try {
+			var first = executor.submit(() -> idempotencyKeys.execute("key-1", () -> {
+				started.countDown();
+				release.await();
+				return createTransaction();
+			}));
+			started.await();
+			// the first request is still running after the wait
+			assertThrows(IdempotencyKeys.InProgressException.class, () -> idempotencyKeys.execute("key-1", this::createTransaction));
+			release.countDown();
+			assertFalse(first.get().isReplayed());
+			assertEquals(1, created.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void execute_concurrentFailure() throws Exception {
+		var started = new CountDownLatch(1);
+		var release = new CountDownLatch(1);
+		var executor = Executors.newFixedThreadPool(2);
+		try {
+			var first = executor.submit(() -> idempotencyKeys.execute("key-1", () -> {
+				started.countDown();
+				release.await();
+				throw new IllegalStateException("failed to save");
+			}));
+			started.await();
+			var waiter = new AtomicReference<Thread>();
+			var other = executor.submit(() -> {
+				waiter.set(Thread.currentThread());
+				return idempotencyKeys.execute("key-1", this::createTransaction);
+			});
+			// the other request is waiting for the first one
+			while (waiter.get() == null || waiter.get().getState() != Thread.State.TIMED_WAITING) {
+				Thread.sleep(10);
+			}
+			release.countDown();
+			// the waiter fails with the exception of the first request, not an ExecutionException around it
+			assertEquals(IllegalStateException.class, assertThrows(ExecutionException.class, first::get).getCause().getClass());
+			var failure = assertThrows(ExecutionException.class, other::get).getCause();
+			assertEquals(IllegalStateException.class, failure.getClass());
+			assertEquals("failed to save", failure.getMessage());
+			// the failed key can be used again
+			assertFalse(idempotencyKeys.execute("key-1", this::createTransaction).isReplayed());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void purge() {
+		Mockito.when(idempotencyKeyRepository.deleteCreatedBefore(Mockito.any())).thenReturn(3);
+		idempotencyKeys.purge();
+		Mockito.verify(idempotencyKeyRepository).deleteCreatedBefore(Mockito.argThat(cutoff ->
+				Math.abs(Duration.between(cutoff, Instant.now().minus(Duration.ofHours(24))).getSeconds()) < 60));
+	}
+
+	private Transaction createTransaction() {
+		var transaction = new Transaction(LocalDate.of(2023, 10, 1), "description", 100);
+		transaction.setId(created.incrementAndGet());
+		return transaction;
+	}
+
+	private double replays(String source) {
+		return meterRegistry.counter(IdempotencyKeys.REPLAYS, "source", source).count();
+	}
+}
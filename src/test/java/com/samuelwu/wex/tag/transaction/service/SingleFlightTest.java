@@ -0,0 +1,87 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+public class SingleFlightTest {
+
+	@Test
+	public void execute_coalesced() {
+		var singleFlight = new SingleFlight<String, String>();
+		var calls = new AtomicInteger();
+		Sinks.One<String> response = Sinks.one();
+
+		var first = singleFlight.execute("key", () -> {
+			calls.incrementAndGet();
+			return response.asMono();
+		}).toFuture();
+		var second = singleFlight.execute("key", () -> {
+			calls.incrementAndGet();
+			return response.asMono();
+		}).toFuture();
+		assertEquals(1, singleFlight.getInFlight());
+
+		response.tryEmitValue("value");
+		assertEquals("value", first.join());
+		assertEquals("value", second.join());
+		assertEquals(1, calls.get());
+		assertEquals(1, singleFlight.getCalls());
+		assertEquals(1, singleFlight.getCoalescedCalls());
+		assertEquals(0, singleFlight.getInFlight());
+	}
+
+	@Test
+	public void execute_afterCompletion() {
+		var singleFlight = new SingleFlight<String, String>();
+		var calls = new AtomicInteger();
+
+		// a completed call is not shared with the later callers
+		for (int i = 0; i < 2; i++) {
+			assertEquals("value", singleFlight.execute("key", () -> {
+				calls.incrementAndGet();
+				return Mono.just("value");
+			}).block());
+		}
+		assertEquals(2, calls.get());
+		assertEquals(0, singleFlight.getCoalescedCalls());
+	}
+
+	@Test
+	public void execute_differentKeys() {
+		var singleFlight = new SingleFlight<String, String>();
+		Sinks.One<String> response1 = Sinks.one();
+		Sinks.One<String> response2 = Sinks.one();
+
+		var first = singleFlight.execute("key1", response1::asMono).toFuture();
+		var second = singleFlight.execute("key2", response2::asMono).toFuture();
+		assertEquals(2, singleFlight.getInFlight());
+
+		response1.tryEmitValue("value1");
+		response2.tryEmitValue("value2");
+		assertEquals("value1", first.join());
+		assertEquals("value2", second.join());
+		assertEquals(2, singleFlight.getCalls());
+	}
+
+	@Test
+	public void execute_error() {
+		var singleFlight = new SingleFlight<String, String>();
+		Sinks.One<String> response = Sinks.one();
+
+		var first = singleFlight.execute("key", response::asMono).toFuture();
+		var second = singleFlight.execute("key", response::asMono).toFuture();
+		response.tryEmitError(new RuntimeException());
+
+		// the callers share the error and the next caller makes a new call
+		assertEquals(true, first.isCompletedExceptionally());
+		assertEquals(true, second.isCompletedExceptionally());
+		assertEquals("value", singleFlight.execute("key", () -> Mono.just("value")).block());
+		assertEquals(2, singleFlight.getCalls());
+	}
+}
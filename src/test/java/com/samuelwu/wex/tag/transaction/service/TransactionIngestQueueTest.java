@@ -0,0 +1,226 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.repository.TransactionRollupRepository;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+@ExtendWith(MockitoExtension.class)
+public class TransactionIngestQueueTest {
+	@Mock
+	private JdbcTemplate jdbcTemplate;
+
+	@Mock
+	private TransactionTemplate transactionTemplate;
+
+	@Mock
+	private TransactionStore transactionStore;
+
+	@Mock
+	private TransactionRollupRepository transactionRollupRepository;
+
+	@Mock
+	private TransactionSnapshot transactionSnapshot;
+
+	@Mock
+	private IdempotencyKeys idempotencyKeys;
+
+	@Mock
+	private DescriptionIndex descriptionIndex;
+
+	@InjectMocks
+	private TransactionIngestQueue transactionIngestQueue;
+
+	// number of transactions inserted
+	private AtomicInteger inserted = new AtomicInteger();
+
+	@BeforeEach
+	public void setUp() {
+		ReflectionTestUtils.setField(transactionIngestQueue, "mode", TransactionIngestQueue.MODE_QUEUE);
+		ReflectionTestUtils.setField(transactionIngestQueue, "ack", "enqueue");
+		ReflectionTestUtils.setField(transactionIngestQueue, "queueSize", 100);
+		ReflectionTestUtils.setField(transactionIngestQueue, "flushRows", 10);
+		ReflectionTestUtils.setField(transactionIngestQueue, "flushInterval", Duration.ofMillis(5));
+		ReflectionTestUtils.setField(transactionIngestQueue, "commitTimeout", Duration.ofSeconds(10));
+		ReflectionTestUtils.setField(transactionIngestQueue, "failedSize", 1000L);
+		ReflectionTestUtils.setField(transactionIngestQueue, "failedTtl", Duration.ofHours(1));
+	}
+
+	@AfterEach
+	public void tearDown() throws InterruptedException {
+		transactionIngestQueue.stop();
+	}
+
+	@Test
+	public void submit_enqueue() throws Exception {
+		Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.eq(Long.class))).thenReturn(50L, 100L);
+		mockCommit();
+		transactionIngestQueue.start();
+
+		// the Ids are allocated in blocks of 50
+		Transaction transaction = null;
+		for (int i = 0; i < 51; i++) {
+			transaction = transactionIngestQueue.submit(createTransaction());
+			assertEquals(i + 1, transaction.getId());
+		}
+		Mockito.verify(jdbcTemplate, Mockito.times(2)).queryForObject(Mockito.anyString(), Mockito.eq(Long.class));
+
+		// the queued transactions are written before the queue stops
+		transactionIngestQueue.stop();
+		assertEquals(51, inserted.get());
+		Mockito.verify(transactionRollupRepository, Mockito.atLeastOnce()).add(Mockito.anyCollection());
+		Mockito.when(transactionStore.existsById(transaction.getId())).thenReturn(true);
+		assertEquals(TransactionIngestQueue.Status.COMMITTED, transactionIngestQueue.getStatus(transaction.getId()));
+	}
+
+	@Test
+	public void submit_commit() throws Exception {
+		ReflectionTestUtils.setField(transactionIngestQueue, "ack", TransactionIngestQueue.ACK_COMMIT);
+		Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.eq(Long.class))).thenReturn(50L);
+		mockCommit();
+		transactionIngestQueue.start();
+
+		// the transaction is committed when it is returned
+		var transaction = transactionIngestQueue.submit(createTransaction());
+		assertEquals(1, transaction.getId());
+		assertEquals(1, inserted.get());
+	}
+
+	@Test
+	public void submit_idempotencyKey() throws Exception {
+		ReflectionTestUtils.setField(transactionIngestQueue, "ack", TransactionIngestQueue.ACK_COMMIT);
+		Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.eq(Long.class))).thenReturn(50L);
+		mockCommit();
+		transactionIngestQueue.start();
+
+		// the key is inserted in the commit of its transaction
+		transactionIngestQueue.submit(createTransaction(), "key-1");
+		assertEquals(2, inserted.get());
+		Mockito.verify(jdbcTemplate).batchUpdate(Mockito.startsWith("merge into idempotency_keys"), Mockito.anyCollection(), Mockito.eq(1),
+				Mockito.any());
+		// without a key nothing else is inserted
+		transactionIngestQueue.submit(createTransaction());
+		assertEquals(3, inserted.get());
+	}
+
+	@Test
+	public void submit_queueFull() throws Exception {
+		ReflectionTestUtils.setField(transactionIngestQueue, "queueSize", 2);
+		ReflectionTestUtils.setField(transactionIngestQueue, "flushRows", 1);
+		Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.eq(Long.class))).thenReturn(50L);
+		// hold the writer in the first commit
+		var commitStarted = new CountDownLatch(1);
+		var commitReleased = new CountDownLatch(1);
+		Mockito.doAnswer(invocation -> {
+			commitStarted.countDown();
+			commitReleased.await();
+			return null;
+		}).when(transactionTemplate).executeWithoutResult(Mockito.any());
+		transactionIngestQueue.start();
+
+		var first = transactionIngestQueue.submit(createTransaction());
+		commitStarted.await();
+		assertNotNull(transactionIngestQueue.submit(createTransaction()));
+		assertNotNull(transactionIngestQueue.submit(createTransaction()));
+		assertNull(transactionIngestQueue.submit(createTransaction()));
+		assertEquals(2, transactionIngestQueue.getQueued());
+		assertEquals(TransactionIngestQueue.Status.QUEUED, transactionIngestQueue.getStatus(first.getId()));
+		commitReleased.countDown();
+	}
+
+	@Test
+	public void submit_commitTimeout() throws Exception {
+		ReflectionTestUtils.setField(transactionIngestQueue, "ack", TransactionIngestQueue.ACK_COMMIT);
+		ReflectionTestUtils.setField(transactionIngestQueue, "commitTimeout", Duration.ofMillis(50));
+		Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.eq(Long.class))).thenReturn(50L);
+		// hold the writer in the commit
+		var commitReleased = new CountDownLatch(1);
+		Mockito.doAnswer(invocation -> {
+			commitReleased.await();
+			return null;
+		}).when(transactionTemplate).executeWithoutResult(Mockito.any());
+		transactionIngestQueue.start();
+
+		// the transaction is returned with its Id and is still queued
+		var transaction = transactionIngestQueue.submit(createTransaction());
+		assertEquals(1, transaction.getId());
+		assertTrue(transactionIngestQueue.isQueued(transaction.getId()));
+		assertEquals(TransactionIngestQueue.Status.QUEUED, transactionIngestQueue.getStatus(transaction.getId()));
+		commitReleased.countDown();
+	}
+
+	@Test
+	public void submit_failed() throws Exception {
+		ReflectionTestUtils.setField(transactionIngestQueue, "ack", TransactionIngestQueue.ACK_COMMIT);
+		Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.eq(Long.class))).thenReturn(50L);
+		Mockito.doThrow(new RuntimeException("disk full")).when(transactionTemplate).executeWithoutResult(Mockito.any());
+		transactionIngestQueue.start();
+
+		var transaction = createTransaction();
+		assertThrows(ExecutionException.class, () -> transactionIngestQueue.submit(transaction, "key-1"));
+		assertEquals(TransactionIngestQueue.Status.FAILED, transactionIngestQueue.getStatus(transaction.getId()));
+		Mockito.verifyNoInteractions(transactionStore);
+		// a retry with the key creates the transaction again
+		Mockito.verify(idempotencyKeys).forget("key-1");
+	}
+
+	@Test
+	public void submit_failedExpired() throws Exception {
+		ReflectionTestUtils.setField(transactionIngestQueue, "ack", TransactionIngestQueue.ACK_COMMIT);
+		ReflectionTestUtils.setField(transactionIngestQueue, "failedTtl", Duration.ofMillis(50));
+		Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.eq(Long.class))).thenReturn(50L);
+		Mockito.doThrow(new RuntimeException("disk full")).when(transactionTemplate).executeWithoutResult(Mockito.any());
+		transactionIngestQueue.start();
+
+		var transaction = createTransaction();
+		assertThrows(ExecutionException.class, () -> transactionIngestQueue.submit(transaction, null));
+		assertEquals(TransactionIngestQueue.Status.FAILED, transactionIngestQueue.getStatus(transaction.getId()));
+		// the failure is only reported for the ttl
+		Thread.sleep(100);
+		assertEquals(TransactionIngestQueue.Status.NOT_FOUND, transactionIngestQueue.getStatus(transaction.getId()));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void mockCommit() {
+		Mockito.doAnswer(invocation -> {
+			invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+			return null;
+		}).when(transactionTemplate).executeWithoutResult(Mockito.any());
+		Mockito.when(jdbcTemplate.batchUpdate(Mockito.anyString(), Mockito.any(Collection.class), Mockito.anyInt(),
+				Mockito.any(ParameterizedPreparedStatementSetter.class))).thenAnswer(invocation -> {
+					inserted.addAndGet(invocation.<Collection<?>>getArgument(1).size());
+					return new int[0][];
+				});
+	}
+
+	private Transaction createTransaction() {
+		return new Transaction(LocalDate.of(2023, 10, 1), "description", 123);
+	}
+}
@@ -0,0 +1,126 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+import com.samuelwu.wex.tag.transaction.model.TransactionRollup;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// the heap a million transactions take as entities and in the snapshot, and the time of a scan of each
+// with a thousand repeated merchants and with a different description on each transaction
+// run it with: mvn test -Dtest=TransactionSnapshotBenchmarkTest -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@ExtendWith(MockitoExtension.class)
+public class TransactionSnapshotBenchmarkTest {
+
+	private static final int rows = 1_000_000;
+	private static final int merchants = 1000;
+	private static final int rounds = 50;
+	private static final LocalDate firstDate = LocalDate.of(2015, 1, 1);
+
+	private Logger logger = Logger.getLogger(this.getClass().getName());
+
+	@Mock
+	private TransactionStore transactionStore;
+
+	@Spy
+	private TransactionTemplate transactionTemplate = new TransactionTemplate(Mockito.mock(PlatformTransactionManager.class));
+
+	@Spy
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@InjectMocks
+	private TransactionSnapshot transactionSnapshot;
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void heapAndScan(boolean uniqueDescriptions) {
+		// the entities are read with their own strings, like they are hydrated from the database
+		var heap = usedHeap();
+		var entities = IntStream.range(0, rows).mapToObj(i -> createTransaction(i, uniqueDescriptions)).collect(Collectors.toList());
+		var entityBytes = usedHeap() - heap;
+
+		ReflectionTestUtils.setField(transactionSnapshot, "enabled", true);
+		ReflectionTestUtils.setField(transactionSnapshot, "capacity", rows);
+		Mockito.when(transactionStore.streamAll())
+				.thenReturn(IntStream.range(0, rows).mapToObj(i -> createTransaction(i, uniqueDescriptions)));
+		heap = usedHeap();
+		transactionSnapshot.load();
+		var snapshotBytes = usedHeap() - heap;
+		logger.info(String.format("per million rows with %s descriptions: entities %.1f MB heap, snapshot %.1f MB heap and %.1f MB off heap",
+				uniqueDescriptions ? "unique" : "repeated", entityBytes / 1048576.0, snapshotBytes / 1048576.0, transactionSnapshot.getOffHeapBytes() / 1048576.0));
+
+		// a year of small amounts, which neither index serves alone
+		var filter = new TransactionFilter(LocalDate.of(2018, 1, 1), LocalDate.of(2018, 12, 31), 0L, 1000L);
+		var entityScan = time(() -> entities.stream()
+				.filter(transaction -> !transaction.getDate().isBefore(filter.getFrom()) && !transaction.getDate().isAfter(filter.getTo())
+						&& transaction.getAmount() >= filter.getMinAmount() && transaction.getAmount() <= filter.getMaxAmount())
+				.sorted((left, right) -> left.getDate().equals(right.getDate()) ? Long.compare(left.getId(), right.getId())
+						: left.getDate().compareTo(right.getDate()))
+				.limit(51)
+				.collect(Collectors.toList()));
+		var snapshotScan = time(() -> transactionSnapshot.findPage(filter, null, 50));
+		var summary = time(() -> transactionSnapshot.summarize(TransactionRollup.Period.MONTH, null, null));
+		logger.info(String.format("median filtered page: entities %.2f ms, snapshot %.2f ms, monthly summary of all the rows: snapshot %.2f ms",
+				entityScan, snapshotScan, summary));
+		// each unique description is kept on the heap in the dictionary, about as much as its entity
+		assertTrue(snapshotBytes < (uniqueDescriptions ? entityBytes : entityBytes / 4));
+		entities.clear();
+	}
+
+	private Transaction createTransaction(int i, boolean uniqueDescriptions) {
+		var random = ThreadLocalRandom.current();
+		var description = uniqueDescriptions ? "merchant " + i : new String("merchant " + random.nextInt(merchants));
+		var transaction = new Transaction(firstDate.plusDays(random.nextInt(3650)), description, random.nextInt(1, 1000000));
+		transaction.setId(i + 1);
+		return transaction;
+	}
+
+	// the median milliseconds of the rounds after a warm up
+	private double time(Supplier<?> scan) {
+		for (int i = 0; i < rounds; i++) {
+			scan.get();
+		}
+		var nanos = new long[rounds];
+		for (int i = 0; i < rounds; i++) {
+			var start = System.nanoTime();
+			scan.get();
+			nanos[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(nanos);
+		return nanos[rounds / 2] / 1e6;
+	}
+
+	private static long usedHeap() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,104 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Slice;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+import com.samuelwu.wex.tag.transaction.repository.JpaTransactionStore;
+import com.samuelwu.wex.tag.transaction.repository.TransactionRepository;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// the snapshot pages are the same as the pages of the query, with and without the transactions without a date
+@DataJpaTest
+@Import(JpaTransactionStore.class)
+public class TransactionSnapshotQueryTest {
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Autowired
+	private TransactionStore transactionStore;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private TransactionSnapshot transactionSnapshot;
+
+	@BeforeEach
+	public void setUp() {
+		var random = new Random(13);
+		var date = LocalDate.of(2023, 1, 1);
+		var rows = new ArrayList<Transaction>();
+		for (int i = 0; i < 500; i++) {
+			var rowDate = random.nextInt(10) == 0 ? null : date.plusDays(random.nextInt(60));
+			rows.add(new Transaction(rowDate, "description " + i, random.nextInt(1000)));
+		}
+		transactionRepository.saveAll(rows);
+
+		transactionSnapshot = new TransactionSnapshot();
+		ReflectionTestUtils.setField(transactionSnapshot, "enabled", true);
+		ReflectionTestUtils.setField(transactionSnapshot, "capacity", 64);
+		ReflectionTestUtils.setField(transactionSnapshot, "transactionStore", transactionStore);
+		ReflectionTestUtils.setField(transactionSnapshot, "transactionTemplate", new TransactionTemplate(transactionManager));
+		ReflectionTestUtils.setField(transactionSnapshot, "meterRegistry", new SimpleMeterRegistry());
+		transactionSnapshot.load();
+	}
+
+	@Test
+	void findPageTest() {
+		var date = LocalDate.of(2023, 1, 1);
+		for (var filter : List.of(new TransactionFilter(null, date.plusDays(30), null, null),
+				new TransactionFilter(date.plusDays(30), null, null, null),
+				new TransactionFilter(date.plusDays(10), date.plusDays(20), 100L, 900L),
+				new TransactionFilter(null, null, 200L, 400L),
+				new TransactionFilter(null, null, null, 100L),
+				new TransactionFilter(null, null, null, null))) {
+			var expected = readAll(filter, true);
+			assertTrue(expected.size() > 20, filter.toString());
+			assertEquals(expected, readAll(filter, false), filter.toString());
+		}
+
+		// a cursor without a date reads the same page
+		var filter = new TransactionFilter(null, date.plusDays(30), null, null);
+		var cursor = new TransactionCursor(null, 1);
+		assertEquals(ids(transactionRepository.findPage(filter, cursor, 20)), ids(transactionSnapshot.findPage(filter, cursor, 20)));
+	}
+
+	// the Ids of all the pages of the filter
+	private List<Long> readAll(TransactionFilter filter, boolean fromQuery) {
+		var all = new ArrayList<Long>();
+		TransactionCursor cursor = null;
+		while (true) {
+			var page = fromQuery ? transactionRepository.findPage(filter, cursor, 20) : transactionSnapshot.findPage(filter, cursor, 20);
+			all.addAll(ids(page));
+			if (!page.hasNext()) {
+				return all;
+			}
+			var last = page.getContent().get(page.getContent().size() - 1);
+			cursor = filter.isOrderedByAmount() ? TransactionCursor.ofAmount(last) : TransactionCursor.of(last);
+		}
+	}
+
+	private List<Long> ids(Slice<Transaction> page) {
+		return page.getContent().stream().map(Transaction::getId).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,215 @@
+package com.samuelwu.wex.tag.transaction.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.samuelwu.wex.tag.transaction.model.Transaction;
+import com.samuelwu.wex.tag.transaction.model.TransactionCursor;
+import com.samuelwu.wex.tag.transaction.model.TransactionFilter;
+import com.samuelwu.wex.tag.transaction.model.TransactionRollup;
+import com.samuelwu.wex.tag.transaction.repository.TransactionStore;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+public class TransactionSnapshotTest {
+
+	@Mock
+	private TransactionStore transactionStore;
+
+	@Spy
+	private TransactionTemplate transactionTemplate = new TransactionTemplate(Mockito.mock(PlatformTransactionManager.class));
+
+	@Spy
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@InjectMocks
+	private TransactionSnapshot transactionSnapshot;
+
+	private final List<Transaction> transactions = new ArrayList<>();
+
+	@BeforeEach
+	public void setUp() {
+		ReflectionTestUtils.setField(transactionSnapshot, "enabled", true);
+		// the columns grow while they are loaded
+		ReflectionTestUtils.setField(transactionSnapshot, "capacity", 4);
+	}
+
+	@Test
+	public void findPage() {
+		var date = LocalDate.of(2023, 10, 1);
+		load(new Transaction(date, "first", 300), new Transaction(date.minusDays(1), "second", 100),
+				new Transaction(date, "first", 200), new Transaction(date.plusDays(1), null, 100),
+				new Transaction(null, "no date", 100));
+		assertEquals(5, transactionSnapshot.size());
+
+		// a date range in the order of date and Id
+		var filter = new TransactionFilter(date.minusDays(1), null, null, null);
+		var page = transactionSnapshot.findPage(filter, null, 2);
+		assertTrue(page.hasNext());
+		assertEquals(List.of(2L, 1L), ids(page.getContent()));
+		page = transactionSnapshot.findPage(filter, TransactionCursor.of(page.getContent().get(1)), 2);
+		assertFalse(page.hasNext());
+		assertEquals(List.of(3L, 4L), ids(page.getContent()));
+		assertEquals("first", page.getContent().get(0).getDescription());
+		assertNull(page.getContent().get(1).getDescription());
+
+		// an amount range in the order of amount and Id, the transaction without a date is included
+		filter = new TransactionFilter(null, null, 100L, 200L);
+		page = transactionSnapshot.findPage(filter, null, 3);
+		assertTrue(page.hasNext());
+		assertEquals(List.of(2L, 4L, 5L), ids(page.getContent()));
+		page = transactionSnapshot.findPage(filter, TransactionCursor.ofAmount(page.getContent().get(2)), 3);
+		assertFalse(page.hasNext());
+		assertEquals(List.of(3L), ids(page.getContent()));
+
+		// a date range with only an end leaves out the transaction without a date
+		filter = new TransactionFilter(null, date, null, null);
+		page = transactionSnapshot.findPage(filter, null, 5);
+		assertEquals(List.of(2L, 1L, 3L), ids(page.getContent()));
+		// a cursor without a date is before all the transactions with a date
+		page = transactionSnapshot.findPage(filter, new TransactionCursor(null, 5), 5);
+		assertEquals(List.of(2L, 1L, 3L), ids(page.getContent()));
+	}
+
+	@Test
+	public void findPage_random() {
+		// more rows than a task scans, so the scan is split and merged
+		var random = new Random(7);
+		var date = LocalDate.of(2020, 1, 1);
+		var rows = new Transaction[200000];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = new Transaction(date.plusDays(random.nextInt(1500)), "description " + random.nextInt(100), random.nextInt(100000));
+		}
+		load(rows);
+
+		for (var filter : List.of(new TransactionFilter(date.plusDays(100), date.plusDays(900), 5000L, 6000L),
+				new TransactionFilter(null, null, 99000L, null))) {
+			Comparator<Transaction> order = filter.isOrderedByAmount() ? Comparator.comparingLong(Transaction::getAmount)
+					: Comparator.comparing(Transaction::getDate);
+			var expected = transactions.stream()
+					.filter(transaction -> filter.getFrom() == null || !transaction.getDate().isBefore(filter.getFrom()))
+					.filter(transaction -> filter.getTo() == null || !transaction.getDate().isAfter(filter.getTo()))
+					.filter(transaction -> transaction.getAmount() >= filter.getMinAmount())
+					.filter(transaction -> filter.getMaxAmount() == null || transaction.getAmount() <= filter.getMaxAmount())
+					.sorted(order.thenComparingLong(Transaction::getId))
+					.map(Transaction::getId)
+					.collect(Collectors.toList());
+
+			// read all the pages
+			var actual = new ArrayList<Long>();
+			TransactionCursor cursor = null;
+			while (true) {
+				var page = transactionSnapshot.findPage(filter, cursor, 50);
+				actual.addAll(ids(page.getContent()));
+				if (!page.hasNext()) {
+					break;
+				}
+				var last = page.getContent().get(page.getContent().size() - 1);
+				cursor = filter.isOrderedByAmount() ? TransactionCursor.ofAmount(last) : TransactionCursor.of(last);
+			}
+			assertTrue(expected.size() > 100);
+			assertEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void summarize() {
+		var random = new Random(11);
+		var date = LocalDate.of(2022, 1, 1);
+		var rows = new Transaction[100000];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = new Transaction(date.plusDays(random.nextInt(730)), "description", random.nextInt(100000));
+		}
+		load(rows);
+
+		// the same rollups as the table has, the periods which contain the bounds are included
+		var from = LocalDate.of(2022, 3, 15);
+		var to = LocalDate.of(2023, 6, 10);
+		for (var period : TransactionRollup.Period.values()) {
+			var expected = new TreeMap<LocalDate, long[]>();
+			for (var transaction : transactions) {
+				var start = period.start(transaction.getDate());
+				if (!start.isBefore(period.start(from)) && !start.isAfter(to)) {
+					var total = expected.computeIfAbsent(start, key -> new long[2]);
+					total[0]++;
+					total[1] += transaction.getAmount();
+				}
+			}
+			var rollups = transactionSnapshot.summarize(period, from, to);
+			assertEquals(expected.size(), rollups.size());
+			for (var rollup : rollups) {
+				assertEquals(period, rollup.getPeriod());
+				assertEquals(expected.get(rollup.getStartDate())[0], rollup.getCount());
+				assertEquals(expected.get(rollup.getStartDate())[1], rollup.getAmount());
+			}
+		}
+		assertEquals(24, transactionSnapshot.summarize(TransactionRollup.Period.MONTH, null, null).size());
+		assertTrue(transactionSnapshot.summarize(TransactionRollup.Period.DAY, LocalDate.of(2030, 1, 1), null).isEmpty());
+	}
+
+	@Test
+	public void add_afterCommit() {
+		load();
+		var transaction = new Transaction(LocalDate.of(2023, 10, 1), "committed", 100);
+		transaction.setId(1);
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			transactionSnapshot.add(List.of(transaction));
+			assertEquals(0, transactionSnapshot.size());
+			TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.afterCommit());
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertEquals(1, transactionSnapshot.size());
+		assertEquals(1, transactionSnapshot.summarize(TransactionRollup.Period.DAY, null, null).size());
+	}
+
+	// the transactions get their Ids in order and are loaded from the store
+	@Test
+	public void load_capacityTooLarge() {
+		// the long columns of more rows would need a buffer over Integer.MAX_VALUE bytes
+		ReflectionTestUtils.setField(transactionSnapshot, "capacity", Integer.MAX_VALUE / Long.BYTES + 1);
+		var e = assertThrows(IllegalArgumentException.class, () -> transactionSnapshot.load());
+		assertTrue(e.getMessage().startsWith("The snapshot capacity needs to be between 1 and 268435455 rows"), e.getMessage());
+		Mockito.verifyNoInteractions(transactionStore);
+	}
+
+	private void load(Transaction... rows) {
+		for (var transaction : rows) {
+			transaction.setId(transactions.size() + 1);
+			transactions.add(transaction);
+		}
+		Mockito.when(transactionStore.streamAll()).thenReturn(transactions.stream());
+		transactionSnapshot.load();
+	}
+
+	private List<Long> ids(List<Transaction> page) {
+		return page.stream().map(Transaction::getId).collect(Collectors.toList());
+	}
+}